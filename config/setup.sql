@@ -862,6 +862,7 @@ CREATE TABLE IF NOT EXISTS assignments (
     is_final INTEGER NOT NULL,
     title TEXT NOT NULL,
     point_value INTEGER NOT NULL,
+    category TEXT NOT NULL DEFAULT 'general',
     FOREIGN KEY (course_id) REFERENCES courses (course_id),
     PRIMARY KEY (course_id, assignment_id, marking_period, title)
 );
@@ -878,4 +879,47 @@ CREATE TABLE IF NOT EXISTS assignment_grades (
     FOREIGN KEY (course_id) REFERENCES courses (course_id),
     FOREIGN KEY (course_id, assignment_id) REFERENCES assignments (course_id, assignment_id),
     FOREIGN KEY (student_id) REFERENCES students (student_id)
-);
\ No newline at end of file
+);
+
+CREATE INDEX IF NOT EXISTS assignment_grades_by_student ON assignment_grades (student_id, course_id);
+
+DROP TABLE IF EXISTS category_grades;
+CREATE TABLE IF NOT EXISTS category_grades (
+	course_id INTEGER NOT NULL,
+    student_id INTEGER NOT NULL,
+    marking_period INTEGER NOT NULL,
+    category TEXT NOT NULL,
+    graded INTEGER NOT NULL,
+    percent_sum REAL NOT NULL,
+    PRIMARY KEY (course_id, student_id, marking_period, category),
+    FOREIGN KEY (course_id) REFERENCES courses (course_id),
+    FOREIGN KEY (student_id) REFERENCES students (student_id)
+);
+
+CREATE INDEX IF NOT EXISTS course_grades_by_student ON course_grades (student_id, course_id);
+
+DROP TABLE IF EXISTS transcripts;
+CREATE TABLE IF NOT EXISTS transcripts (
+	student_id INTEGER NOT NULL,
+    course_id INTEGER NOT NULL,
+    course_no TEXT NOT NULL,
+    title TEXT NOT NULL,
+    credit_hours REAL NOT NULL,
+    mp1 REAL,
+    mp2 REAL,
+    midterm_exam REAL,
+    mp3 REAL,
+    mp4 REAL,
+    final_exam REAL,
+    grade REAL,
+    PRIMARY KEY (student_id, course_id),
+    FOREIGN KEY (student_id) REFERENCES students (student_id),
+    FOREIGN KEY (course_id) REFERENCES courses (course_id)
+);
+
+INSERT INTO transcripts (student_id, course_id, course_no, title, credit_hours, mp1, mp2, midterm_exam, mp3, mp4, final_exam, grade)
+    SELECT course_grades.student_id, course_grades.course_id, courses.course_no, courses.title, courses.credit_hours,
+    course_grades.mp1, course_grades.mp2, course_grades.midterm_exam, course_grades.mp3, course_grades.mp4, course_grades.final_exam, course_grades.grade
+    FROM course_grades INNER JOIN courses ON courses.course_id = course_grades.course_id;
+
+UPDATE courses SET enrollment = (SELECT COUNT(*) FROM course_grades WHERE course_grades.course_id = courses.course_id);
@@ -1,16 +1,43 @@
 package com.apcsa.controller;
 
-import java.sql.Connection;
+import java.io.File;
+import java.io.IOException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.InputMismatchException;
+import java.util.List;
 import java.util.Scanner;
+import java.util.TreeMap;
+import com.apcsa.data.Analytics;
+import com.apcsa.data.Backups;
+import com.apcsa.data.CategoryGrades;
+import com.apcsa.data.CourseRosters;
+import com.apcsa.data.CsvImport;
+import com.apcsa.data.DatabaseProfile;
+import com.apcsa.data.Enrollments;
+import com.apcsa.data.GpaUpdates;
+import com.apcsa.data.GradeRecompute;
+import com.apcsa.data.GradingPolicies;
+import com.apcsa.data.NameIndex;
 import com.apcsa.data.PowerSchool;
+import com.apcsa.data.QueryCache;
 import com.apcsa.data.QueryUtils;
+import com.apcsa.data.ReportCards;
+import com.apcsa.data.RosterStore;
+import com.apcsa.data.WalCheckpointer;
+import com.apcsa.data.WriteQueue;
+import com.apcsa.model.Assignment;
+import com.apcsa.model.RosterGrade;
 import com.apcsa.model.Student;
+import com.apcsa.model.StudentSummary;
 import com.apcsa.model.Teacher;
+import com.apcsa.model.TeacherSummary;
 import com.apcsa.model.User;
 
 public class Application {
@@ -18,9 +45,9 @@ public class Application {
     private Scanner in;
     private User activeUser;
     
-    enum RootAction { PASSWORD, DATABASE, LOGOUT, SHUTDOWN, INVALID }
-    enum AdministratorAction { FACULTY, DEPARTMENT, STUDENTS, GRADE, COURSE, PASSWORD, LOGOUT, INVALID }
-    enum TeacherAction { COURSE, ADD, DELETE, GRADE, PASSWORD, LOGOUT, INVALID }
+    enum RootAction { PASSWORD, DATABASE, STATUS, BACKUP, RESTORE, TRANSCRIPTS, RECOMPUTE, IMPORT, LOGOUT, SHUTDOWN, INVALID }
+    enum AdministratorAction { FACULTY, DEPARTMENT, STUDENTS, GRADE, COURSE, SEARCH, REPORTS, ENROLLMENT, HONOR_ROLL, FAILING, DISTRIBUTION, PASSWORD, LOGOUT, INVALID }
+    enum TeacherAction { COURSE, ADD, DELETE, GRADE, SEARCH, PASSWORD, LOGOUT, INVALID }
     enum StudentAction { GRADES, COURSE, PASSWORD, LOGOUT, INVALID }
     
     /**
@@ -68,13 +95,9 @@ public class Application {
                     String newPassword = in.next();
                     activeUser.setPassword(newPassword);
                     String auth = activeUser.getPassword();
-					try (Connection conn = PowerSchool.getConnection()){
-						PowerSchool.updateAuth(conn, username, auth);
+					if (PowerSchool.updateAuth(username, auth) == 1) {
 	                    System.out.println("\nYour password has been changed to " + newPassword);
-					} catch (SQLException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					}    
+					}
                 }
                 createAndShowUI();
             } else {
@@ -117,6 +140,12 @@ public class Application {
             switch (getRootMenuSelection()) {
                 case PASSWORD: resetPassword(); break;
                 case DATABASE: factoryReset(); break;
+                case STATUS: viewDatabaseStatus(); break;
+                case BACKUP: backupDatabase(); break;
+                case RESTORE: restoreDatabase(); break;
+                case TRANSCRIPTS: rebuildTranscripts(); break;
+                case RECOMPUTE: recomputeGrades(); break;
+                case IMPORT: importCsv(); break;
                 case LOGOUT: logout(); break;
                 case SHUTDOWN: shutdown(); break;
                 default: System.out.println("\nInvalid selection."); break;
@@ -135,21 +164,33 @@ public class Application {
         
         System.out.println("[1] Reset user password.");
         System.out.println("[2] Factory reset database.");
-        System.out.println("[3] Logout.");
-        System.out.println("[4] Shutdown.");
+        System.out.println("[3] Database status.");
+        System.out.println("[4] Back up database.");
+        System.out.println("[5] Restore database.");
+        System.out.println("[6] Rebuild transcripts.");
+        System.out.println("[7] Recompute all grades.");
+        System.out.println("[8] Import CSV data.");
+        System.out.println("[9] Logout.");
+        System.out.println("[10] Shutdown.");
         System.out.print("\n::: ");
         
         switch (Utils.getInt(in, -1)) {
             case 1: return RootAction.PASSWORD;
             case 2: return RootAction.DATABASE;
-            case 3: return RootAction.LOGOUT;
-            case 4: return RootAction.SHUTDOWN;
+            case 3: return RootAction.STATUS;
+            case 4: return RootAction.BACKUP;
+            case 5: return RootAction.RESTORE;
+            case 6: return RootAction.TRANSCRIPTS;
+            case 7: return RootAction.RECOMPUTE;
+            case 8: return RootAction.IMPORT;
+            case 9: return RootAction.LOGOUT;
+            case 10: return RootAction.SHUTDOWN;
             default: return RootAction.INVALID;
         }
      }
     
     private void viewFaculty() {        
-        ArrayList<Teacher> teachers = PowerSchool.getTeachers();
+        List<TeacherSummary> teachers = PowerSchool.getTeachers();
         
         if (teachers.isEmpty()) {
             System.out.println("\nNo teachers to display.");
@@ -157,7 +198,7 @@ public class Application {
             System.out.println();
             
             int i = 1;
-            for (Teacher teacher : teachers) {
+            for (TeacherSummary teacher : teachers) {
                 System.out.println(i++ + ". " + teacher.getName() + " / " + teacher.getDepartmentName());
             } 
         }
@@ -165,7 +206,7 @@ public class Application {
     
     
     private void viewFacultyByDepartment() {    	
-    	 ArrayList<Teacher> teachers = PowerSchool.getTeachersByDepartment(getDepartmentSelection());
+    	 List<TeacherSummary> teachers = PowerSchool.getTeachersByDepartment(getDepartmentSelection());
     	
     	if (teachers.isEmpty()) {
             System.out.println("\nNo teachers to display.");
@@ -173,7 +214,7 @@ public class Application {
             System.out.println();
             
             int i = 1;
-            for (Teacher teacher : teachers) {
+            for (TeacherSummary teacher : teachers) {
                 System.out.println(i++ + ". " + teacher.getName() + " / " + teacher.getDepartmentName());
             } 
         }
@@ -184,7 +225,7 @@ public class Application {
      */
 
     private void viewStudents() {
-    	ArrayList<Student> students = PowerSchool.getStudents();
+    	ArrayList<StudentSummary> students = PowerSchool.getStudents();
         
         if (students.isEmpty()) {
             System.out.println("\nNo students to display.");
@@ -192,14 +233,15 @@ public class Application {
             System.out.println();
             
             int i = 1;
-            for (Student student : students) {
+            for (StudentSummary student : students) {
                 System.out.println(i++ + ". " + student.getName() + " / " + student.getGraduationYear());
             } 
         }
     }
     
     private void viewStudentsByGrade() {
-    	ArrayList<Student> students = Utils.updateRanks(PowerSchool.getStudentsByGrade(getGradeSelection()));
+    	GpaUpdates.flush();
+    	ArrayList<StudentSummary> students = Utils.updateRanks(PowerSchool.getStudentsByGrade(getGradeSelection()));
     	
     	if (students.isEmpty()) {
             System.out.println("\nNo students to display.");
@@ -207,7 +249,7 @@ public class Application {
             System.out.println();
             
             int i = 1;
-            for (Student student : students) {
+            for (StudentSummary student : students) {
                 System.out.println(i++ + ". " + student.getName() + " / " + "#" + student.getClassRank());
             } 
         }
@@ -222,22 +264,30 @@ public class Application {
 		}catch(SQLException e) {
 			
 		}
-		ArrayList<Student> students = PowerSchool.getStudentsByCourse(courseNo);
-    	
-    	if (students.isEmpty()) {
-            System.out.println("\nNo students to display.");
-        } else {
-            System.out.println();
-            
-            int i = 1;
-            for (Student student : students) {
-                System.out.println(i++ + ". " + student.getName() + " / " + fixGPA(student));
-            } 
-        }
+		printRoster(CourseRosters.get(courseNo));
 	}
 	
-	private String fixGPA(Student student) {
-		double GPA = student.getGpa();
+	/*
+	 * Searches students and teachers by name or username.
+	 */
+
+	private void searchByName() {
+	    System.out.print("\nName: ");
+	    ArrayList<NameIndex.Match> matches = NameIndex.searchFuzzy(in.next());
+
+	    if (matches.isEmpty()) {
+	        System.out.println("\nNo matches found.");
+	    } else {
+	        System.out.println();
+
+	        int i = 1;
+	        for (NameIndex.Match match : matches) {
+	            System.out.println(i++ + ". " + match.getName() + " / " + match.getUsername() + " (" + match.getAccountType() + ")");
+	        }
+	    }
+	}
+
+	private String fixGPA(double GPA) {
 		if(GPA == -1) {
 			return "--";
 		}else {
@@ -253,11 +303,8 @@ public class Application {
         if(activeUser.getPassword().equals(Utils.getHash(currentPassword))) {
         	activeUser.setPassword(newPassword);
             String auth = activeUser.getPassword();
-    		try (Connection conn = PowerSchool.getConnection()){
-    			PowerSchool.updateAuth(conn, activeUser.getUsername(), auth);
+    		if (PowerSchool.updateAuth(activeUser.getUsername(), auth) == 1) {
                 System.out.println("\nYour password has been changed to " + newPassword);
-    		} catch (SQLException e) {
-    			e.printStackTrace();
     		}
         }else {
         	System.out.println("\nInvalid current password.");
@@ -337,13 +384,7 @@ public class Application {
 	}
 
     private boolean isValidCourse(String courseId) {
-    	boolean validCourse = false;
-		for(int i=1; i <  PowerSchool.getNumberOfCourses(); i++) {
-			if(PowerSchool.getCourseNumber(i).equals(courseId)) {
-				validCourse = true;
-			}
-		}
-		return validCourse;
+		return CourseRosters.getCourseId(courseId) >= 0;
 	}
 
 	/*
@@ -377,6 +418,12 @@ public class Application {
                 case STUDENTS: viewStudents(); break;
                 case GRADE: viewStudentsByGrade(); break;
                 case COURSE: viewStudentsByCourse(); break;
+                case SEARCH: searchByName(); break;
+                case REPORTS: generateReportCards(); break;
+                case ENROLLMENT: manageEnrollment(); break;
+                case HONOR_ROLL: viewHonorRoll(); break;
+                case FAILING: viewFailingByDepartment(); break;
+                case DISTRIBUTION: viewGradeDistribution(); break;
                 case PASSWORD: changePassword(); break;
                 case LOGOUT: logout(); break;
                 default: System.out.println("\nInvalid selection."); break;
@@ -398,8 +445,14 @@ public class Application {
         System.out.println("[3] View student enrollment.");
         System.out.println("[4] View student enrollment by grade.");
         System.out.println("[5] View student enrollment by course.");
-        System.out.println("[6] Change password.");
-        System.out.println("[7] Logout.");
+        System.out.println("[6] Search by name.");
+        System.out.println("[7] Generate report cards.");
+        System.out.println("[8] Manage course enrollment.");
+        System.out.println("[9] View honor roll.");
+        System.out.println("[10] View failing students by department.");
+        System.out.println("[11] View grade distribution by course.");
+        System.out.println("[12] Change password.");
+        System.out.println("[13] Logout.");
         System.out.print("\n::: ");
 
         switch (Utils.getInt(in, -1)) {
@@ -408,8 +461,14 @@ public class Application {
             case 3: return AdministratorAction.STUDENTS;
             case 4: return AdministratorAction.GRADE;
             case 5: return AdministratorAction.COURSE;
-            case 6: return AdministratorAction.PASSWORD;
-            case 7: return AdministratorAction.LOGOUT;
+            case 6: return AdministratorAction.SEARCH;
+            case 7: return AdministratorAction.REPORTS;
+            case 8: return AdministratorAction.ENROLLMENT;
+            case 9: return AdministratorAction.HONOR_ROLL;
+            case 10: return AdministratorAction.FAILING;
+            case 11: return AdministratorAction.DISTRIBUTION;
+            case 12: return AdministratorAction.PASSWORD;
+            case 13: return AdministratorAction.LOGOUT;
             default: return AdministratorAction.INVALID;
         }
     }
@@ -421,6 +480,7 @@ public class Application {
                 case ADD: addAssignment(); break;
                 case DELETE: deleteAssignment(); break;
                 case GRADE: enterGrade(); break;
+                case SEARCH: searchByName(); break;
                 case PASSWORD: changePassword(); break;
                 case LOGOUT: logout(); break;
                 default: System.out.println("\nInvalid selection."); break;
@@ -441,8 +501,9 @@ public class Application {
         System.out.println("[2] Add assignment.");
         System.out.println("[3] Delete assignment.");
         System.out.println("[4] Enter grade.");
-        System.out.println("[5] Change password.");
-        System.out.println("[6] Logout.");
+        System.out.println("[5] Search by name.");
+        System.out.println("[6] Change password.");
+        System.out.println("[7] Logout.");
         System.out.print("\n::: ");
 
         switch (Utils.getInt(in, -1)) {
@@ -450,31 +511,44 @@ public class Application {
             case 2: return TeacherAction.ADD;
             case 3: return TeacherAction.DELETE;
             case 4: return TeacherAction.GRADE;
-            case 5: return TeacherAction.PASSWORD;
-            case 6: return TeacherAction.LOGOUT;
+            case 5: return TeacherAction.SEARCH;
+            case 6: return TeacherAction.PASSWORD;
+            case 7: return TeacherAction.LOGOUT;
             default: return TeacherAction.INVALID;
         }
     }
 	
 	private void viewEnrollmentByCourse() {
 		String courseNumber = getCourseSelectionTeacher();
-		ArrayList<Student> students = PowerSchool.getStudentsByCourse(courseNumber);
-    	
-    	if (students.isEmpty()) {
+		if (courseNumber == null) {
+			return;
+		}
+		printRoster(CourseRosters.get(courseNumber));
+	}
+	
+	/*
+	 * Lists a course's students in name order with their GPAs.
+	 */
+	
+	private void printRoster(CourseRosters.Roster roster) {
+		GpaUpdates.flush();
+		
+		if (roster == null || roster.size() == 0) {
             System.out.println("\nNo students to display.");
         } else {
             System.out.println();
             
-            int i = 1;
-            for (Student student : students) {
-                System.out.println(i++ + ". " + student.getName() + " / " + fixGPA(student));
+            for (int i = 0; i < roster.size(); i++) {
+                System.out.println((i + 1) + ". " + roster.getName(i) + " / " + fixGPA(roster.getGpa(i)));
             } 
         }
-		
 	}
 	
 	private void addAssignment() {
 		int courseId = getCourseId();
+		if (courseId < 0) {
+			return;
+		}
 		int assignmentId = getAssignmentId();
 		int markingPeriod = 0;
 		int isMidterm = 0;
@@ -536,8 +610,9 @@ public class Application {
         	System.out.println("\nPoint values must be between 1 and 100.\n");
         }
         }while(pointValue < 1 || pointValue > 101);
+        String category = getCategorySelection(courseId);
 		if(Utils.confirm(in, "\nAre you sure you want to create this assignment? (y/n) ")){
-			if(PowerSchool.addAssignment(courseId, assignmentId, markingPeriod, isMidterm, isFinal, title, pointValue) == 1) {
+			if(PowerSchool.addAssignment(courseId, assignmentId, markingPeriod, isMidterm, isFinal, title, pointValue, category) == 1) {
 				System.out.println("\nSuccessfully created assignment.");
 			}else {
 				System.out.println("\nError creating assignment.");
@@ -545,9 +620,39 @@ public class Application {
 		}		
 	}
 
+	/*
+	 * Retrieves a teacher's choice of assignment category, from the categories the
+	 * course's grading policy weights.
+	 *
+	 * @param courseId the course
+	 * @return the selected category
+	 */
+
+	private String getCategorySelection(int courseId) {
+	    String[] categories = GradingPolicies.forCourse(courseId).getCategories();
+	    int selection = -1;
+
+	    if (categories.length == 0) {
+	        return CategoryGrades.DEFAULT_CATEGORY;
+	    }
+
+	    System.out.println("\nChoose a category.");
+	    while (selection < 1 || selection > categories.length) {
+	        System.out.println();
+	        for (int i = 0; i < categories.length; i++) {
+	            System.out.println("[" + (i + 1) + "] " + categories[i] + ".");
+	        }
+	        System.out.print("\n::: ");
+
+	        selection = Utils.getInt(in, -1);
+	    }
+
+	    return categories[selection - 1];
+	}
+
 	private int getCourseId() {
 		String courseNumber = getCourseSelectionTeacher();
-		return PowerSchool.getCourseId(courseNumber);
+		return courseNumber != null ? CourseRosters.getCourseId(courseNumber) : -1;
 	} 
 
 	private int getAssignmentId() {		
@@ -562,6 +667,9 @@ public class Application {
 
 	private void deleteAssignment() {
 		int courseId = getCourseId();
+		if (courseId < 0) {
+			return;
+		}
 		System.out.println("\nChoose a marking period or exam status.\n");
 		System.out.println("[1] MP1 assignment.");
         System.out.println("[2] MP2 assignment.");
@@ -585,16 +693,15 @@ public class Application {
             System.out.print("\n::: ");
             markingPeriod = Utils.getInt(in, -1);                 
         }
-		 ArrayList<String> assignments = PowerSchool.getAssignments(courseId, markingPeriod);
-		 ArrayList<String> pointValues = PowerSchool.getPointValues(courseId, markingPeriod);
+		 ArrayList<Assignment> assignments = PowerSchool.getAssignments(courseId, markingPeriod);
 		 
 		 System.out.println();
 		 if(!assignments.isEmpty()) {
 			 int assignmentSelection = -1;
 		        while(assignmentSelection <= 0 || assignmentSelection > assignments.size()) {
 		       	 int j = 1;
-		            for (String i: assignments) {
-		                System.out.println("["+ j++ + "] " + i + " (" + pointValues.get(j-2) + " pts)");
+		            for (Assignment assignment : assignments) {
+		                System.out.println("["+ j++ + "] " + assignment.getTitle() + " (" + assignment.getPointValue() + " pts)");
 		            }
 		       	 System.out.print("\n::: ");
 		       	assignmentSelection = Utils.getInt(in, -1);
@@ -602,10 +709,10 @@ public class Application {
 		       		 System.out.println("\nInvalid Selection.\n");
 		       	 }
 		        }
-		        String title = assignments.get(assignmentSelection-1);
-		        int assignemntId = PowerSchool.getAssignmentId(courseId, markingPeriod, title);
+		        Assignment selected = assignments.get(assignmentSelection-1);
+		        String title = selected.getTitle();
 		        if(Utils.confirm(in, "\nAre you sure you want to delete this assignment? (y/n) ")) {
-		        	if(PowerSchool.deleteAssignment(courseId, markingPeriod, title) == 1 && PowerSchool.deleteAssignmentGrades(assignemntId, courseId) ==1 ) {
+		        	if(PowerSchool.deleteAssignment(courseId, selected.getAssignmentId()) == 1) {
 		        		
 		        		System.out.println("\nSuccessfully deleted " + title + ".");		        		
 		        	}else {
@@ -620,7 +727,9 @@ public class Application {
 	
     private void enterGrade() {
         int courseId = getCourseId();
-        String courseNo = PowerSchool.getCourseNumber(courseId);
+        if (courseId < 0) {
+            return;
+        }
         System.out.println("\nChoose a marking period or exam status.\n");
 		System.out.println("[1] MP1 assignment.");
         System.out.println("[2] MP2 assignment.");
@@ -645,16 +754,14 @@ public class Application {
             markingPeriod = Utils.getInt(in, -1);                 
         }
         
-        ArrayList<String> assignments = PowerSchool.getAssignments(courseId, markingPeriod);
-		ArrayList<String> pointValues = PowerSchool.getPointValues(courseId, markingPeriod);
-		ArrayList<String> assignmentids = PowerSchool.getAssignmentIds(courseId, markingPeriod);
+        ArrayList<Assignment> assignments = PowerSchool.getAssignments(courseId, markingPeriod);
 		System.out.println(); 
 		int assignmentSelection = -1;
 		 if(!assignments.isEmpty()) {
 		        while(assignmentSelection <= 0 || assignmentSelection > assignments.size()) {
 		       	 int j = 1;
-		            for (String i: assignments) {
-		                System.out.println("["+ j++ + "] " + i + " (" + pointValues.get(j-2) + " pts)");
+		            for (Assignment assignment : assignments) {
+		                System.out.println("["+ j++ + "] " + assignment.getTitle() + " (" + assignment.getPointValue() + " pts)");
 		            }
 		       	 System.out.print("\n::: ");
 		       	assignmentSelection = Utils.getInt(in, -1);
@@ -663,9 +770,10 @@ public class Application {
 		       	 }
 		        }
 		        System.out.println("");
-		        ArrayList<Student> students = PowerSchool.getStudentsByCourse(courseNo);
+		        Assignment selected = assignments.get(assignmentSelection-1);
+		        ArrayList<RosterGrade> roster = PowerSchool.getRosterGrades(courseId, selected.getAssignmentId());
 		    	
-		    	if (students.isEmpty()) {
+		    	if (roster.isEmpty()) {
 		            System.out.println("\nNo students to display.");
 		        } else {
 		        	System.out.println("Choose a student.");
@@ -674,181 +782,78 @@ public class Application {
 		            int selectedStudent = -1;
 		            do {
 		            	int i = 1;
-		            	for (Student student : students) {	            	
+		            	for (RosterGrade student : roster) {	            	
 			                System.out.println("[" + i++ + "] " + student.getName());
 			            }		            
 				    	System.out.print("\n::: ");
 				    	selectedStudent = Utils.getInt(in, -1);
-				    	if(selectedStudent < 1 || selectedStudent > students.size()) {
+				    	if(selectedStudent < 1 || selectedStudent > roster.size()) {
 				    		System.out.println("\nInvalid Selection.\n");
 				    	}
-		            }while(selectedStudent < 1 || selectedStudent > students.size());
-		            System.out.println();
-			    	ArrayList<String> availableStudents = PowerSchool.getStudentsByCourseWithoutObject(courseNo);
-			    	String selectedStudentId = availableStudents.get(selectedStudent-1);
-			    	int selectedStudentIdButItsActuallyAnInteger = Integer.parseInt(selectedStudentId);
-			    	String title = assignments.get(assignmentSelection-1);
-			    	String points = pointValues.get(assignmentSelection-1);
-			    	String assignmentId = assignmentids.get(assignmentSelection-1);
-		    	
-			    	String assignmentDescription = "Assignment: " + title + " (" + points + " pts)";
-			    	
-			    	System.out.println(assignmentDescription);
-			    	
-			    	ArrayList<String> studentName = PowerSchool.getStudentById(selectedStudentIdButItsActuallyAnInteger);
-			    	String studentLastName = studentName.get(1);
-			    	String studentFirstName = studentName.get(0);
-			    	
-			    	System.out.println("Student: " + studentLastName + ", " + studentFirstName);
-			    	
-			    	
-			    	ArrayList<String> grades = PowerSchool.getAssignmentGrade(assignmentId, selectedStudentIdButItsActuallyAnInteger);			    	
-			    	
-			    	if (grades.isEmpty()) {
-			    		System.out.println("Current Grade: --"); 
-			    	} else {
-			    		String assignmentGrade = grades.get(0);
-			    		System.out.println("Current Grade: " + assignmentGrade + "/" + points);
-			    		grades.clear();
-			    	} 
-			    	
-			    	System.out.print("\nNew Grade: ");
-			    	
-			    	int newGrade = Utils.getInt(in, -1);
-			    	if (newGrade > Integer.parseInt(points) || newGrade < 0) {
-			    		while(newGrade > Integer.parseInt(points) || newGrade < 0) {
-			    			System.out.print("Please enter a valid grade: ");
-			    			newGrade = Utils.getInt(in, -1);
-			    		}
-			    	}
-			    	
-			    	if(Utils.confirm(in, "\nAre you sure you want to enter this grade? (y/n) ")){
-			    		PowerSchool.deleteAssignmentGrade(Integer.parseInt(assignmentId), selectedStudentIdButItsActuallyAnInteger);
-			    		if(PowerSchool.enterGrade(courseId, Integer.parseInt(assignmentId), selectedStudentIdButItsActuallyAnInteger, newGrade, Integer.parseInt(points), true) == 1) {
-			    			System.out.println("\nSuccessfully entered grade.");
-			      
-			                   ArrayList<Integer> assignmentIds = PowerSchool.getAssignmentIdByMP(markingPeriod);
-			                   ArrayList<Double> grades1 = new ArrayList<Double>();
-
-			                    for (int i = 0; i < assignmentIds.size(); i++) {
-			                        grades1.addAll(PowerSchool.getGrades(courseId, assignmentIds.get(i),selectedStudentIdButItsActuallyAnInteger));
-			                    }
-			                    ArrayList<Double> percent = new ArrayList<Double>();
-			                    for (int i = 0; i < grades1.size(); i+=2) {
-			                        percent.add((grades1.get(i)/grades1.get(i+1))*100);
-			                    }
-			                    double total = 0;
-			                    for (int i = 0; i < percent.size(); i++) {
-			                        total += percent.get(i);
-			                    }
-			                    double average = total/percent.size();
-			                    switch (markingPeriod) {
-			                    case 1: PowerSchool.updateCourseGradesMP1(courseId, selectedStudentIdButItsActuallyAnInteger, average); break;
-			                    case 2: PowerSchool.updateCourseGradesMP2(courseId, selectedStudentIdButItsActuallyAnInteger, average); break;
-			                    case 3: PowerSchool.updateCourseGradesMP3(courseId, selectedStudentIdButItsActuallyAnInteger, average); break;
-			                    case 4: PowerSchool.updateCourseGradesMP4(courseId, selectedStudentIdButItsActuallyAnInteger, average); break;
-			                    case 5: PowerSchool.updateCourseGradesMidterm(courseId, selectedStudentIdButItsActuallyAnInteger, average); break;
-			                    case 6: PowerSchool.updateCourseGradesFinal(courseId, selectedStudentIdButItsActuallyAnInteger, average); break;
-			                    default: System.out.println("\nInvalid selection.\n"); break;
-			                    }
-			                }
-			                ArrayList<Double> grades1 = new ArrayList<Double>();
-			                if (PowerSchool.getMP1Grade(courseId, selectedStudentIdButItsActuallyAnInteger) == null){
-			                    grades1.add(-1.0);
-			                } else {
-			                    grades1.add((Double) PowerSchool.getMP1Grade(courseId, selectedStudentIdButItsActuallyAnInteger));
-			                }
-			                if (PowerSchool.getMP2Grade(courseId, selectedStudentIdButItsActuallyAnInteger) == null){
-			                    grades1.add(-1.0);
-			                } else {
-			                    grades1.add((Double) PowerSchool.getMP2Grade(courseId, selectedStudentIdButItsActuallyAnInteger));
-			                }
-			                if (PowerSchool.getMP3Grade(courseId, selectedStudentIdButItsActuallyAnInteger) == null){
-			                    grades1.add(-1.0);
-			                } else {
-			                    grades1.add((Double) PowerSchool.getMP3Grade(courseId, selectedStudentIdButItsActuallyAnInteger));
-			                }
-			                if (PowerSchool.getMP4Grade(courseId, selectedStudentIdButItsActuallyAnInteger) == null){
-			                    grades1.add(-1.0);
-			                } else {
-			                    grades1.add((Double) PowerSchool.getMP4Grade(courseId, selectedStudentIdButItsActuallyAnInteger));
-			                }
-			                if (PowerSchool.getMidtermGrade(courseId, selectedStudentIdButItsActuallyAnInteger) == null){
-			                    grades1.add(-1.0);
-			                } else {
-			                    grades1.add((Double) PowerSchool.getMidtermGrade(courseId, selectedStudentIdButItsActuallyAnInteger));
-			                }
-			                
-			                if (PowerSchool.getFinalGrade(courseId, selectedStudentIdButItsActuallyAnInteger) == null){
-			                    grades1.add(-1.0);
-			                } else {
-			                    grades1.add((Double) PowerSchool.getFinalGrade(courseId, selectedStudentIdButItsActuallyAnInteger));
-			                }
-
-			                double grade = Utils.getGrade(grades1);
-			                PowerSchool.updateCourseGrade(courseId, selectedStudentIdButItsActuallyAnInteger, grade);
-			                PowerSchool.getCourseGrades(selectedStudentIdButItsActuallyAnInteger);
-
-			                ArrayList<Object> courseGrades = PowerSchool.getCourseGrades(selectedStudentIdButItsActuallyAnInteger);
-			                ArrayList<Double> fourScale = new ArrayList<Double>();
-			                for (int i = 0; i < courseGrades.size(); i++) {
-			                    if ((Double) courseGrades.get(i) == -1.0) {
-
-			                    } else if ((Double) courseGrades.get(i) >= 93 && (Double) courseGrades.get(i) <= 100) {
-			                        fourScale.add(4.0);
-			                    } else if ((Double) courseGrades.get(i) >= 90 && (Double) courseGrades.get(i) <= 92) {
-			                        fourScale.add(3.7);
-			                    } else if ((Double) courseGrades.get(i) >= 87 && (Double) courseGrades.get(i) <= 89) {
-			                        fourScale.add(3.3);
-			                    } else if ((Double) courseGrades.get(i) >= 83 && (Double) courseGrades.get(i) <= 86) {
-			                        fourScale.add(3.0);
-			                    } else if ((Double) courseGrades.get(i) >= 80 && (Double) courseGrades.get(i) <= 82) {
-			                        fourScale.add(2.7);
-			                    } else if ((Double) courseGrades.get(i) >= 77 && (Double) courseGrades.get(i) <= 79) {
-			                        fourScale.add(2.3);
-			                    } else if ((Double) courseGrades.get(i) >= 73 && (Double) courseGrades.get(i) <= 76) {
-			                        fourScale.add(2.0);
-			                    } else if ((Double) courseGrades.get(i) >= 70 && (Double) courseGrades.get(i) <= 72) {
-			                        fourScale.add(1.7);
-			                    } else if ((Double) courseGrades.get(i) >= 67 && (Double) courseGrades.get(i) <= 69) {
-			                        fourScale.add(1.3);
-			                    } else if ((Double) courseGrades.get(i) >= 65 && (Double) courseGrades.get(i) <= 66) {
-			                        fourScale.add(1.0);
-			                    } else if ((Double) courseGrades.get(i) > 65) {
-			                        fourScale.add(0.0);
-			                    }
-			                }
-			                ArrayList<Integer> courseIds = PowerSchool.getCourseIds(selectedStudentIdButItsActuallyAnInteger);
-			                ArrayList<Integer> creditHours = PowerSchool.getCreditHours(courseIds);
-			                int totalGradePoints = 0;
-			                int hours = 0;
-			                for (int i = 0; i < fourScale.size(); i++) {
-			                    totalGradePoints += fourScale.get(i)*creditHours.get(i);
-			                    hours += creditHours.get(i);
-			                }
-			                double gpa = (double) (totalGradePoints)/ (double) hours;
-			                double roundedGpa = Math.round(gpa * 100.0) / 100.0;
-			                PowerSchool.updateGPA(roundedGpa, selectedStudentIdButItsActuallyAnInteger);
-			           
-			    			
-			    		}else {
-			    			System.out.println("Error entering grade.");
-			    		}
-			    	}
+		            }while(selectedStudent < 1 || selectedStudent > roster.size());
+		            
+		            // grade the chosen student, then keep going down the roster if asked
+		            
+		            for (int index = selectedStudent - 1; index < roster.size(); index++) {
+		            	roster.set(index, gradeStudent(courseId, selected, roster.get(index)));
+		            	
+		            	if (index + 1 == roster.size()
+		            			|| !Utils.confirm(in, "\nEnter a grade for the next student, " + roster.get(index + 1).getName() + "? (y/n) ")) {
+		            		break;
+		            	}
+		            }
 		    	}
-			    		        
-		        
-			    	else {
+		 } else {
 			System.out.println("No assignments.");
-		}
-		        }
+		 }
+    }
+
+    /*
+     * Shows one student's current grade on an assignment and records a new one.
+     * The grade, term grades, course grade, and transcript are written together in
+     * one write. Their GPA is recomputed later, together with any others that
+     * change in the meantime.
+     *
+     * @return the student's roster row, updated if a grade was entered
+     */
+
+    private RosterGrade gradeStudent(int courseId, Assignment assignment, RosterGrade student) {
+        int points = assignment.getPointValue();
+        int studentId = student.getStudentId();
+
+        System.out.println();
+        System.out.println("Assignment: " + assignment.getTitle() + " (" + points + " pts)");
+        System.out.println("Student: " + student.getName());
+        System.out.println("Current Grade: " + (student.isGraded() ? student.getPointsEarned() + "/" + points : "--"));
+
+        System.out.print("\nNew Grade: ");
+        int newGrade = Utils.getInt(in, -1);
+        while (newGrade > points || newGrade < 0) {
+            System.out.print("Please enter a valid grade: ");
+            newGrade = Utils.getInt(in, -1);
+        }
+
+        if (!Utils.confirm(in, "\nAre you sure you want to enter this grade? (y/n) ")) {
+            return student;
+        }
+
+        if (PowerSchool.gradeStudent(courseId, assignment.getAssignmentId(), studentId, newGrade, points) != 1) {
+            System.out.println("Error entering grade.");
+            return student;
+        }
+        System.out.println("\nSuccessfully entered grade.");
+
+        return student.withPoints(newGrade);
+    }
 		 
-		
-		
 	
 	 private String getCourseSelectionTeacher() {
 		 Teacher teacher = PowerSchool.getTeacher(activeUser);
-		 ArrayList<String> courses = PowerSchool.getCourses(teacher.getDepartmentId());
+		 List<String> courses = PowerSchool.getCoursesByTeacher(teacher.getTeacherId());
+		 if (courses.isEmpty()) {
+			 System.out.println("\nYou aren't teaching any courses.");
+			 return null;
+		 }
 		 System.out.println();		 
 		 System.out.println("Choose a course.\n");		 
          int courseSelection = -1;
@@ -927,6 +932,373 @@ public class Application {
     	}
     }
     
+    /*
+     * Shows the active database profile and WAL checkpoint lag, and optionally
+     * switches to another profile.
+     */
+
+    private void viewDatabaseStatus() {
+        System.out.println("\nProfile: " + PowerSchool.getProfile().getName());
+        System.out.println(WalCheckpointer.getStatus());
+        System.out.println(Backups.getStatus());
+        System.out.println(QueryCache.getStatus());
+
+        if (Utils.confirm(in, "\nDo you want to change the database profile? (y/n) ")) {
+            DatabaseProfile[] profiles = DatabaseProfile.values();
+            int selection = -1;
+
+            while (selection < 1 || selection > profiles.length) {
+                System.out.println();
+                for (int i = 0; i < profiles.length; i++) {
+                    System.out.println("[" + (i + 1) + "] " + profiles[i].getName());
+                }
+                System.out.print("\n::: ");
+
+                selection = Utils.getInt(in, -1);
+            }
+
+            PowerSchool.setProfile(profiles[selection - 1]);
+            WriteQueue.runExclusive(() -> 0);      // reopen the writer connection with the new pragmas
+            System.out.println("\nSuccessfully changed profile to " + profiles[selection - 1].getName() + ".");
+        }
+    }
+
+    /*
+     * Writes a point-in-time snapshot of the live database.
+     */
+
+    private void backupDatabase() {
+        File snapshot = Backups.snapshot();
+
+        if (snapshot != null) {
+            System.out.println("\nSuccessfully saved backup " + snapshot.getName() + ".");
+        } else {
+            System.out.println("\nError saving backup.");
+        }
+    }
+
+    /*
+     * Replaces the live database with a backup selected by the user.
+     */
+
+    private void restoreDatabase() {
+        File[] backups = Backups.list();
+
+        if (backups.length == 0) {
+            System.out.println("\nNo backups to restore.");
+            return;
+        }
+
+        int selection = -1;
+        while (selection < 1 || selection > backups.length) {
+            System.out.println();
+            for (int i = 0; i < backups.length; i++) {
+                System.out.println("[" + (i + 1) + "] " + backups[i].getName());
+            }
+            System.out.print("\n::: ");
+
+            selection = Utils.getInt(in, -1);
+        }
+
+        File backup = backups[selection - 1];
+        if (Utils.confirm(in, "\nAre you sure you want to replace all data with " + backup.getName() + "? (y/n) ")) {
+            if (Backups.restore(backup)) {
+                System.out.println("\nSuccessfully restored database.");
+            } else {
+                System.out.println("\nError restoring database. No changes were made.");
+            }
+        }
+    }
+
+    /*
+     * Rebuilds every student transcript from the course grades.
+     */
+
+    private void rebuildTranscripts() {
+        if (Utils.confirm(in, "\nAre you sure you want to rebuild all transcripts? (y/n) ")) {
+            int rows = PowerSchool.rebuildTranscripts();
+
+            if (rows >= 0) {
+                System.out.println("\nSuccessfully rebuilt " + rows + " transcript rows.");
+            } else {
+                System.out.println("\nError rebuilding transcripts.");
+            }
+        }
+    }
+
+    /*
+     * Recomputes every course grade and GPA from the stored term grades, resuming an
+     * interrupted run if there is one.
+     */
+
+    private void recomputeGrades() {
+        boolean resume = false;
+
+        if (GradeRecompute.hasCheckpoint()) {
+            resume = Utils.confirm(in, "\nA previous recompute was interrupted. Resume it? (y/n) ");
+        }
+
+        if (resume || Utils.confirm(in, "\nAre you sure you want to recompute every course grade and GPA? (y/n) ")) {
+            try {
+                GradeRecompute.Result result = GradeRecompute.run(resume, (done, total) ->
+                    System.out.print("\r" + done + " of " + total + " students..."));
+
+                System.out.println("\n\n" + result);
+            } catch (SQLException e) {
+                System.out.println("\nError recomputing grades: " + e.getMessage());
+            }
+        }
+    }
+
+    /*
+     * Imports students, teachers, courses, enrollments, or assignment grades from a
+     * CSV file.
+     */
+
+    private void importCsv() {
+        CsvImport.Kind[] kinds = CsvImport.Kind.values();
+        int selection = -1;
+
+        while (selection < 1 || selection > kinds.length) {
+            System.out.println();
+            for (int i = 0; i < kinds.length; i++) {
+                System.out.println("[" + (i + 1) + "] " + kinds[i].name().toLowerCase()
+                    + " (" + String.join(", ", kinds[i].getColumns()) + ")");
+            }
+            System.out.print("\n::: ");
+
+            selection = Utils.getInt(in, -1);
+        }
+
+        System.out.print("\nPath to CSV file: ");
+        File file = new File(in.nextLine().trim());
+
+        if (!file.isFile()) {
+            System.out.println("\nNo such file.");
+            return;
+        }
+
+        System.out.println("\nWhile the import runs, the database skips syncing to disk. Any grades or other");
+        System.out.println("changes saved during the import, by anyone, could be lost if the computer crashes.");
+        if (!Utils.confirm(in, "\nDo you want to start the import? (y/n) ")) {
+            return;
+        }
+
+        try {
+            CsvImport.Result result = CsvImport.run(kinds[selection - 1], file,
+                (read, imported) -> System.out.print("\rImported " + imported + " of " + read + " rows..."));
+
+            System.out.println("\n\n" + result);
+            for (String error : result.getErrors()) {
+                System.out.println(error);
+            }
+        } catch (IOException e) {
+            System.out.println("\nError importing " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /*
+     * Writes a report card for every enrolled student.
+     */
+
+    private void generateReportCards() {
+        ReportCards.Format[] formats = ReportCards.Format.values();
+        int selection = -1;
+
+        while (selection < 1 || selection > formats.length) {
+            System.out.println();
+            for (int i = 0; i < formats.length; i++) {
+                System.out.println("[" + (i + 1) + "] " + formats[i].name().toLowerCase());
+            }
+            System.out.print("\n::: ");
+
+            selection = Utils.getInt(in, -1);
+        }
+
+        File directory = new File("data/reports/" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()));
+
+        try {
+            int count = ReportCards.generate(formats[selection - 1], directory);
+            System.out.println("\nSuccessfully wrote " + count + " report cards to " + directory.getPath() + ".");
+        } catch (SQLException | IOException e) {
+            System.out.println("\nError generating report cards: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Enrolls students in or drops them from a course, respecting its capacity.
+     */
+
+    private void manageEnrollment() {
+        System.out.print("\nCourse No.: ");
+        String courseNo = in.nextLine().trim();
+        int courseId = CourseRosters.getCourseId(courseNo);
+        String status = Enrollments.getStatus(courseId);
+
+        if (status == null) {
+            System.out.println("\nCourse not found.");
+            return;
+        }
+
+        System.out.println("\n" + courseNo + ": " + status);
+        System.out.println("\n[1] Enroll student.");
+        System.out.println("[2] Drop student.");
+        System.out.println("[3] Back.");
+        System.out.print("\n::: ");
+
+        int action = Utils.getInt(in, -1);
+        if (action != 1 && action != 2) {
+            return;
+        }
+
+        System.out.print("\nStudent ID: ");
+        int studentId = Utils.getInt(in, -1);
+
+        if (PowerSchool.getStudentById(studentId).isEmpty()) {
+            System.out.println("\nStudent not found.");
+            return;
+        }
+
+        Enrollments.Outcome outcome;
+        if (action == 1) {
+            outcome = Enrollments.enroll(courseId, studentId, false);
+
+            if (outcome == Enrollments.Outcome.FULL
+                    && Utils.confirm(in, "\n" + courseNo + " is full. Add the student to the waitlist? (y/n) ")) {
+                outcome = Enrollments.enroll(courseId, studentId, true);
+            }
+        } else {
+            outcome = Enrollments.drop(courseId, studentId);
+        }
+
+        switch (outcome) {
+            case ENROLLED: System.out.println("\nSuccessfully enrolled student."); break;
+            case WAITLISTED: System.out.println("\nSuccessfully added student to the waitlist."); break;
+            case DROPPED: System.out.println("\nSuccessfully dropped student."); break;
+            case ALREADY_ENROLLED: System.out.println("\nStudent is already enrolled."); break;
+            case ALREADY_WAITLISTED: System.out.println("\nStudent is already on the waitlist."); break;
+            case FULL: System.out.println("\nCourse is full."); break;
+            case NOT_ENROLLED: System.out.println("\nStudent is not enrolled."); break;
+            default: System.out.println("\nError updating enrollment."); break;
+        }
+    }
+
+    /*
+     * Lists the students with every grade for a term at or above the honor roll minimum.
+     */
+
+    private void viewHonorRoll() {
+        int term = getTermSelection();
+
+        try {
+            ArrayList<Analytics.Honoree> honorees = Analytics.getHonorRoll(term);
+            ArrayList<Integer> studentIds = new ArrayList<Integer>();
+            for (Analytics.Honoree honoree : honorees) {
+                studentIds.add(honoree.getStudentId());
+            }
+            HashMap<Integer, String> names = PowerSchool.getStudentNames(studentIds);
+
+            if (honorees.isEmpty()) {
+                System.out.println("\nNo students qualify.");
+            } else {
+                System.out.println();
+                for (int i = 0; i < honorees.size(); i++) {
+                    Analytics.Honoree honoree = honorees.get(i);
+
+                    System.out.println((i + 1) + ". " + names.get(honoree.getStudentId())
+                        + " / " + String.format("%.2f", honoree.getAverage()));
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("\nError computing honor roll: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Lists every failing grade for a term, grouped by department.
+     */
+
+    private void viewFailingByDepartment() {
+        int term = getTermSelection();
+
+        try {
+            TreeMap<Integer, ArrayList<Analytics.Failure>> failures = Analytics.getFailuresByDepartment(term);
+            HashMap<Integer, String> departments = PowerSchool.getDepartmentTitles();
+            HashSet<Integer> studentIds = new HashSet<Integer>();
+            for (ArrayList<Analytics.Failure> department : failures.values()) {
+                for (Analytics.Failure failure : department) {
+                    studentIds.add(failure.getStudentId());
+                }
+            }
+            HashMap<Integer, String> names = PowerSchool.getStudentNames(studentIds);
+
+            if (failures.isEmpty()) {
+                System.out.println("\nNo failing grades.");
+            }
+
+            for (Integer departmentId : failures.keySet()) {
+                System.out.println("\n" + departments.get(departmentId) + ":\n");
+
+                for (Analytics.Failure failure : failures.get(departmentId)) {
+                    System.out.println(names.get(failure.getStudentId()) + " / " + failure.getCourseNo()
+                        + " / " + String.format("%.2f", failure.getGrade()));
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("\nError computing failing grades: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Shows how each course's grades for a term are spread across ten-point ranges.
+     */
+
+    private void viewGradeDistribution() {
+        int term = getTermSelection();
+
+        try {
+            TreeMap<String, long[]> distributions = Analytics.getDistributions(term);
+
+            System.out.println("\n" + String.format("%-10s", "Course") + "   0s  10s  20s  30s  40s  50s  60s  70s  80s  90s  100");
+            for (String courseNo : distributions.keySet()) {
+                StringBuilder row = new StringBuilder(String.format("%-10s", courseNo));
+
+                for (long count : distributions.get(courseNo)) {
+                    row.append(String.format("%5d", count));
+                }
+                System.out.println(row);
+            }
+        } catch (SQLException e) {
+            System.out.println("\nError computing grade distribution: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Retrieves an administrator's marking period or exam selection.
+     *
+     * @return the selected term, as a RosterStore term constant
+     */
+
+    private int getTermSelection() {
+        int selection = -1;
+        System.out.println("\nChoose a marking period or exam.");
+
+        while (selection < 1 || selection > RosterStore.TERMS) {
+            System.out.println("\n[1] MP1.");
+            System.out.println("[2] MP2.");
+            System.out.println("[3] Midterm exam.");
+            System.out.println("[4] MP3.");
+            System.out.println("[5] MP4.");
+            System.out.println("[6] Final exam.");
+            System.out.println("[7] Final grade.");
+            System.out.print("\n::: ");
+
+            selection = Utils.getInt(in, -1);
+        }
+
+        return selection - 1;
+    }
+
     /*
      * Shuts down the application after encountering an error.
      * 
@@ -939,7 +1311,9 @@ public class Application {
 
     private void logout() {
     	if(Utils.confirm(in, "\nAre you sure you want to logout? (y/n) ")) {
+    		GpaUpdates.flush();
     		activeUser = null;
+    		PowerSchool.setActor(null);
     	}
     }
     
@@ -965,6 +1339,7 @@ public class Application {
         System.out.println();
             
         if (Utils.confirm(in, "Are you sure? (y/n) ")) {
+            GpaUpdates.flush();
             if (in != null) {
                 in.close();
             }
@@ -983,6 +1358,7 @@ public class Application {
 
     public boolean login(String username, String password) {
         activeUser = PowerSchool.login(username, password);
+        PowerSchool.setActor(activeUser != null ? username : null);
 
         return activeUser != null;
     }
@@ -1,8 +1,6 @@
   
 package com.apcsa.controller;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
@@ -11,7 +9,7 @@ import java.util.Comparator;
 import java.util.InputMismatchException;
 import java.util.Scanner;
 
-import com.apcsa.model.Student;
+import com.apcsa.model.StudentSummary;
 
 public class Utils {
 
@@ -88,16 +86,16 @@ public class Utils {
      */
 
     @SuppressWarnings({ "unchecked", "rawtypes" })
-    public static ArrayList<Student> updateRanks(ArrayList<Student> students) {
+    public static ArrayList<StudentSummary> updateRanks(ArrayList<StudentSummary> students) {
         Collections.sort(students, new Comparator() {
 
             // compares each student based on gpa to aid sorting
             
             @Override
             public int compare(Object student1, Object student2) {
-                if (((Student) student1).getGpa() > ((Student) student2).getGpa()) {
+                if (((StudentSummary) student1).getGpa() > ((StudentSummary) student2).getGpa()) {
                     return -1;
-                } else if (((Student) student1).getGpa() == ((Student) student2).getGpa()) {
+                } else if (((StudentSummary) student1).getGpa() == ((StudentSummary) student2).getGpa()) {
                     return 0;
                 } else {
                     return 1;
@@ -110,7 +108,7 @@ public class Utils {
         
         int rank = 1;
         for (int i = 0; i < students.size(); i++) {
-            Student student = students.get(i);
+            StudentSummary student = students.get(i);
             
             student.setClassRank(student.getGpa() != -1 ? rank++ : 0);
         }
@@ -119,80 +117,60 @@ public class Utils {
     }
     
     /**
-     * Computes a grade based on marking period grades and exam grades.
+     * Converts a course grade to grade points on a four-point scale.
      * 
-     * @param grades1 a list of grades
-     * @return the final grade
+     * @param grade the course grade
+     * @return the grade points
      */
 
-    public static Double getGrade(ArrayList<Double> grades) {
-        int mps = 0;
-        double mpSum = 0;
-        double mpAvg = -1;
-        double mpWeight = -1;
-
-        int exams = 0;
-        double examSum = 0;
-        double examAvg = -1;
-        double examWeight = -1;
-
-        // compute sume of marking period and/or exam grades
-
-        for (int i = 0; i < grades.size(); i++) {
-            if (grades.get(i) != null) {
-                if (i < 2 || (i > 2 && i < 5)) {        // marking period grade
-                    if (grades.get(i)==-1) {
-
-                    } else {
-                        mps++;
-                        mpSum = mpSum + grades.get(i);
-                    }
-                } else {                                // midterm or final exam grade
-                    if (grades.get(i)==-1) {
-
-                    } else {
-                        exams++;
-                        examSum = examSum + grades.get(i);
-                    }
-                }
-            }
-        }
-
-        // compute weights and averages based on entered grades
-
-        if (mps > 0 && exams > 0) {
-            mpAvg = mpSum / mps;
-            examAvg = examSum / exams;
-
-            mpWeight = 0.8;
-            examWeight = 0.2;
-        } else if (mps > 0) {
-            mpAvg = mpSum / mps;
-
-            mpWeight = 1.0;
-            examWeight = 0.0;
-        } else if (exams > 0) {
-            examAvg = examSum / exams;
-
-            mpWeight = 0.0;
-            examWeight = 1.0;
+    public static double getGradePoints(double grade) {
+        if (grade >= 93) {
+            return 4.0;
+        } else if (grade >= 90) {
+            return 3.7;
+        } else if (grade >= 87) {
+            return 3.3;
+        } else if (grade >= 83) {
+            return 3.0;
+        } else if (grade >= 80) {
+            return 2.7;
+        } else if (grade >= 77) {
+            return 2.3;
+        } else if (grade >= 73) {
+            return 2.0;
+        } else if (grade >= 70) {
+            return 1.7;
+        } else if (grade >= 67) {
+            return 1.3;
+        } else if (grade >= 65) {
+            return 1.0;
         } else {
-            return null;
+            return 0.0;
         }
-        return round(mpAvg * mpWeight + examAvg * examWeight, 2);
     }
-    
+
     /**
-     * Rounds a number to a set number of decimal places.
+     * Computes a GPA from course grades weighted by credit hours. Courses without a
+     * grade are left out.
      * 
-     * @param value the value to round
-     * @param places the number of decimal places
-     * @return the rounded value
+     * @param grades the course grades, NaN where missing
+     * @param creditHours each course's credit hours
+     * @param from the first course to include
+     * @param to one past the last course to include
+     * @return the GPA, or -1 if no course has a grade
      */
-        
-    private static double round(double value, int places) {
-        return new BigDecimal(Double.toString(value))
-            .setScale(places, RoundingMode.HALF_UP)
-            .doubleValue();
+
+    public static double getGpa(double[] grades, double[] creditHours, int from, int to) {
+        double points = 0;
+        double hours = 0;
+
+        for (int i = from; i < to; i++) {
+            if (!Double.isNaN(grades[i])) {
+                points += getGradePoints(grades[i]) * creditHours[i];
+                hours += creditHours[i];
+            }
+        }
+
+        return hours > 0 ? Math.round(points / hours * 100.0) / 100.0 : -1;
     }
 }
\ No newline at end of file
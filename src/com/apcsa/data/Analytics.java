@@ -0,0 +1,415 @@
+package com.apcsa.data;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Honor rolls, failing lists, and grade distributions computed from course grades.
+ *
+ * Every report is an aggregation over a RosterStore snapshot, split across the
+ * common fork-join pool. Results are cached per term. A course grade change only
+ * clears the cached results for the term it touched. Enrollment changes and
+ * resets clear everything. The snapshot itself is reloaded on the next request
+ * after any change.
+ *
+ * The writer clears the caches as each change commits, before the write returns,
+ * so a report requested after a write never sees the data from before it. Every
+ * clear bumps a generation counter. A result or snapshot is only cached if the
+ * generation hasn't moved since it started loading, so one built from data a
+ * concurrent write has since changed is returned once but never kept.
+ */
+
+public class Analytics {
+
+    public final static double HONOR_ROLL_MINIMUM = 85.0;
+    public final static double PASSING_GRADE = 65.0;
+    public final static int BUCKETS = 11;               // 0-9, 10-19, ..., 90-99, 100
+
+    private final static int THRESHOLD = 1024;          // rows per fork-join leaf
+    private final static String[] TERM_COLUMNS = { "mp1", "mp2", "midterm_exam", "mp3", "mp4", "final_exam", "grade" };
+
+    /**
+     * One student on an honor roll.
+     */
+
+    public static class Honoree {
+        private int studentId;
+        private double average;
+
+        private Honoree(int studentId, double average) {
+            this.studentId = studentId;
+            this.average = average;
+        }
+
+        public int getStudentId() {
+            return studentId;
+        }
+
+        public double getAverage() {
+            return average;
+        }
+    }
+
+    /**
+     * One failing grade.
+     */
+
+    public static class Failure {
+        private int studentId;
+        private String courseNo;
+        private double grade;
+
+        private Failure(int studentId, String courseNo, double grade) {
+            this.studentId = studentId;
+            this.courseNo = courseNo;
+            this.grade = grade;
+        }
+
+        public int getStudentId() {
+            return studentId;
+        }
+
+        public String getCourseNo() {
+            return courseNo;
+        }
+
+        public double getGrade() {
+            return grade;
+        }
+    }
+
+    private static volatile RosterStore store;
+    private static ConcurrentHashMap<Integer, ArrayList<Honoree>> honorRolls = new ConcurrentHashMap<Integer, ArrayList<Honoree>>();
+    private static ConcurrentHashMap<Integer, TreeMap<Integer, ArrayList<Failure>>> failures = new ConcurrentHashMap<Integer, TreeMap<Integer, ArrayList<Failure>>>();
+    private static ConcurrentHashMap<Integer, TreeMap<String, long[]>> distributions = new ConcurrentHashMap<Integer, TreeMap<String, long[]>>();
+    private static volatile long generation;            // bumped under the class lock
+    private final static Object LOAD = new Object();
+
+    /**
+     * Lists the students whose every graded course for a term is at or above the
+     * honor roll minimum.
+     *
+     * @param term one of the RosterStore term constants
+     * @return the honorees, highest average first
+     * @throws SQLException if the snapshot can't be loaded
+     */
+
+    public static ArrayList<Honoree> getHonorRoll(int term) throws SQLException {
+        ArrayList<Honoree> cached = honorRolls.get(term);
+
+        if (cached == null) {
+            long loadedAt = generation;
+            RosterStore roster = getStore();
+            cached = ForkJoinPool.commonPool().invoke(new HonorRollTask(roster, term, 0, roster.getStudentCount()));
+            cached.sort(Comparator.comparingDouble(Honoree::getAverage).reversed());
+            put(honorRolls, term, cached, loadedAt);
+        }
+
+        return cached;
+    }
+
+    /**
+     * Lists every grade below passing for a term, grouped by department.
+     *
+     * @param term one of the RosterStore term constants
+     * @return failing grades keyed by department_id
+     * @throws SQLException if the snapshot can't be loaded
+     */
+
+    public static TreeMap<Integer, ArrayList<Failure>> getFailuresByDepartment(int term) throws SQLException {
+        TreeMap<Integer, ArrayList<Failure>> cached = failures.get(term);
+
+        if (cached == null) {
+            long loadedAt = generation;
+            RosterStore roster = getStore();
+            cached = ForkJoinPool.commonPool().invoke(new FailureTask(roster, term, 0, roster.getEnrollmentCount()));
+            put(failures, term, cached, loadedAt);
+        }
+
+        return cached;
+    }
+
+    /**
+     * Counts each course's grades for a term into buckets of ten points.
+     *
+     * @param term one of the RosterStore term constants
+     * @return a BUCKETS-long histogram for each course number
+     * @throws SQLException if the snapshot can't be loaded
+     */
+
+    public static TreeMap<String, long[]> getDistributions(int term) throws SQLException {
+        TreeMap<String, long[]> cached = distributions.get(term);
+
+        if (cached == null) {
+            long loadedAt = generation;
+            RosterStore roster = getStore();
+            long[][] counts = ForkJoinPool.commonPool().invoke(new HistogramTask(roster, term, 0, roster.getEnrollmentCount()));
+
+            cached = new TreeMap<String, long[]>();
+            for (int c = 0; c < counts.length; c++) {
+                cached.put(roster.getCourseNumber(c), counts[c]);
+            }
+            put(distributions, term, cached, loadedAt);
+        }
+
+        return cached;
+    }
+
+    /**
+     * Clears the cached results for one term and marks the snapshot stale.
+     *
+     * @param term one of the RosterStore term constants
+     */
+
+    public static synchronized void invalidate(int term) {
+        generation++;
+        store = null;
+        honorRolls.remove(term);
+        failures.remove(term);
+        distributions.remove(term);
+    }
+
+    /**
+     * Clears every cached result and marks the snapshot stale.
+     */
+
+    public static synchronized void invalidateAll() {
+        generation++;
+        store = null;
+        honorRolls.clear();
+        failures.clear();
+        distributions.clear();
+    }
+
+    /*
+     * Returns the current snapshot, loading one if needed. Loads are serialized on
+     * their own lock so the writer never waits for one when it invalidates.
+     */
+
+    private static RosterStore getStore() throws SQLException {
+        synchronized (LOAD) {
+            RosterStore current = store;
+
+            if (current == null) {
+                long loadedAt = generation;
+                current = RosterStore.load();
+
+                synchronized (Analytics.class) {
+                    if (loadedAt == generation) {
+                        store = current;
+                    }
+                }
+            }
+
+            return current;
+        }
+    }
+
+    /*
+     * Caches a result unless something was invalidated while it was computed.
+     */
+
+    private static synchronized <V> void put(ConcurrentHashMap<Integer, V> cache, int term, V value, long loadedAt) {
+        if (loadedAt == generation) {
+            cache.put(term, value);
+        }
+    }
+
+    /*
+     * Invalidates whatever a committed change could have affected. Called by the
+     * writer thread after each commit, in commit order.
+     */
+
+    static void onCommit(DataEvent event) {
+        switch (event.getType()) {
+            case COURSE_GRADE_UPDATED:
+                int term = termOf(event.getField());
+
+                if (term >= 0) {
+                    invalidate(term);
+
+                    // a term grade can also change the final grade
+                    invalidate(RosterStore.GRADE);
+                } else {
+                    invalidateAll();
+                }
+                break;
+            case STUDENT_ENROLLED:
+            case STUDENT_DROPPED:
+            case COURSE_ADDED:
+            case RESET:
+                invalidateAll();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static int termOf(String column) {
+        for (int t = 0; t < TERM_COLUMNS.length; t++) {
+            if (TERM_COLUMNS[t].equals(column)) {
+                return t;
+            }
+        }
+
+        return -1;
+    }
+
+    /*
+     * Finds honor roll students in a range of student rows.
+     */
+
+    private static class HonorRollTask extends RecursiveTask<ArrayList<Honoree>> {
+        private static final long serialVersionUID = 1L;
+
+        private final RosterStore roster;
+        private final int term;
+        private final int from;
+        private final int to;
+
+        private HonorRollTask(RosterStore roster, int term, int from, int to) {
+            this.roster = roster;
+            this.term = term;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ArrayList<Honoree> compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                HonorRollTask left = new HonorRollTask(roster, term, from, middle);
+                left.fork();
+
+                ArrayList<Honoree> right = new HonorRollTask(roster, term, middle, to).compute();
+                ArrayList<Honoree> merged = left.join();
+                merged.addAll(right);
+
+                return merged;
+            }
+
+            ArrayList<Honoree> honorees = new ArrayList<Honoree>();
+            for (int s = from; s < to; s++) {
+                int graded = 0;
+                double sum = 0;
+                boolean qualifies = true;
+
+                for (int e = roster.getFirstEnrollment(s), end = roster.getEndEnrollment(s); e < end; e++) {
+                    float grade = roster.getGrade(e, term);
+
+                    if (grade == grade) {       // not NaN
+                        graded++;
+                        sum += grade;
+                        qualifies &= grade >= HONOR_ROLL_MINIMUM;
+                    }
+                }
+
+                if (qualifies && graded > 0) {
+                    honorees.add(new Honoree(roster.getStudentId(s), sum / graded));
+                }
+            }
+
+            return honorees;
+        }
+    }
+
+    /*
+     * Collects failing grades in a range of enrollment rows, by department.
+     */
+
+    private static class FailureTask extends RecursiveTask<TreeMap<Integer, ArrayList<Failure>>> {
+        private static final long serialVersionUID = 1L;
+
+        private final RosterStore roster;
+        private final int term;
+        private final int from;
+        private final int to;
+
+        private FailureTask(RosterStore roster, int term, int from, int to) {
+            this.roster = roster;
+            this.term = term;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected TreeMap<Integer, ArrayList<Failure>> compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                FailureTask left = new FailureTask(roster, term, from, middle);
+                left.fork();
+
+                TreeMap<Integer, ArrayList<Failure>> right = new FailureTask(roster, term, middle, to).compute();
+                TreeMap<Integer, ArrayList<Failure>> merged = left.join();
+                for (Integer departmentId : right.keySet()) {
+                    merged.computeIfAbsent(departmentId, k -> new ArrayList<Failure>()).addAll(right.get(departmentId));
+                }
+
+                return merged;
+            }
+
+            TreeMap<Integer, ArrayList<Failure>> found = new TreeMap<Integer, ArrayList<Failure>>();
+            for (int e = from; e < to; e++) {
+                float grade = roster.getGrade(e, term);
+
+                if (grade < PASSING_GRADE) {        // false for NaN
+                    int course = roster.getCourse(e);
+
+                    found.computeIfAbsent(roster.getDepartmentId(course), k -> new ArrayList<Failure>())
+                        .add(new Failure(roster.getStudentId(roster.getStudent(e)), roster.getCourseNumber(course), grade));
+                }
+            }
+
+            return found;
+        }
+    }
+
+    /*
+     * Builds per-course grade histograms over a range of enrollment rows.
+     */
+
+    private static class HistogramTask extends RecursiveTask<long[][]> {
+        private static final long serialVersionUID = 1L;
+
+        private final RosterStore roster;
+        private final int term;
+        private final int from;
+        private final int to;
+
+        private HistogramTask(RosterStore roster, int term, int from, int to) {
+            this.roster = roster;
+            this.term = term;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[][] compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                HistogramTask left = new HistogramTask(roster, term, from, middle);
+                left.fork();
+
+                long[][] right = new HistogramTask(roster, term, middle, to).compute();
+                long[][] merged = left.join();
+                for (int c = 0; c < merged.length; c++) {
+                    for (int b = 0; b < BUCKETS; b++) {
+                        merged[c][b] += right[c][b];
+                    }
+                }
+
+                return merged;
+            }
+
+            long[][] counts = new long[roster.getCourseCount()][BUCKETS];
+            roster.histogram(term, from, to, counts);
+
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.apcsa.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * An append-only binary log of every assignment grade and course grade change.
+ * Records are appended to memory-mapped segment files under data/audit; when a
+ * segment fills up it is trimmed to size and a new one is started. Once enough
+ * full segments pile up they are merged into one.
+ *
+ * Each record is laid out as a length prefix followed by: timestamp (long), event
+ * type (byte), course, student, and assignment IDs (ints), old and new values
+ * (doubles), then the column name and actor as length-prefixed UTF-8 strings. A
+ * zero length marks the end of the data in a segment.
+ */
+
+public class AuditLog {
+
+    private final static File DIRECTORY = new File("data/audit");
+    private final static String PREFIX = "audit-";
+    private final static String SUFFIX = ".seg";
+    private final static int SEGMENT_SIZE = 1 << 20;
+    private final static int COMPACT_THRESHOLD = 8;
+
+    private static RandomAccessFile file;
+    private static MappedByteBuffer segment;
+    private static int segmentNumber;
+    private static boolean started;
+
+    /**
+     * Starts recording grade changes published on the data event bus. Calling this
+     * again has no effect.
+     */
+
+    public static synchronized void start() {
+        if (started) {
+            return;
+        }
+
+        try {
+            DIRECTORY.mkdirs();
+            File[] existing = segments();
+            segmentNumber = existing.length == 0 ? 0 : numberOf(existing[existing.length - 1]);
+            roll();
+        } catch (IOException e) {
+            System.err.println("Error: Unable to open the audit log.");
+            e.printStackTrace();
+            return;
+        }
+
+        started = true;
+        DataEvents.subscribe("audit", event -> {
+            if (isAudited(event)) {
+                append(new AuditRecord(event));
+            }
+        });
+    }
+
+    /**
+     * Appends a record, rolling over to a new segment if this one is full.
+     *
+     * @param record the record to append
+     */
+
+    public static synchronized void append(AuditRecord record) {
+        byte[] field = record.getField().getBytes(StandardCharsets.UTF_8);
+        byte[] actor = record.getActor().getBytes(StandardCharsets.UTF_8);
+        int length = 8 + 1 + 4 + 4 + 4 + 8 + 8 + 2 + field.length + 2 + actor.length;
+
+        try {
+            if (segment.remaining() < 4 + length + 4) {
+                roll();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        // write the body first and the length last, so readers never see half a record
+
+        int start = segment.position();
+        segment.position(start + 4);
+        segment.putLong(record.getTimestamp());
+        segment.put((byte) record.getType().ordinal());
+        segment.putInt(record.getCourseId());
+        segment.putInt(record.getStudentId());
+        segment.putInt(record.getAssignmentId());
+        segment.putDouble(record.getOldValue());
+        segment.putDouble(record.getNewValue());
+        segment.putShort((short) field.length);
+        segment.put(field);
+        segment.putShort((short) actor.length);
+        segment.put(actor);
+        segment.putInt(start, length);
+    }
+
+    /**
+     * Replays every record, oldest first, that matches the filter.
+     *
+     * @param filter which records to replay
+     * @param consumer receives each matching record
+     * @throws IOException
+     */
+
+    public static void replay(Predicate<AuditRecord> filter, Consumer<AuditRecord> consumer) throws IOException {
+        for (File f : segments()) {
+            try (RandomAccessFile in = new RandomAccessFile(f, "r");
+                 FileChannel channel = in.getChannel()) {
+
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                while (buffer.remaining() >= 4) {
+                    int length = buffer.getInt();
+
+                    if (length <= 0 || length > buffer.remaining()) {
+                        break;
+                    }
+
+                    int next = buffer.position() + length;
+                    AuditRecord record = read(buffer);
+                    buffer.position(next);
+
+                    if (filter.test(record)) {
+                        consumer.accept(record);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects every record that matches the filter.
+     *
+     * @param filter which records to return
+     * @return the matching records, oldest first
+     * @throws IOException
+     */
+
+    public static ArrayList<AuditRecord> read(Predicate<AuditRecord> filter) throws IOException {
+        ArrayList<AuditRecord> records = new ArrayList<AuditRecord>();
+        replay(filter, records::add);
+
+        return records;
+    }
+
+    /**
+     * Merges every full segment into one, dropping records older than the cutoff.
+     * The segment currently being written is left alone.
+     *
+     * @param cutoff the oldest timestamp to keep, or 0 to keep everything
+     * @throws IOException
+     */
+
+    public static synchronized void compact(long cutoff) throws IOException {
+        File[] sealed = Arrays.stream(segments())
+            .filter(f -> numberOf(f) < segmentNumber)
+            .toArray(File[]::new);
+
+        if (sealed.length == 0) {
+            return;
+        }
+
+        File target = sealed[0];
+        File temp = new File(DIRECTORY, target.getName() + ".tmp");
+
+        try (RandomAccessFile out = new RandomAccessFile(temp, "rw");
+             FileChannel channel = out.getChannel()) {
+
+            for (File f : sealed) {
+                try (RandomAccessFile in = new RandomAccessFile(f, "r")) {
+                    MappedByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+
+                    while (buffer.remaining() >= 4) {
+                        int start = buffer.position();
+                        int length = buffer.getInt();
+
+                        if (length <= 0 || length > buffer.remaining()) {
+                            break;
+                        }
+
+                        long timestamp = buffer.getLong(buffer.position());
+                        if (timestamp >= cutoff) {
+                            channel.write(buffer.duplicate().position(start).limit(start + 4 + length));
+                        }
+                        buffer.position(buffer.position() + length);
+                    }
+                }
+            }
+
+            channel.force(true);
+        }
+
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (int i = 1; i < sealed.length; i++) {
+            sealed[i].delete();
+        }
+    }
+
+    /*
+     * Determines whether an event changes a grade.
+     */
+
+    private static boolean isAudited(DataEvent event) {
+        switch (event.getType()) {
+            case GRADE_ENTERED:
+            case GRADE_DELETED:
+            case COURSE_GRADE_UPDATED:
+                return event.getField() != null;
+            default:
+                return false;
+        }
+    }
+
+    /*
+     * Seals the current segment (trimming its unused tail) and maps a new one.
+     */
+
+    private static void roll() throws IOException {
+        boolean compactNeeded = false;
+
+        if (segment != null) {
+            int used = segment.position();
+
+            segment.putInt(used, 0);
+            segment.force();
+            file.getChannel().truncate(used);
+            file.close();
+
+            compactNeeded = segments().length > COMPACT_THRESHOLD;
+        }
+
+        segmentNumber++;
+        file = new RandomAccessFile(new File(DIRECTORY, String.format("%s%08d%s", PREFIX, segmentNumber, SUFFIX)), "rw");
+        segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+
+        if (compactNeeded) {
+            compact(0);
+        }
+    }
+
+    /*
+     * Reads one record body from the buffer.
+     */
+
+    private static AuditRecord read(MappedByteBuffer buffer) {
+        long timestamp = buffer.getLong();
+        DataEvent.Type type = DataEvent.Type.values()[buffer.get()];
+        int courseId = buffer.getInt();
+        int studentId = buffer.getInt();
+        int assignmentId = buffer.getInt();
+        double oldValue = buffer.getDouble();
+        double newValue = buffer.getDouble();
+        byte[] field = new byte[buffer.getShort()];
+        buffer.get(field);
+        byte[] actor = new byte[buffer.getShort()];
+        buffer.get(actor);
+
+        return new AuditRecord(timestamp, type, courseId, studentId, assignmentId,
+            new String(field, StandardCharsets.UTF_8), oldValue, newValue, new String(actor, StandardCharsets.UTF_8));
+    }
+
+    /*
+     * Lists the segment files in order.
+     */
+
+    private static File[] segments() {
+        File[] files = DIRECTORY.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+
+        if (files == null) {
+            return new File[0];
+        }
+
+        Arrays.sort(files, (a, b) -> Integer.compare(numberOf(a), numberOf(b)));
+
+        return files;
+    }
+
+    /*
+     * Extracts the sequence number from a segment's file name.
+     */
+
+    private static int numberOf(File f) {
+        String name = f.getName();
+
+        return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,43 @@
+package com.apcsa.data;
+
+import java.io.IOException;
+import java.util.function.Predicate;
+
+/**
+ * Prints the grade audit log, optionally filtered by student and/or course.
+ *
+ * Usage: java com.apcsa.data.AuditLogReader [--student ID] [--course ID]
+ */
+
+public class AuditLogReader {
+
+    public static void main(String[] args) {
+        Predicate<AuditRecord> filter = record -> true;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            int id;
+
+            try {
+                id = Integer.parseInt(args[i + 1]);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid ID: " + args[i + 1]);
+                return;
+            }
+
+            switch (args[i]) {
+                case "--student": filter = filter.and(record -> record.getStudentId() == id); break;
+                case "--course": filter = filter.and(record -> record.getCourseId() == id); break;
+                default:
+                    System.err.println("Usage: AuditLogReader [--student ID] [--course ID]");
+                    return;
+            }
+        }
+
+        try {
+            AuditLog.replay(filter, System.out::println);
+        } catch (IOException e) {
+            System.err.println("Error: Unable to read the audit log.");
+            e.printStackTrace();
+        }
+    }
+}
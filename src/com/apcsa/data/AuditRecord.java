@@ -0,0 +1,111 @@
+package com.apcsa.data;
+
+import java.sql.Timestamp;
+
+/**
+ * One entry in the grade audit log.
+ */
+
+public class AuditRecord {
+
+    private long timestamp;
+    private DataEvent.Type type;
+    private int courseId;
+    private int studentId;
+    private int assignmentId;
+    private String field;
+    private double oldValue;
+    private double newValue;
+    private String actor;
+
+    /**
+     * Creates an instance of the AuditRecord class.
+     *
+     * @param timestamp when the change was made, in milliseconds since the epoch
+     * @param type the kind of change
+     * @param courseId the affected course
+     * @param studentId the affected student
+     * @param assignmentId the affected assignment, or DataEvent.ALL
+     * @param field the changed column
+     * @param oldValue the previous value, or NaN
+     * @param newValue the new value, or NaN
+     * @param actor the username of the user who made the change
+     */
+
+    public AuditRecord(long timestamp, DataEvent.Type type, int courseId, int studentId, int assignmentId,
+            String field, double oldValue, double newValue, String actor) {
+
+        this.timestamp = timestamp;
+        this.type = type;
+        this.courseId = courseId;
+        this.studentId = studentId;
+        this.assignmentId = assignmentId;
+        this.field = field;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+        this.actor = actor;
+    }
+
+    /**
+     * Creates an audit record from a data event.
+     *
+     * @param event the event
+     */
+
+    public AuditRecord(DataEvent event) {
+        this(event.getTimestamp(), event.getType(), event.getCourseId(), event.getStudentId(), event.getAssignmentId(),
+            event.getField() != null ? event.getField() : "", event.getOldValue(), event.getValue(), event.getActor());
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public DataEvent.Type getType() {
+        return type;
+    }
+
+    public int getCourseId() {
+        return courseId;
+    }
+
+    public int getStudentId() {
+        return studentId;
+    }
+
+    public int getAssignmentId() {
+        return assignmentId;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public double getOldValue() {
+        return oldValue;
+    }
+
+    public double getNewValue() {
+        return newValue;
+    }
+
+    public String getActor() {
+        return actor;
+    }
+
+    @Override
+    public String toString() {
+        return new Timestamp(timestamp) + " " + actor + " " + type
+            + " course " + courseId + ", student " + studentId
+            + (assignmentId != DataEvent.ALL ? ", assignment " + assignmentId : "")
+            + ": " + field + " " + format(oldValue) + " -> " + format(newValue);
+    }
+
+    /*
+     * Formats a value for display, using -- for a missing value.
+     */
+
+    private static String format(double value) {
+        return Double.isNaN(value) ? "--" : String.valueOf(value);
+    }
+}
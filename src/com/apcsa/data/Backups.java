@@ -0,0 +1,339 @@
+package com.apcsa.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.core.DB;
+
+/**
+ * Takes hot backups of the database while the application keeps running, and
+ * restores them.
+ *
+ * Scheduled backups use SQLite's online backup API, which copies the database a
+ * few pages at a time under a read lock and never blocks the writer. The copy
+ * sleeps between steps to stay under MAX_BYTES_PER_SECOND, so it doesn't compete
+ * with interactive use. A write committed mid-copy makes SQLite start the copy
+ * over. The pages go to a file that isn't listed as restorable, which is then
+ * renamed over data/backups/latest.db, and the old latest.db is kept as
+ * previous.db, so both backup files are always complete.
+ *
+ * Named snapshots are written with VACUUM INTO, as separate files for
+ * point-in-time restores.
+ */
+
+public class Backups {
+
+    private final static File DIRECTORY = new File("data/backups");
+    private final static String LATEST = "latest.db";
+    private final static String PREVIOUS = "previous.db";
+    private final static String PARTIAL = "latest.db.partial";
+    private final static String SNAPSHOT_PREFIX = "snapshot-";
+    private final static String SUFFIX = ".db";
+    private final static int PAGE_SIZE = 4096;
+    private final static int PAGES_PER_STEP = 256;
+    private final static long MAX_BYTES_PER_SECOND = 4L << 20;
+    private final static int BUSY_WAIT = 100;          // milliseconds between retries when the source is locked
+    private final static int BUSY_RETRIES = 3;
+    private final static long QUIESCE_TIMEOUT = 10000;      // milliseconds
+
+    private static ScheduledExecutorService scheduler;
+    private static int interval;        // minutes; 0 when stopped
+
+    private static volatile long lastBackup;
+    private static volatile long lastPagesCopied;
+    private static volatile long lastDuration;          // milliseconds
+
+    /**
+     * Starts incremental backups on a fixed interval. Calling this again has no effect.
+     *
+     * @param intervalMinutes the number of minutes between backups
+     */
+
+    public static synchronized void start(int intervalMinutes) {
+        if (scheduler != null) {
+            return;
+        }
+
+        interval = intervalMinutes;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "backup");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(Backups::backup, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops the scheduled backups and waits for one that is running to finish.
+     *
+     * @return the interval they ran at, in minutes, or 0 if they weren't running
+     */
+
+    public static int stop() {
+        ScheduledExecutorService stopped;
+        int stoppedInterval;
+
+        synchronized (Backups.class) {
+            if (scheduler == null) {
+                return 0;
+            }
+
+            stopped = scheduler;
+            stoppedInterval = interval;
+            scheduler = null;
+            interval = 0;
+        }
+
+        stopped.shutdown();
+        try {
+            stopped.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return stoppedInterval;
+    }
+
+    /**
+     * Copies the live database to data/backups/latest.db with the online backup
+     * API, throttled. The old latest.db becomes previous.db.
+     *
+     * @return the number of pages copied, or -1 if the backup failed
+     */
+
+    public static synchronized long backup() {
+        File latest = new File(DIRECTORY, LATEST);
+        File previous = new File(DIRECTORY, PREVIOUS);
+        File partial = new File(DIRECTORY, PARTIAL);
+        long started = System.nanoTime();
+        long[] copied = new long[1];
+
+        DIRECTORY.mkdirs();
+        partial.delete();
+
+        try (Connection conn = PowerSchool.getConnection()) {
+
+            // called after every step; sleep until the copy is back under the rate limit
+
+            DB.ProgressObserver throttle = (remaining, pageCount) -> {
+                copied[0] += PAGES_PER_STEP;
+
+                long due = copied[0] * PAGE_SIZE * 1000 / MAX_BYTES_PER_SECOND;
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+                if (due > elapsed && remaining > 0) {
+                    try {
+                        Thread.sleep(due - elapsed);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+
+            int rc = conn.unwrap(SQLiteConnection.class).getDatabase()
+                .backup("main", partial.getPath(), throttle, BUSY_WAIT, BUSY_RETRIES, PAGES_PER_STEP);
+
+            if (rc != SQLiteErrorCode.SQLITE_DONE.code) {
+                throw new SQLException("Backup failed with SQLite error " + rc + ".");
+            }
+
+            if (latest.exists()) {
+                Files.move(latest.toPath(), previous.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            }
+            Files.move(partial.toPath(), latest.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+            lastBackup = System.currentTimeMillis();
+            lastPagesCopied = (latest.length() + PAGE_SIZE - 1) / PAGE_SIZE;
+            lastDuration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+            return lastPagesCopied;
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
+        } finally {
+            partial.delete();
+        }
+
+        return -1;
+    }
+
+    /**
+     * Writes a point-in-time snapshot to its own file.
+     *
+     * @return the snapshot file, or null if the snapshot failed
+     */
+
+    public static synchronized File snapshot() {
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File target = new File(DIRECTORY, SNAPSHOT_PREFIX + stamp + SUFFIX);
+
+        try {
+            vacuumInto(target);
+
+            return target;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * Lists the backups that can be restored, newest first.
+     *
+     * @return the backup files
+     */
+
+    public static File[] list() {
+        File[] files = DIRECTORY.listFiles((dir, name) -> name.endsWith(SUFFIX));
+
+        if (files == null) {
+            return new File[0];
+        }
+
+        Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+
+        return files;
+    }
+
+    /**
+     * Replaces the live database with a backup. Pending writes are committed first
+     * and no new writes start until the swap is done. Checkpoints and scheduled
+     * backups are stopped, and every open connection must close, before the file
+     * is touched; the restore fails if readers don't finish within QUIESCE_TIMEOUT.
+     * The backup is copied next to the data file and checked before it is moved
+     * into place in one atomic rename, so a failure part way through leaves the
+     * live database untouched.
+     *
+     * @param backup the backup to restore
+     * @return true if the backup was restored; false otherwise
+     */
+
+    public static boolean restore(File backup) {
+        File database = new File(PowerSchool.DATABASE_URL);
+        File staged = new File(database.getPath() + ".restore");
+
+        int checkpointInterval = WalCheckpointer.stop();
+        int backupInterval = stop();
+
+        int result = WriteQueue.runExclusive(() -> {
+            if (!PowerSchool.quiesce(QUIESCE_TIMEOUT)) {
+                return -1;
+            }
+
+            try {
+                Files.copy(backup.toPath(), staged.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+                if (!isIntact(staged)) {
+                    return -1;
+                }
+
+                // fold the WAL into the old file so nothing is left to replay over the new one
+
+                try (Connection conn = PowerSchool.getConnection();
+                     Statement stmt = conn.createStatement()) {
+
+                    stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+                }
+
+                Files.move(staged.toPath(), database.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+                new File(database.getPath() + "-wal").delete();
+                new File(database.getPath() + "-shm").delete();
+
+                try (Connection conn = PowerSchool.getConnection()) {
+                    DatabaseProfile.enableWal(conn);
+                }
+
+                return 1;
+            } finally {
+                staged.delete();
+                PowerSchool.resume();
+            }
+        });
+
+        if (checkpointInterval > 0) {
+            WalCheckpointer.start(checkpointInterval);
+        }
+        if (backupInterval > 0) {
+            start(backupInterval);
+        }
+
+        if (result != 1) {
+            return false;
+        }
+
+        PowerSchool.buildNameIndex();
+        QueryCache.invalidateAll();
+        CourseAssignments.invalidate();
+        CourseRosters.invalidate();
+        Analytics.invalidateAll();
+        DataEvents.publish(new DataEvent(DataEvent.Type.RESET, DataEvent.ALL, DataEvent.ALL, DataEvent.ALL, Double.NaN));
+
+        return true;
+    }
+
+    /**
+     * Describes the outcome of the most recent incremental backup.
+     *
+     * @return a one-line status report
+     */
+
+    public static String getStatus() {
+        if (lastBackup == 0) {
+            return "No backup has run yet.";
+        }
+
+        long age = (System.currentTimeMillis() - lastBackup) / 1000;
+
+        return "Last backup " + age + "s ago: " + lastPagesCopied + " pages copied in " + (lastDuration / 1000) + "s.";
+    }
+
+    /*
+     * Writes a consistent copy of the live database to a new file.
+     */
+
+    private static void vacuumInto(File target) throws SQLException {
+        DIRECTORY.mkdirs();
+        target.delete();
+
+        try (Connection conn = PowerSchool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("VACUUM INTO ?")) {
+
+            stmt.setString(1, target.getPath());
+            stmt.executeUpdate();
+        }
+    }
+
+    /*
+     * Checks that a database file opens and passes SQLite's quick check.
+     */
+
+    private static boolean isIntact(File f) {
+        try (Connection conn = DriverManager.getConnection(PowerSchool.PROTOCOL + f.getPath());
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA quick_check")) {
+
+            return rs.next() && "ok".equals(rs.getString(1));
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,229 @@
+package com.apcsa.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import com.apcsa.model.GradingPolicy;
+
+/**
+ * Keeps running per-category totals of each student's assignment grades, so a
+ * category-weighted marking period average never has to rescan assignment_grades.
+ *
+ * category_grades has one row per (course, student, marking period, assignment
+ * category). Each row holds the number of graded assignments and the sum of
+ * their percentages. Every write that adds or removes assignment
+ * grades adjusts these rows in the same transaction. Bulk loads rebuild a whole
+ * course instead. A category's average is its percent sum divided by its count,
+ * the same mean of percentages used for unweighted averages.
+ *
+ * The methods that take a Connection must be called from inside a write.
+ */
+
+public class CategoryGrades {
+
+    public final static String DEFAULT_CATEGORY = "general";
+    public final static int MARKING_PERIODS = 6;        // 1-4, then 5 (midterm) and 6 (final)
+
+    /*
+     * Adds one student's grade on an assignment. Call after inserting it.
+     */
+
+    static void add(Connection conn, int courseId, int assignmentId, int studentId) throws SQLException {
+        apply(conn, QueryUtils.UPDATE_CATEGORY_GRADE, 1, courseId, assignmentId, studentId);
+    }
+
+    /*
+     * Removes one student's grade on an assignment. Call before deleting it.
+     */
+
+    static void subtract(Connection conn, int courseId, int assignmentId, int studentId) throws SQLException {
+        apply(conn, QueryUtils.UPDATE_CATEGORY_GRADE, -1, courseId, assignmentId, studentId);
+        deleteEmpty(conn, courseId);
+    }
+
+    /*
+     * Removes every student's grade on an assignment. Call before deleting them.
+     */
+
+    static void subtractAssignment(Connection conn, int courseId, int assignmentId) throws SQLException {
+        apply(conn, QueryUtils.UPDATE_CATEGORY_GRADES_BY_ASSIGNMENT, -1, courseId, assignmentId, -1);
+        deleteEmpty(conn, courseId);
+    }
+
+    /*
+     * Removes a student's totals for a course, e.g. when they drop it.
+     */
+
+    static void deleteStudent(Connection conn, int courseId, int studentId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.DELETE_STUDENT_CATEGORY_GRADES)) {
+            stmt.setInt(1, courseId);
+            stmt.setInt(2, studentId);
+            stmt.executeUpdate();
+        }
+    }
+
+    /*
+     * Recounts a course's totals from assignment_grades.
+     */
+
+    static void rebuild(Connection conn, int courseId) throws SQLException {
+        for (String sql : new String[] { QueryUtils.DELETE_COURSE_CATEGORY_GRADES, QueryUtils.REBUILD_COURSE_CATEGORY_GRADES }) {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, courseId);
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Recounts a course's totals from assignment_grades, e.g. after a bulk load.
+     *
+     * @param courseId the course
+     * @return 1 on success, or -1 on failure
+     */
+
+    public static int rebuild(int courseId) {
+        return WriteQueue.execute(conn -> {
+            rebuild(conn, courseId);
+
+            return 1;
+        });
+    }
+
+    /**
+     * Computes every student's category-weighted average in each marking period of
+     * a course, using the course's grading policy.
+     *
+     * @param courseId the course
+     * @return MARKING_PERIODS averages per student_id, NaN where there are no grades
+     * @throws SQLException
+     */
+
+    public static HashMap<Integer, double[]> getWeightedAverages(int courseId) throws SQLException {
+        try (Connection conn = PowerSchool.getConnection()) {
+            return getWeightedAverages(conn, courseId, GradingPolicies.forCourse(courseId));
+        }
+    }
+
+    /*
+     * Reads a course's totals and weighs them by the policy's categories. Grades in
+     * categories the policy doesn't weight are only used if none of a marking
+     * period's grades are in a weighted category; then the plain mean is used.
+     */
+
+    static HashMap<Integer, double[]> getWeightedAverages(Connection conn, int courseId, GradingPolicy policy) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_CATEGORY_GRADES_BY_COURSE)) {
+            stmt.setInt(1, courseId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return weigh(rs, policy);
+            }
+        }
+    }
+
+    /*
+     * Weighs one student's totals in a course, for a write that only changed their
+     * grades. Returns MARKING_PERIODS averages, NaN where there are no grades.
+     */
+
+    static double[] getWeightedAverages(Connection conn, int courseId, int studentId, GradingPolicy policy) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_CATEGORY_GRADES_BY_STUDENT)) {
+            stmt.setInt(1, courseId);
+            stmt.setInt(2, studentId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                double[] averages = weigh(rs, policy).get(studentId);
+
+                return averages != null ? averages : empty();
+            }
+        }
+    }
+
+    /*
+     * Groups totals ordered by student_id and marking_period into weighted averages.
+     */
+
+    private static HashMap<Integer, double[]> weigh(ResultSet rs, GradingPolicy policy) throws SQLException {
+        HashMap<Integer, double[]> averages = new HashMap<Integer, double[]>();
+        int categories = policy.getCategories().length;
+
+        int student = -1;
+        int period = -1;
+        double[] byCategory = new double[categories];
+        double percentSum = 0;
+        int graded = 0;
+
+        while (true) {
+            boolean more = rs.next();
+            int nextStudent = more ? rs.getInt("student_id") : -1;
+            int nextPeriod = more ? rs.getInt("marking_period") : -1;
+
+            // finish the previous (student, marking period) group
+
+            if (student >= 0 && (nextStudent != student || nextPeriod != period)) {
+                double average = policy.weigh(byCategory);
+
+                if (average != average && graded > 0) {
+                    average = policy.round(percentSum / graded);
+                }
+                if (period >= 1 && period <= MARKING_PERIODS) {
+                    averages.computeIfAbsent(student, k -> empty())[period - 1] = average;
+                }
+            }
+
+            if (!more) {
+                break;
+            }
+
+            if (nextStudent != student || nextPeriod != period) {
+                student = nextStudent;
+                period = nextPeriod;
+                Arrays.fill(byCategory, Double.NaN);
+                percentSum = 0;
+                graded = 0;
+            }
+
+            int count = rs.getInt("graded");
+            double sum = rs.getDouble("percent_sum");
+            int category = policy.indexOf(rs.getString("category"));
+
+            if (category >= 0) {
+                byCategory[category] = sum / count;
+            }
+            percentSum += sum;
+            graded += count;
+        }
+
+        return averages;
+    }
+
+    private static double[] empty() {
+        double[] averages = new double[MARKING_PERIODS];
+        Arrays.fill(averages, Double.NaN);
+
+        return averages;
+    }
+
+    private static void apply(Connection conn, String sql, int sign, int courseId, int assignmentId, int studentId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, sign);
+            stmt.setInt(2, sign);
+            stmt.setInt(3, courseId);
+            stmt.setInt(4, assignmentId);
+            if (studentId >= 0) {
+                stmt.setInt(5, studentId);
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    private static void deleteEmpty(Connection conn, int courseId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.DELETE_EMPTY_CATEGORY_GRADES)) {
+            stmt.setInt(1, courseId);
+            stmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.apcsa.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import com.apcsa.model.Assignment;
+
+/**
+ * An in-memory list of each course's assignments. A course's assignments are
+ * loaded with one query the first time they're needed. After that,
+ * PowerSchool.addAssignment and deleteAssignment patch the list once their write
+ * has committed, so listing assignments never queries the database again. Every
+ * list is thrown away when the database is reset or restored.
+ */
+
+public class CourseAssignments {
+
+    private static ConcurrentHashMap<Integer, List<Assignment>> courses = new ConcurrentHashMap<Integer, List<Assignment>>();
+
+    /**
+     * Looks up a course's assignments.
+     *
+     * @param courseId the course
+     * @return the assignments in marking period, then assignment_id, order; never null
+     */
+
+    public static List<Assignment> get(int courseId) {
+        List<Assignment> assignments = courses.get(courseId);
+
+        return assignments != null ? assignments : load(courseId);
+    }
+
+    /**
+     * Looks up a course's assignments for one marking period or exam.
+     *
+     * @param courseId the course
+     * @param markingPeriod 1-4, or 5 for the midterm and 6 for the final
+     * @return the assignments in assignment_id order
+     */
+
+    public static ArrayList<Assignment> get(int courseId, int markingPeriod) {
+        ArrayList<Assignment> found = new ArrayList<Assignment>();
+
+        for (Assignment assignment : get(courseId)) {
+            if (assignment.getMarkingPeriod() == markingPeriod) {
+                found.add(assignment);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Discards every list so the next lookups reload them. Called when the
+     * database is reset or restored.
+     */
+
+    public static synchronized void invalidate() {
+        courses.clear();
+    }
+
+    /*
+     * Adds a committed assignment to its course's list, if the list is loaded.
+     */
+
+    static synchronized void add(Assignment assignment) {
+        List<Assignment> current = courses.get(assignment.getCourseId());
+
+        if (current == null || indexOf(current, assignment.getAssignmentId()) >= 0) {
+            return;         // the next load will read it
+        }
+
+        ArrayList<Assignment> updated = new ArrayList<Assignment>(current);
+        int i = updated.size();
+        while (i > 0 && compare(updated.get(i - 1), assignment) > 0) {
+            i--;
+        }
+        updated.add(i, assignment);
+
+        courses.put(assignment.getCourseId(), Collections.unmodifiableList(updated));
+    }
+
+    /*
+     * Removes a deleted assignment from its course's list, if the list is loaded.
+     */
+
+    static synchronized void remove(int courseId, int assignmentId) {
+        List<Assignment> current = courses.get(courseId);
+        int i = current != null ? indexOf(current, assignmentId) : -1;
+
+        if (i >= 0) {
+            ArrayList<Assignment> updated = new ArrayList<Assignment>(current);
+            updated.remove(i);
+
+            courses.put(courseId, Collections.unmodifiableList(updated));
+        }
+    }
+
+    /*
+     * Loads one course's list.
+     */
+
+    private static synchronized List<Assignment> load(int courseId) {
+        List<Assignment> current = courses.get(courseId);
+        if (current != null) {
+            return current;
+        }
+
+        ArrayList<Assignment> loaded = new ArrayList<Assignment>();
+
+        try (Connection conn = PowerSchool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_ASSIGNMENTS_BY_COURSE)) {
+
+            stmt.setInt(1, courseId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    loaded.add(new Assignment(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return Collections.<Assignment>emptyList();     // try again next time
+        }
+
+        current = Collections.unmodifiableList(loaded);
+        courses.put(courseId, current);
+
+        return current;
+    }
+
+    private static int indexOf(List<Assignment> assignments, int assignmentId) {
+        for (int i = 0; i < assignments.size(); i++) {
+            if (assignments.get(i).getAssignmentId() == assignmentId) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int compare(Assignment a, Assignment b) {
+        return a.getMarkingPeriod() != b.getMarkingPeriod()
+            ? Integer.compare(a.getMarkingPeriod(), b.getMarkingPeriod())
+            : Integer.compare(a.getAssignmentId(), b.getAssignmentId());
+    }
+}
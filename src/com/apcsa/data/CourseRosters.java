@@ -0,0 +1,333 @@
+package com.apcsa.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import com.apcsa.model.NamePool;
+
+/**
+ * An in-memory roster of each course, keyed by course_id, plus a map from course
+ * numbers to course IDs.
+ *
+ * A roster is a few parallel arrays sorted by name (student IDs, pooled last and
+ * first names, and GPAs), with an index sorted by student ID for membership checks.
+ * Each roster is loaded with one query on the course_grades primary key the first
+ * time it's needed. After that, the writer applies each committed event in commit
+ * order, before the write returns: a drop or a GPA_UPDATED patches the loaded
+ * roster, and an enrollment discards it to be reloaded. Showing a roster or
+ * checking a course number therefore runs no SQL in steady state.
+ * Everything is thrown away when the database is reset, restored, or bulk loaded.
+ */
+
+public class CourseRosters {
+
+    /**
+     * One course's students in name order. A roster never changes; updates replace it.
+     */
+
+    public static class Roster {
+        private final int[] studentIds;
+        private final String[] lastNames;
+        private final String[] firstNames;
+        private final double[] gpas;
+        private final int[] byId;            // positions, ordered by student_id
+
+        private Roster(int[] studentIds, String[] lastNames, String[] firstNames, double[] gpas) {
+            this.studentIds = studentIds;
+            this.lastNames = lastNames;
+            this.firstNames = firstNames;
+            this.gpas = gpas;
+            this.byId = new int[studentIds.length];
+
+            Integer[] positions = new Integer[studentIds.length];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = i;
+            }
+            Arrays.sort(positions, (a, b) -> Integer.compare(studentIds[a], studentIds[b]));
+            for (int i = 0; i < positions.length; i++) {
+                byId[i] = positions[i];
+            }
+        }
+
+        public int size() {
+            return studentIds.length;
+        }
+
+        public int getStudentId(int i) {
+            return studentIds[i];
+        }
+
+        /**
+         * @param i a position in name order
+         * @return the student's name formatted as LAST, FIRST
+         */
+
+        public String getName(int i) {
+            return lastNames[i] + ", " + firstNames[i];
+        }
+
+        public double getGpa(int i) {
+            return gpas[i];
+        }
+
+        /**
+         * @param studentId the student
+         * @return the student's position in name order, or -1 if they aren't enrolled
+         */
+
+        public int indexOf(int studentId) {
+            int low = 0;
+            int high = byId.length - 1;
+
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int id = studentIds[byId[middle]];
+
+                if (id < studentId) {
+                    low = middle + 1;
+                } else if (id > studentId) {
+                    high = middle - 1;
+                } else {
+                    return byId[middle];
+                }
+            }
+
+            return -1;
+        }
+
+        public boolean contains(int studentId) {
+            return indexOf(studentId) >= 0;
+        }
+
+        /*
+         * Copies this roster without the student at a position.
+         */
+
+        private Roster without(int at) {
+            return new Roster(remove(studentIds, at), remove(lastNames, at), remove(firstNames, at), remove(gpas, at));
+        }
+    }
+
+    private final static Roster EMPTY = new Roster(new int[0], new String[0], new String[0], new double[0]);
+
+    private static ConcurrentHashMap<Integer, Roster> rosters = new ConcurrentHashMap<Integer, Roster>();
+    private static volatile HashMap<String, Integer> courseIds;
+
+    /**
+     * Looks up a course's roster.
+     *
+     * @param courseId the course
+     * @return the roster; empty if the course has no students or doesn't exist
+     */
+
+    public static Roster get(int courseId) {
+        Roster roster = rosters.get(courseId);
+
+        return roster != null ? roster : load(courseId);
+    }
+
+    /**
+     * Looks up a course's roster by course number.
+     *
+     * @param courseNo the course number
+     * @return the roster, or null if there is no such course
+     */
+
+    public static Roster get(String courseNo) {
+        int courseId = getCourseId(courseNo);
+
+        return courseId >= 0 ? get(courseId) : null;
+    }
+
+    /**
+     * Resolves a course number.
+     *
+     * @param courseNo the course number
+     * @return the course_id, or -1 if there is no such course
+     */
+
+    public static int getCourseId(String courseNo) {
+        HashMap<String, Integer> current = courseIds;
+
+        if (current == null) {
+            current = loadCourseIds();
+        }
+
+        Integer courseId = current.get(courseNo);
+
+        return courseId != null ? courseId : -1;
+    }
+
+    /**
+     * Discards every roster and the course number map so the next lookups reload
+     * them.
+     */
+
+    public static synchronized void invalidate() {
+        rosters.clear();
+        courseIds = null;
+    }
+
+    /*
+     * Applies a committed event to the loaded rosters. Called by the writer thread
+     * after each commit, in commit order.
+     */
+
+    static void onCommit(DataEvent event) {
+        switch (event.getType()) {
+            case GPA_UPDATED:
+                updateGpa(event.getStudentId(), event.getValue());
+                break;
+            case STUDENT_ENROLLED:
+                enrolled(event.getCourseId());
+                break;
+            case STUDENT_DROPPED:
+                dropped(event.getCourseId(), event.getStudentId());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /*
+     * Discards the roster of a course someone enrolled in; the event doesn't carry
+     * the student's name, and the writer thread never queries, so the next lookup
+     * reloads it.
+     */
+
+    private static synchronized void enrolled(int courseId) {
+        rosters.remove(courseId);
+    }
+
+    /*
+     * Removes a dropped student from their course's roster, if the roster is loaded.
+     */
+
+    private static synchronized void dropped(int courseId, int studentId) {
+        Roster current = rosters.get(courseId);
+        int at = current != null ? current.indexOf(studentId) : -1;
+
+        if (at >= 0) {
+            rosters.put(courseId, current.without(at));
+        }
+    }
+
+    /*
+     * Loads one course's roster.
+     */
+
+    private static synchronized Roster load(int courseId) {
+        Roster current = rosters.get(courseId);
+        if (current != null) {
+            return current;
+        }
+
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        ArrayList<String> lastNames = new ArrayList<String>();
+        ArrayList<String> firstNames = new ArrayList<String>();
+        ArrayList<Double> gpas = new ArrayList<Double>();
+
+        try (Connection conn = PowerSchool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_COURSE_ROSTER)) {
+
+            stmt.setInt(1, courseId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt("student_id"));
+                    lastNames.add(NamePool.intern(rs.getString("last_name")));
+                    firstNames.add(NamePool.intern(rs.getString("first_name")));
+                    gpas.add(rs.getDouble("gpa"));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return EMPTY;       // try again next time
+        }
+
+        int[] studentIds = new int[ids.size()];
+        double[] gpaValues = new double[ids.size()];
+        for (int i = 0; i < studentIds.length; i++) {
+            studentIds[i] = ids.get(i);
+            gpaValues[i] = gpas.get(i);
+        }
+
+        current = new Roster(studentIds, lastNames.toArray(new String[0]), firstNames.toArray(new String[0]), gpaValues);
+        rosters.put(courseId, current);
+
+        return current;
+    }
+
+    private static synchronized HashMap<String, Integer> loadCourseIds() {
+        if (courseIds != null) {
+            return courseIds;
+        }
+
+        HashMap<String, Integer> loaded = new HashMap<String, Integer>();
+
+        try (Connection conn = PowerSchool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(QueryUtils.GET_ROSTER_COURSES)) {
+
+            while (rs.next()) {
+                loaded.put(rs.getString("course_no"), rs.getInt("course_id"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return loaded;      // try again next time
+        }
+        courseIds = loaded;
+
+        return loaded;
+    }
+
+    /*
+     * Replaces a student's GPA in every loaded roster they're on.
+     */
+
+    private static synchronized void updateGpa(int studentId, double gpa) {
+        for (Integer courseId : rosters.keySet()) {
+            Roster current = rosters.get(courseId);
+            int at = current.indexOf(studentId);
+
+            if (at >= 0 && current.gpas[at] != gpa) {
+                double[] gpas = current.gpas.clone();
+                gpas[at] = gpa;
+
+                rosters.put(courseId, new Roster(current.studentIds, current.lastNames, current.firstNames, gpas));
+            }
+        }
+    }
+
+    private static int[] remove(int[] values, int at) {
+        int[] copy = new int[values.length - 1];
+
+        System.arraycopy(values, 0, copy, 0, at);
+        System.arraycopy(values, at + 1, copy, at, copy.length - at);
+
+        return copy;
+    }
+
+    private static double[] remove(double[] values, int at) {
+        double[] copy = new double[values.length - 1];
+
+        System.arraycopy(values, 0, copy, 0, at);
+        System.arraycopy(values, at + 1, copy, at, copy.length - at);
+
+        return copy;
+    }
+
+    private static String[] remove(String[] values, int at) {
+        String[] copy = new String[values.length - 1];
+
+        System.arraycopy(values, 0, copy, 0, at);
+        System.arraycopy(values, at + 1, copy, at, copy.length - at);
+
+        return copy;
+    }
+}
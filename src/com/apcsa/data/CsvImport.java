@@ -0,0 +1,722 @@
+package com.apcsa.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import com.apcsa.controller.Utils;
+
+/**
+ * Loads students, teachers, courses, enrollments, and assignment grades from CSV
+ * files exported by the district SIS.
+ *
+ * Files are parsed as a stream. Each row is validated and its foreign keys
+ * (usernames, department titles, course numbers, assignment titles) are resolved
+ * against maps loaded once at the start, so no row needs a lookup query. New IDs
+ * are assigned from those maps as well. Accepted rows are written in chunks, one
+ * batched transaction per chunk, through the shared writer. The next chunk is
+ * parsed while the previous one commits. Rows that fail validation are skipped and
+ * reported; a chunk that fails to commit stops the import, but the chunks already
+ * sent are still waited for, and derived data is brought up to date for every
+ * chunk that committed.
+ *
+ * Every file needs a header row naming at least these columns, in any order:
+ *
+ *   students     username, password, first_name, last_name, graduation, grade_level
+ *   teachers     username, password, first_name, last_name, department
+ *   courses      course_no, title, department, teacher, credit_hours, weight, capacity
+ *   enrollments  student, course_no
+ *   grades       student, course_no, assignment, points_earned
+ *
+ * Teachers and students are referenced by username, departments by title, and
+ * assignments by title within their course. An enrollment in a course with no
+ * free seats is rejected. A grade must not exceed its assignment's point value,
+ * and a grade that already exists is rejected rather than overwritten. Imported
+ * grades are published like entered ones, so they are audited.
+ */
+
+public class CsvImport {
+
+    private final static int CHUNK_SIZE = 10000;
+    private final static int MAX_IN_FLIGHT = 2;
+    private final static int MAX_ERRORS = 100;
+
+    public enum Kind {
+        STUDENTS("username", "password", "first_name", "last_name", "graduation", "grade_level"),
+        TEACHERS("username", "password", "first_name", "last_name", "department"),
+        COURSES("course_no", "title", "department", "teacher", "credit_hours", "weight", "capacity"),
+        ENROLLMENTS("student", "course_no"),
+        GRADES("student", "course_no", "assignment", "points_earned");
+
+        private final String[] columns;
+
+        private Kind(String... columns) {
+            this.columns = columns;
+        }
+
+        /**
+         * @return the columns a file of this kind must have
+         */
+
+        public String[] getColumns() {
+            return columns.clone();
+        }
+    }
+
+    /**
+     * Receives progress updates as chunks are committed.
+     */
+
+    @FunctionalInterface
+    public interface Progress {
+        void report(long rowsRead, long rowsImported);
+    }
+
+    /**
+     * The outcome of an import.
+     */
+
+    public static class Result {
+        private long rowsRead;
+        private long rowsImported;
+        private long rowsRejected;
+        private long elapsed;
+        private boolean aborted;
+        private ArrayList<String> errors = new ArrayList<String>();
+
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        public long getRowsImported() {
+            return rowsImported;
+        }
+
+        public long getRowsRejected() {
+            return rowsRejected;
+        }
+
+        public long getElapsed() {
+            return elapsed;
+        }
+
+        public boolean isAborted() {
+            return aborted;
+        }
+
+        /**
+         * @return the first few error messages, each prefixed with its line number
+         */
+
+        public ArrayList<String> getErrors() {
+            return errors;
+        }
+
+        private void reject(long line, String message) {
+            rowsRejected++;
+
+            if (errors.size() < MAX_ERRORS) {
+                errors.add("Line " + line + ": " + message);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return rowsImported + " of " + rowsRead + " rows imported, " + rowsRejected + " rejected in "
+                + elapsed + " ms" + (aborted ? " (stopped early)" : "") + ".";
+        }
+    }
+
+    /*
+     * A batch of accepted rows on its way to the database.
+     */
+
+    private static class Chunk {
+        private ArrayList<Object[]> rows = new ArrayList<Object[]>(CHUNK_SIZE);
+        private ArrayList<NameIndex.Match> people = new ArrayList<NameIndex.Match>();
+        private TreeSet<Integer> courses = new TreeSet<Integer>();      // courses the rows touch
+        private CompletableFuture<Integer> result;
+    }
+
+    /*
+     * Everything the importer needs to resolve and assign keys without querying.
+     */
+
+    private static class Keys {
+        private int nextUserId;
+        private int nextTeacherId;
+        private int nextStudentId;
+        private int nextCourseId;
+
+        private HashSet<String> usernames = new HashSet<String>();
+        private HashMap<String, Integer> departments = new HashMap<String, Integer>();
+        private HashMap<String, Integer> teachers = new HashMap<String, Integer>();
+        private HashMap<String, Integer> students = new HashMap<String, Integer>();
+        private HashMap<String, Integer> courses = new HashMap<String, Integer>();
+        private HashSet<String> courseTitles = new HashSet<String>();
+        private HashSet<Long> enrollments = new HashSet<Long>();
+        private HashMap<Integer, int[]> seats = new HashMap<Integer, int[]>();        // {enrollment, capacity}
+        private HashMap<String, int[]> assignments = new HashMap<String, int[]>();     // {assignment_id, point_value}
+        private HashSet<String> grades = new HashSet<String>();
+    }
+
+    /**
+     * Imports one CSV file. Only one import runs at a time. The database runs with
+     * the bulk-load profile for the duration of the import, so every write made
+     * meanwhile, not only the import's, is committed without syncing to disk.
+     *
+     * @param kind what the file contains
+     * @param file the file
+     * @param progress receives an update after each chunk is committed, or null
+     * @return the outcome
+     * @throws IOException if the file can't be read or is missing a required column
+     */
+
+    public static synchronized Result run(Kind kind, File file, Progress progress) throws IOException {
+        Result result = new Result();
+        long started = System.currentTimeMillis();
+
+        Keys keys;
+        try {
+            keys = loadKeys();
+        } catch (SQLException e) {
+            throw new IOException("Unable to load existing keys.", e);
+        }
+
+        DatabaseProfile previous = PowerSchool.getProfile();
+        switchProfile(DatabaseProfile.BULK_LOAD);
+
+        TreeSet<Integer> touchedCourses = new TreeSet<Integer>();      // courses of committed chunks
+        ArrayDeque<Chunk> inFlight = new ArrayDeque<Chunk>();
+
+        try (CsvReader in = new CsvReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            int[] index = mapColumns(kind, in.next());
+            Chunk chunk = new Chunk();
+            String[] row;
+
+            while ((row = in.next()) != null) {
+                if (row.length == 1 && row[0].trim().isEmpty()) {
+                    continue;       // blank line
+                }
+
+                result.rowsRead++;
+
+                String[] values = new String[index.length];
+                String problem = null;
+                for (int i = 0; i < index.length; i++) {
+                    values[i] = index[i] < row.length ? row[index[i]].trim() : "";
+
+                    if (values[i].isEmpty()) {
+                        problem = "Missing " + kind.columns[i] + ".";
+                        break;
+                    }
+                }
+
+                if (problem == null) {
+                    try {
+                        accept(kind, values, keys, chunk);
+                    } catch (IllegalArgumentException e) {
+                        problem = e.getMessage();
+                    }
+                }
+
+                if (problem != null) {
+                    result.reject(in.getLine(), problem);
+                    continue;
+                }
+
+                if (chunk.rows.size() == CHUNK_SIZE) {
+                    if (!send(kind, chunk, inFlight, result, progress, touchedCourses)) {
+                        return result;
+                    }
+                    chunk = new Chunk();
+                }
+            }
+
+            if (!chunk.rows.isEmpty()) {
+                send(kind, chunk, inFlight, result, progress, touchedCourses);
+            }
+        } finally {
+
+            // even after a failure, earlier chunks are committed and later ones may
+            // still commit, so wait for all of them and bring derived data up to date
+
+            while (!inFlight.isEmpty()) {
+                await(inFlight.poll(), result, progress, touchedCourses);
+            }
+
+            switchProfile(previous);
+
+            if (result.rowsImported > 0) {
+                finish(kind, touchedCourses);
+            }
+            result.elapsed = System.currentTimeMillis() - started;
+        }
+
+        return result;
+    }
+
+    /*
+     * Validates one row, resolves its keys, and adds it to the chunk.
+     *
+     * @throws IllegalArgumentException with a message describing what's wrong with the row
+     */
+
+    private static void accept(Kind kind, String[] values, Keys keys, Chunk chunk) {
+        switch (kind) {
+            case STUDENTS: {
+                String username = values[0];
+                int graduation = parseInt(values[4], "graduation", 1900, 3000);
+                int gradeLevel = parseInt(values[5], "grade_level", 9, 12);
+
+                if (!keys.usernames.add(username)) {
+                    throw new IllegalArgumentException("Username " + username + " is already taken.");
+                }
+
+                int userId = ++keys.nextUserId;
+                int studentId = ++keys.nextStudentId;
+                keys.students.put(username, studentId);
+
+                chunk.rows.add(new Object[] { userId, username, Utils.getHash(values[1]),
+                    studentId, values[2], values[3], graduation, gradeLevel });
+                chunk.people.add(new NameIndex.Match("student", studentId, values[2], values[3], username));
+                break;
+            }
+            case TEACHERS: {
+                String username = values[0];
+                Integer departmentId = resolve(keys.departments, values[4], "department");
+
+                if (!keys.usernames.add(username)) {
+                    throw new IllegalArgumentException("Username " + username + " is already taken.");
+                }
+
+                int userId = ++keys.nextUserId;
+                int teacherId = ++keys.nextTeacherId;
+                keys.teachers.put(username, teacherId);
+
+                chunk.rows.add(new Object[] { userId, username, Utils.getHash(values[1]),
+                    teacherId, values[2], values[3], departmentId });
+                chunk.people.add(new NameIndex.Match("teacher", teacherId, values[2], values[3], username));
+                break;
+            }
+            case COURSES: {
+                String courseNo = values[0];
+                String title = values[1];
+                Integer departmentId = resolve(keys.departments, values[2], "department");
+                Integer teacherId = resolve(keys.teachers, values[3], "teacher");
+                double creditHours = parseDouble(values[4], "credit_hours");
+                double weight = parseDouble(values[5], "weight");
+                int capacity = parseInt(values[6], "capacity", 0, Integer.MAX_VALUE);
+
+                if (keys.courses.containsKey(courseNo)) {
+                    throw new IllegalArgumentException("Course " + courseNo + " already exists.");
+                } else if (!keys.courseTitles.add(title)) {
+                    throw new IllegalArgumentException("A course titled " + title + " already exists.");
+                }
+
+                int courseId = ++keys.nextCourseId;
+                keys.courses.put(courseNo, courseId);
+                keys.seats.put(courseId, new int[] { 0, capacity });
+
+                chunk.rows.add(new Object[] { courseId, departmentId, teacherId, courseNo, title, creditHours, weight, capacity });
+                break;
+            }
+            case ENROLLMENTS: {
+                Integer studentId = resolve(keys.students, values[0], "student");
+                Integer courseId = resolve(keys.courses, values[1], "course");
+
+                int[] seats = keys.seats.get(courseId);
+
+                if (keys.enrollments.contains(enrollmentKey(courseId, studentId))) {
+                    throw new IllegalArgumentException(values[0] + " is already enrolled in " + values[1] + ".");
+                } else if (seats[0] >= seats[1]) {
+                    throw new IllegalArgumentException(values[1] + " is full.");
+                }
+
+                keys.enrollments.add(enrollmentKey(courseId, studentId));
+                seats[0]++;
+
+                chunk.rows.add(new Object[] { courseId, studentId });
+                chunk.courses.add(courseId);
+                break;
+            }
+            case GRADES: {
+                Integer studentId = resolve(keys.students, values[0], "student");
+                Integer courseId = resolve(keys.courses, values[1], "course");
+                int[] assignment = keys.assignments.get(courseId + "\t" + values[2]);
+
+                if (assignment == null) {
+                    throw new IllegalArgumentException("Unknown assignment " + values[2] + " in " + values[1] + ".");
+                }
+
+                int pointsEarned = parseInt(values[3], "points_earned", 0, assignment[1]);
+
+                if (!keys.enrollments.contains(enrollmentKey(courseId, studentId))) {
+                    throw new IllegalArgumentException(values[0] + " is not enrolled in " + values[1] + ".");
+                } else if (!keys.grades.add(gradeKey(courseId, assignment[0], studentId))) {
+                    throw new IllegalArgumentException(values[0] + " already has a grade for " + values[2] + " in " + values[1] + ".");
+                }
+
+                chunk.rows.add(new Object[] { courseId, assignment[0], studentId, pointsEarned, assignment[1] });
+                chunk.courses.add(courseId);
+                break;
+            }
+        }
+    }
+
+    /*
+     * Queues a chunk for writing, first waiting for the oldest chunk if too many
+     * are already in flight.
+     *
+     * @return false if a chunk failed and the import should stop
+     */
+
+    private static boolean send(Kind kind, Chunk chunk, ArrayDeque<Chunk> inFlight, Result result, Progress progress,
+            TreeSet<Integer> touchedCourses) {
+
+        while (inFlight.size() >= MAX_IN_FLIGHT) {
+            if (!await(inFlight.poll(), result, progress, touchedCourses)) {
+                return false;
+            }
+        }
+
+        ArrayList<Object[]> rows = chunk.rows;
+        chunk.result = WriteQueue.submit(conn -> write(conn, kind, rows));
+        inFlight.add(chunk);
+
+        return true;
+    }
+
+    /*
+     * Waits for a chunk to commit and records the outcome.
+     *
+     * @return false if the chunk failed
+     */
+
+    private static boolean await(Chunk chunk, Result result, Progress progress, TreeSet<Integer> touchedCourses) {
+        try {
+            chunk.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.aborted = true;
+            return false;
+        } catch (ExecutionException e) {
+            result.aborted = true;
+            result.errors.add("Unable to write " + chunk.rows.size() + " rows: " + e.getCause().getMessage());
+            return false;
+        }
+
+        result.rowsImported += chunk.rows.size();
+        touchedCourses.addAll(chunk.courses);
+        NameIndex.addAll(chunk.people);
+
+        if (progress != null) {
+            progress.report(result.rowsRead, result.rowsImported);
+        }
+
+        return true;
+    }
+
+    /*
+     * Writes one chunk with batched statements on the writer connection.
+     */
+
+    private static int write(Connection conn, Kind kind, ArrayList<Object[]> rows) throws SQLException {
+        switch (kind) {
+            case STUDENTS:
+            case TEACHERS:
+                try (PreparedStatement users = conn.prepareStatement(QueryUtils.IMPORT_USER);
+                     PreparedStatement people = conn.prepareStatement(kind == Kind.STUDENTS ? QueryUtils.IMPORT_STUDENT : QueryUtils.IMPORT_TEACHER)) {
+
+                    String accountType = kind == Kind.STUDENTS ? "student" : "teacher";
+
+                    for (Object[] row : rows) {
+                        users.setObject(1, row[0]);
+                        users.setString(2, accountType);
+                        users.setObject(3, row[1]);
+                        users.setObject(4, row[2]);
+                        users.addBatch();
+
+                        people.setObject(1, row[3]);
+                        people.setObject(2, row[4]);
+                        people.setObject(3, row[5]);
+                        people.setObject(4, row[6]);
+                        if (kind == Kind.STUDENTS) {
+                            people.setObject(5, row[7]);
+                            people.setObject(6, row[0]);
+                        } else {
+                            people.setObject(5, row[0]);
+                        }
+                        people.addBatch();
+                    }
+
+                    users.executeBatch();
+                    people.executeBatch();
+                }
+
+                if (kind == Kind.TEACHERS) {
+                    for (Object[] row : rows) {
+                        WriteQueue.publishOnCommit(new DataEvent(DataEvent.Type.TEACHER_ADDED, DataEvent.ALL, DataEvent.ALL, DataEvent.ALL, (Integer) row[6]));
+                    }
+                }
+                break;
+            case COURSES:
+                executeBatch(conn, QueryUtils.IMPORT_COURSE, rows);
+
+                for (Object[] row : rows) {
+                    WriteQueue.publishOnCommit(new DataEvent(DataEvent.Type.COURSE_ADDED, (Integer) row[0], DataEvent.ALL, DataEvent.ALL, Double.NaN));
+                }
+                break;
+            case ENROLLMENTS:
+                try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.INCREMENT_ENROLLMENT)) {
+                    for (Object[] row : rows) {
+                        stmt.setObject(1, row[0]);
+                        stmt.addBatch();
+                    }
+
+                    for (int count : stmt.executeBatch()) {
+                        if (count != 1) {
+                            throw new SQLException("A course filled up during the import.");      // enrolled interactively meanwhile
+                        }
+                    }
+                }
+
+                executeBatch(conn, QueryUtils.IMPORT_ENROLLMENT, rows);
+                executeBatch(conn, QueryUtils.REFRESH_TRANSCRIPT, rows);
+                break;
+            case GRADES:
+                executeBatch(conn, QueryUtils.IMPORT_ASSIGNMENT_GRADE, rows);
+
+                for (Object[] row : rows) {
+                    WriteQueue.publishOnCommit(new DataEvent(DataEvent.Type.GRADE_ENTERED, (Integer) row[0], (Integer) row[2], (Integer) row[1],
+                        "points_earned", Double.NaN, (Integer) row[3]));
+                }
+                break;
+        }
+
+        return rows.size();
+    }
+
+    /*
+     * Runs one statement for every row, binding the row's values in order.
+     */
+
+    private static void executeBatch(Connection conn, String sql, ArrayList<Object[]> rows) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    stmt.setObject(i + 1, row[i]);
+                }
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+        }
+    }
+
+    /*
+     * Brings derived data up to date once every chunk has been written: course
+     * enrollment counts after enrollments, and category totals, term and course
+     * grades, transcripts, and GPAs after assignment grades.
+     */
+
+    private static void finish(Kind kind, TreeSet<Integer> touchedCourses) {
+        QueryCache.invalidateAll();         // most chunks are written without events
+        CourseRosters.invalidate();
+        Analytics.invalidateAll();
+
+        if (kind == Kind.ENROLLMENTS && !touchedCourses.isEmpty()) {
+            Enrollments.reconcile();
+        } else if (kind == Kind.GRADES) {
+            for (int courseId : touchedCourses) {
+                WriteQueue.execute(conn -> {
+                    CategoryGrades.rebuild(conn, courseId);
+                    PowerSchool.recomputeSection(conn, courseId);
+
+                    return 1;
+                });
+            }
+        }
+    }
+
+    /*
+     * Switches the database profile and recycles the writer connection so the
+     * new pragmas take effect.
+     */
+
+    private static void switchProfile(DatabaseProfile profile) {
+        if (PowerSchool.getProfile() != profile) {
+            PowerSchool.setProfile(profile);
+            WriteQueue.runExclusive(() -> 0);
+        }
+    }
+
+    /*
+     * Finds the position of each required column in the header row.
+     */
+
+    private static int[] mapColumns(Kind kind, String[] header) throws IOException {
+        if (header == null) {
+            throw new IOException("The file is empty.");
+        }
+
+        int[] index = new int[kind.columns.length];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = -1;
+
+            for (int j = 0; j < header.length; j++) {
+                if (header[j].replace("\uFEFF", "").trim().equalsIgnoreCase(kind.columns[i])) {
+                    index[i] = j;
+                }
+            }
+
+            if (index[i] == -1) {
+                throw new IOException("Missing column " + kind.columns[i] + ".");
+            }
+        }
+
+        return index;
+    }
+
+    /*
+     * Loads every key an import might need to resolve or assign.
+     */
+
+    private static Keys loadKeys() throws SQLException {
+        Keys keys = new Keys();
+
+        try (Connection conn = PowerSchool.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_IMPORT_KEYS)) {
+                if (rs.next()) {
+                    keys.nextUserId = rs.getInt("users");
+                    keys.nextTeacherId = rs.getInt("teachers");
+                    keys.nextStudentId = rs.getInt("students");
+                    keys.nextCourseId = rs.getInt("courses");
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_USERNAMES)) {
+                while (rs.next()) {
+                    keys.usernames.add(rs.getString("username"));
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_DEPARTMENT_IDS)) {
+                while (rs.next()) {
+                    keys.departments.put(rs.getString("title"), rs.getInt("department_id"));
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_TEACHER_NAMES)) {
+                while (rs.next()) {
+                    keys.teachers.put(rs.getString("username"), rs.getInt("teacher_id"));
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_STUDENT_NAMES)) {
+                while (rs.next()) {
+                    keys.students.put(rs.getString("username"), rs.getInt("student_id"));
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_COURSE_IDS)) {
+                while (rs.next()) {
+                    keys.courses.put(rs.getString("course_no"), rs.getInt("course_id"));
+                    keys.courseTitles.add(rs.getString("title"));
+                    keys.seats.put(rs.getInt("course_id"), new int[] { 0, rs.getInt("capacity") });
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_ENROLLMENTS)) {
+                while (rs.next()) {
+                    keys.enrollments.add(enrollmentKey(rs.getInt("course_id"), rs.getInt("student_id")));
+                    keys.seats.get(rs.getInt("course_id"))[0]++;
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_ASSIGNMENT_KEYS)) {
+                while (rs.next()) {
+                    keys.assignments.put(rs.getInt("course_id") + "\t" + rs.getString("title"),
+                        new int[] { rs.getInt("assignment_id"), rs.getInt("point_value") });
+                }
+            }
+
+            try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_GRADE_KEYS)) {
+                while (rs.next()) {
+                    keys.grades.add(gradeKey(rs.getInt("course_id"), rs.getInt("assignment_id"), rs.getInt("student_id")));
+                }
+            }
+        }
+
+        return keys;
+    }
+
+    /*
+     * Looks up a foreign key.
+     */
+
+    private static Integer resolve(HashMap<String, Integer> map, String key, String name) {
+        Integer id = map.get(key);
+
+        if (id == null) {
+            throw new IllegalArgumentException("Unknown " + name + " " + key + ".");
+        }
+
+        return id;
+    }
+
+    private static int parseInt(String value, String name, int min, int max) {
+        int parsed;
+
+        try {
+            parsed = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " " + value + ".");
+        }
+
+        if (parsed < min || parsed > max) {
+            throw new IllegalArgumentException(name + " " + value + " is out of range.");
+        }
+
+        return parsed;
+    }
+
+    private static double parseDouble(String value, String name) {
+        double parsed;
+
+        try {
+            parsed = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " " + value + ".");
+        }
+
+        if (!(parsed > 0) || Double.isInfinite(parsed)) {
+            throw new IllegalArgumentException(name + " " + value + " must be positive.");
+        }
+
+        return parsed;
+    }
+
+    private static String gradeKey(int courseId, int assignmentId, int studentId) {
+        return courseId + "\t" + assignmentId + "\t" + studentId;
+    }
+
+    private static long enrollmentKey(int courseId, int studentId) {
+        return ((long) courseId << 32) | (studentId & 0xffffffffL);
+    }
+}
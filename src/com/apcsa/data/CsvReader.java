@@ -0,0 +1,134 @@
+package com.apcsa.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+/**
+ * A streaming CSV parser. Rows are read one at a time from a fixed-size buffer,
+ * so files of any size can be parsed in constant memory. Fields may be quoted,
+ * quoted fields may contain commas, line breaks, and doubled quotes, and both
+ * \n and \r\n line endings are accepted.
+ */
+
+public class CsvReader implements Closeable {
+
+    private final static int BUFFER_SIZE = 1 << 16;
+
+    private Reader in;
+    private char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private long line;
+    private long rowStart;
+
+    private ArrayList<String> fields = new ArrayList<String>();
+    private StringBuilder field = new StringBuilder();
+
+    /**
+     * Creates an instance of the CsvReader class.
+     *
+     * @param in the source of the CSV data
+     */
+
+    public CsvReader(Reader in) {
+        this.in = in;
+        this.line = 1;
+    }
+
+    /**
+     * Reads the next row.
+     *
+     * @return the row's fields, or null at the end of the input
+     * @throws IOException if the input can't be read or a quoted field is never closed
+     */
+
+    public String[] next() throws IOException {
+        fields.clear();
+        field.setLength(0);
+        rowStart = line;
+
+        boolean quoted = false;
+        boolean any = false;
+
+        while (true) {
+            if (position == limit && !fill()) {
+                if (quoted) {
+                    throw new IOException("Unterminated quoted field starting on line " + rowStart + ".");
+                }
+                if (!any) {
+                    return null;
+                }
+                fields.add(field.toString());
+
+                return fields.toArray(new String[fields.size()]);
+            }
+
+            char c = buffer[position++];
+            any = true;
+
+            if (quoted) {
+                if (c == '"') {
+                    if (position == limit && !fill()) {
+                        quoted = false;
+                    } else if (buffer[position] == '"') {
+                        field.append('"');
+                        position++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append(c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n') {
+                line++;
+                fields.add(field.toString());
+
+                return fields.toArray(new String[fields.size()]);
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+    }
+
+    /**
+     * @return the line number on which the most recently read row started
+     */
+
+    public long getLine() {
+        return rowStart;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /*
+     * Refills the buffer.
+     *
+     * @return false at the end of the input
+     */
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+
+        if (read <= 0) {
+            return false;
+        }
+
+        position = 0;
+        limit = read;
+
+        return true;
+    }
+}
@@ -0,0 +1,152 @@
+package com.apcsa.data;
+
+/**
+ * Describes one committed change to the database. Fields that don't apply to an
+ * event (or that cover every row, such as a whole-course recompute) are set to ALL.
+ * Old values are NaN when there was no previous value.
+ */
+
+public class DataEvent {
+
+    public final static int ALL = -1;
+
+    public enum Type {                  // append only: the audit log stores ordinals
+        GRADE_ENTERED,              // assignment_grades row inserted or replaced
+        GRADE_DELETED,              // assignment_grades row(s) removed
+        ASSIGNMENT_ADDED,           // assignments row inserted
+        ASSIGNMENT_DELETED,         // assignments row removed
+        COURSE_GRADE_UPDATED,       // course_grades term or final grade changed
+        GPA_UPDATED,                // students.gpa changed
+        RESET,                      // database rebuilt from setup.sql or restored
+        STUDENT_ENROLLED,           // course_grades row inserted
+        STUDENT_DROPPED,            // course_grades row removed
+        COURSE_ADDED,               // courses row inserted
+        TEACHER_ADDED               // teachers row inserted (value is the department)
+    }
+
+    private Type type;
+    private int courseId;
+    private int studentId;
+    private int assignmentId;
+    private String field;
+    private double oldValue;
+    private double value;
+    private String actor;
+    private long timestamp;
+
+    /**
+     * Creates an instance of the DataEvent class.
+     *
+     * @param type the kind of change
+     * @param courseId the affected course, or ALL
+     * @param studentId the affected student, or ALL
+     * @param assignmentId the affected assignment, or ALL
+     * @param value the new value (points earned, grade, or GPA), if any
+     */
+
+    public DataEvent(Type type, int courseId, int studentId, int assignmentId, double value) {
+        this(type, courseId, studentId, assignmentId, null, Double.NaN, value);
+    }
+
+    /**
+     * Creates an instance of the DataEvent class for a change to a single column.
+     *
+     * @param type the kind of change
+     * @param courseId the affected course, or ALL
+     * @param studentId the affected student, or ALL
+     * @param assignmentId the affected assignment, or ALL
+     * @param field the changed column (e.g., "mp1" or "points_earned")
+     * @param oldValue the previous value, or NaN if there wasn't one
+     * @param value the new value, or NaN if the row was removed
+     */
+
+    public DataEvent(Type type, int courseId, int studentId, int assignmentId, String field, double oldValue, double value) {
+        this.type = type;
+        this.courseId = courseId;
+        this.studentId = studentId;
+        this.assignmentId = assignmentId;
+        this.field = field;
+        this.oldValue = oldValue;
+        this.value = value;
+        this.actor = PowerSchool.getActor();
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * @return type
+     */
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return courseId
+     */
+
+    public int getCourseId() {
+        return courseId;
+    }
+
+    /**
+     * @return studentId
+     */
+
+    public int getStudentId() {
+        return studentId;
+    }
+
+    /**
+     * @return assignmentId
+     */
+
+    public int getAssignmentId() {
+        return assignmentId;
+    }
+
+    /**
+     * @return the changed column, or null if the event isn't about a single column
+     */
+
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * @return oldValue
+     */
+
+    public double getOldValue() {
+        return oldValue;
+    }
+
+    /**
+     * @return value
+     */
+
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * @return the username of the user who made the change
+     */
+
+    public String getActor() {
+        return actor;
+    }
+
+    /**
+     * @return the time the event was created, in milliseconds since the epoch
+     */
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return type + " course=" + courseId + " student=" + studentId + " assignment=" + assignmentId
+            + (field != null ? " " + field : "") + " old=" + oldValue + " value=" + value + " by " + actor;
+    }
+}
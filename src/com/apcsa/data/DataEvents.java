@@ -0,0 +1,166 @@
+package com.apcsa.data;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-process event bus for committed data changes. Events are written into a
+ * fixed-size ring buffer without locks; every subscriber has its own thread that
+ * follows the buffer at its own pace. An idle subscriber parks until a publisher
+ * unparks it. Publishers only wait if the slowest subscriber has fallen a full
+ * buffer behind, and are woken as soon as it catches up.
+ */
+
+public class DataEvents {
+
+    private final static int SIZE = 1024;              // must be a power of two
+    private final static int MASK = SIZE - 1;
+    private final static Object FULL = new Object();    // publishers wait here for a free slot
+
+    private static DataEvent[] slots = new DataEvent[SIZE];
+    private static AtomicLongArray published = new AtomicLongArray(SIZE);
+    private static AtomicLong claimed = new AtomicLong(-1);
+    private static CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+    private static AtomicInteger blocked = new AtomicInteger();      // publishers waiting on FULL
+
+    static {
+        for (int i = 0; i < SIZE; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    /**
+     * Receives events on a subscriber's own thread, in publication order. A
+     * listener must never wait on the WriteQueue (execute, submit, or
+     * runExclusive): the writer publishes while committing, so a listener that
+     * waits for it can stall the buffer and deadlock the writer.
+     */
+
+    @FunctionalInterface
+    public interface Listener {
+        void onEvent(DataEvent event);
+    }
+
+    private static class Subscriber {
+        private Listener listener;
+        private AtomicLong sequence;
+        private volatile Thread thread;
+        private volatile boolean waiting;
+
+        private Subscriber(Listener listener, long start) {
+            this.listener = listener;
+            this.sequence = new AtomicLong(start);
+        }
+    }
+
+    /**
+     * Registers a listener for every event published from now on.
+     *
+     * @param name a name for the listener's thread
+     * @param listener the listener
+     */
+
+    public static void subscribe(String name, Listener listener) {
+        Subscriber subscriber = new Subscriber(listener, claimed.get());
+        subscribers.add(subscriber);
+
+        Thread thread = new Thread(() -> consume(subscriber), "events-" + name);
+        thread.setDaemon(true);
+        subscriber.thread = thread;
+        thread.start();
+    }
+
+    /**
+     * Publishes an event to every subscriber.
+     *
+     * @param event the event
+     */
+
+    public static void publish(DataEvent event) {
+        long sequence = claimed.incrementAndGet();
+
+        // wait for the slowest subscriber to free up the slot
+
+        if (sequence - slowestSubscriber() > SIZE) {
+            boolean interrupted = false;
+
+            synchronized (FULL) {
+                blocked.incrementAndGet();
+                while (sequence - slowestSubscriber() > SIZE) {
+                    try {
+                        FULL.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;     // the sequence is claimed, so the slot must still be filled
+                    }
+                }
+                blocked.decrementAndGet();
+            }
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        int index = (int) (sequence & MASK);
+        slots[index] = event;
+        published.set(index, sequence);
+
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.waiting) {
+                LockSupport.unpark(subscriber.thread);
+            }
+        }
+    }
+
+    /*
+     * Returns the sequence number of the last event every subscriber has handled.
+     */
+
+    private static long slowestSubscriber() {
+        long slowest = Long.MAX_VALUE;
+
+        for (Subscriber subscriber : subscribers) {
+            slowest = Math.min(slowest, subscriber.sequence.get());
+        }
+
+        return slowest == Long.MAX_VALUE ? claimed.get() : slowest;
+    }
+
+    /*
+     * Delivers events to one subscriber forever.
+     */
+
+    private static void consume(Subscriber subscriber) {
+        while (true) {
+            long next = subscriber.sequence.get() + 1;
+            int index = (int) (next & MASK);
+
+            if (published.get(index) != next) {
+                subscriber.waiting = true;
+
+                if (published.get(index) != next) {        // recheck, or a publish in between goes unnoticed
+                    LockSupport.park(subscriber);
+                }
+                subscriber.waiting = false;
+                continue;
+            }
+
+            try {
+                subscriber.listener.onEvent(slots[index]);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+
+            subscriber.sequence.set(next);
+
+            if (blocked.get() > 0) {
+                synchronized (FULL) {
+                    FULL.notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.apcsa.data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Named sets of SQLite pragmas applied to every new connection. All profiles use
+ * write-ahead logging so readers never block the writer; they differ in how much
+ * durability they trade for commit speed.
+ */
+
+public enum DatabaseProfile {
+
+    DURABLE("FULL", -2000, 0, "DEFAULT", 5000),
+    BALANCED("NORMAL", -16000, 67108864, "MEMORY", 5000),
+    BULK_LOAD("OFF", -65536, 268435456, "MEMORY", 30000);
+
+    private final String synchronous;
+    private final int cacheSize;
+    private final long mmapSize;
+    private final String tempStore;
+    private final int busyTimeout;
+
+    private DatabaseProfile(String synchronous, int cacheSize, long mmapSize, String tempStore, int busyTimeout) {
+        this.synchronous = synchronous;
+        this.cacheSize = cacheSize;
+        this.mmapSize = mmapSize;
+        this.tempStore = tempStore;
+        this.busyTimeout = busyTimeout;
+    }
+
+    /**
+     * Applies this profile's connection-level pragmas.
+     *
+     * @param conn a newly opened connection
+     * @throws SQLException
+     */
+
+    public void apply(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + busyTimeout);
+            stmt.execute("PRAGMA synchronous = " + synchronous);
+            stmt.execute("PRAGMA cache_size = " + cacheSize);
+            stmt.execute("PRAGMA mmap_size = " + mmapSize);
+            stmt.execute("PRAGMA temp_store = " + tempStore);
+        }
+    }
+
+    /**
+     * Switches the database file to write-ahead logging. The journal mode is stored
+     * in the file itself, so this only needs to run once per database.
+     *
+     * @param conn an open connection
+     * @throws SQLException
+     */
+
+    public static void enableWal(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA journal_mode = WAL");
+        }
+    }
+
+    /**
+     * Looks up a profile by name (e.g., "durable", "balanced", or "bulk-load").
+     *
+     * @param name the profile name
+     * @return the matching profile, or BALANCED if the name is not recognized
+     */
+
+    public static DatabaseProfile forName(String name) {
+        if (name != null) {
+            for (DatabaseProfile profile : values()) {
+                if (profile.getName().equalsIgnoreCase(name.trim())) {
+                    return profile;
+                }
+            }
+        }
+
+        return BALANCED;
+    }
+
+    /**
+     * @return the profile name as shown to users
+     */
+
+    public String getName() {
+        return name().toLowerCase().replace('_', '-');
+    }
+}
@@ -0,0 +1,440 @@
+package com.apcsa.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adds students to and drops them from courses without ever exceeding a course's
+ * capacity.
+ *
+ * Each course has an in-memory seat counter. A seat is reserved with a
+ * compare-and-set on that counter before anything is written, so concurrent
+ * requests for the last seat never both get it. The write itself checks capacity
+ * again with a conditional UPDATE, so even a stale counter can't oversell a
+ * course. Counters are reloaded from course_grades on first use and whenever the
+ * database is reset or restored. A reload updates each course's Section in place,
+ * so callers still holding it keep counting against the live counter.
+ *
+ * Students who can't get a seat can join a course's waitlist. When a student drops,
+ * their seat is handed straight to the first student on the waitlist without ever
+ * being released, and no one can enroll ahead of a non-empty waitlist. Waitlist
+ * changes are guarded by a fixed set of striped locks rather than one lock per
+ * course. Waitlists are kept in memory only.
+ */
+
+public class Enrollments {
+
+    private final static int STRIPES = 16;      // must be a power of two
+
+    public enum Outcome {
+        ENROLLED,
+        WAITLISTED,
+        ALREADY_ENROLLED,
+        ALREADY_WAITLISTED,
+        FULL,
+        DROPPED,
+        NOT_ENROLLED,
+        UNKNOWN_COURSE,
+        ERROR
+    }
+
+    /*
+     * Seat counts and waitlist for one course.
+     */
+
+    private static class Section {
+        private volatile int capacity;
+        private final AtomicInteger enrolled;
+        private final ArrayDeque<Integer> waitlist = new ArrayDeque<Integer>();     // guarded by lockFor(courseId)
+
+        private Section(int capacity, int enrolled) {
+            this.capacity = capacity;
+            this.enrolled = new AtomicInteger(enrolled);
+        }
+
+        /*
+         * Claims a seat if one is free.
+         */
+
+        private boolean reserve() {
+            while (true) {
+                int current = enrolled.get();
+
+                if (current >= capacity) {
+                    return false;
+                } else if (enrolled.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            enrolled.decrementAndGet();
+        }
+    }
+
+    private static volatile ConcurrentHashMap<Integer, Section> sections;
+    private static ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private static volatile boolean stale;      // set by a RESET event; reconciled by the next caller
+    private static boolean subscribed;
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Enrolls a student in a course if there is room and no one is waitlisted.
+     *
+     * @param courseId the course
+     * @param studentId the student
+     * @param waitlist whether to put the student on the waitlist if they can't enroll now
+     * @return the outcome
+     */
+
+    public static Outcome enroll(int courseId, int studentId, boolean waitlist) {
+        Section section = getSections().get(courseId);
+
+        if (section == null) {
+            return Outcome.UNKNOWN_COURSE;
+        }
+
+        boolean reserved;
+        ReentrantLock lock = lockFor(courseId);
+        lock.lock();
+        try {
+            reserved = section.waitlist.isEmpty() && section.reserve();     // waitlisted students go first
+        } finally {
+            lock.unlock();
+        }
+
+        if (!reserved) {
+            Outcome outcome = waitlist ? addToWaitlist(courseId, section, studentId) : Outcome.FULL;
+            promote(courseId, section, false);      // a free seat belongs to the head of the waitlist
+
+            return outcome;
+        }
+
+        int result = write(courseId, studentId);
+
+        if (result != 1) {
+            section.release();
+        }
+
+        switch (result) {
+            case 1:
+                return Outcome.ENROLLED;
+            case 0:
+                return Outcome.ALREADY_ENROLLED;
+            default:
+                reconcile();
+                return Outcome.ERROR;
+        }
+    }
+
+    /*
+     * Writes an enrollment for a seat that has already been reserved.
+     *
+     * @return 1 if enrolled, 0 if the student was already enrolled, or -1 on failure
+     */
+
+    private static int write(int courseId, int studentId) {
+        return WriteQueue.execute(conn -> {
+            if (isEnrolled(conn, courseId, studentId)) {
+                return 0;
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.INCREMENT_ENROLLMENT)) {
+                stmt.setInt(1, courseId);
+
+                if (stmt.executeUpdate() != 1) {
+                    return -1;      // full according to the database; roll back
+                }
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.IMPORT_ENROLLMENT)) {
+                stmt.setInt(1, courseId);
+                stmt.setInt(2, studentId);
+                stmt.executeUpdate();
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.REFRESH_TRANSCRIPT)) {
+                stmt.setInt(1, courseId);
+                stmt.setInt(2, studentId);
+                stmt.executeUpdate();
+            }
+
+            WriteQueue.publishOnCommit(new DataEvent(DataEvent.Type.STUDENT_ENROLLED, courseId, studentId, DataEvent.ALL, Double.NaN));
+
+            return 1;
+        });
+    }
+
+    /**
+     * Drops a student from a course (or from its waitlist), along with the
+     * student's assignment grades and transcript entry for that course. The freed
+     * seat goes to the first student on the waitlist.
+     *
+     * @param courseId the course
+     * @param studentId the student
+     * @return the outcome
+     */
+
+    public static Outcome drop(int courseId, int studentId) {
+        Section section = getSections().get(courseId);
+
+        if (section == null) {
+            return Outcome.UNKNOWN_COURSE;
+        }
+
+        int result = WriteQueue.execute(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.DELETE_ENROLLMENT)) {
+                stmt.setInt(1, courseId);
+                stmt.setInt(2, studentId);
+
+                if (stmt.executeUpdate() != 1) {
+                    return 0;
+                }
+            }
+
+            for (String sql : new String[] { QueryUtils.DELETE_STUDENT_ASSIGNMENT_GRADES, QueryUtils.DELETE_TRANSCRIPT }) {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setInt(1, courseId);
+                    stmt.setInt(2, studentId);
+                    stmt.executeUpdate();
+                }
+            }
+
+            CategoryGrades.deleteStudent(conn, courseId, studentId);
+
+            try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.DECREMENT_ENROLLMENT)) {
+                stmt.setInt(1, courseId);
+                stmt.executeUpdate();
+            }
+
+            WriteQueue.publishOnCommit(new DataEvent(DataEvent.Type.STUDENT_DROPPED, courseId, studentId, DataEvent.ALL, Double.NaN));
+
+            return 1;
+        });
+
+        if (result == 0) {
+            return removeFromWaitlist(courseId, section, studentId) ? Outcome.DROPPED : Outcome.NOT_ENROLLED;
+        } else if (result != 1) {
+            return Outcome.ERROR;
+        }
+
+        GpaUpdates.markDirty(studentId);
+        promote(courseId, section, true);       // hand the seat over without releasing it
+
+        return Outcome.DROPPED;
+    }
+
+    /**
+     * Describes a course's seat usage and waitlist.
+     *
+     * @param courseId the course
+     * @return a one-line summary, or null if the course doesn't exist
+     */
+
+    public static String getStatus(int courseId) {
+        Section section = getSections().get(courseId);
+
+        if (section == null) {
+            return null;
+        }
+
+        return section.enrolled.get() + " of " + section.capacity + " seats taken, "
+            + getWaitlist(courseId).size() + " waitlisted.";
+    }
+
+    /**
+     * @param courseId the course
+     * @return the IDs of the students on the course's waitlist, in order
+     */
+
+    public static ArrayList<Integer> getWaitlist(int courseId) {
+        Section section = getSections().get(courseId);
+
+        if (section == null) {
+            return new ArrayList<Integer>();
+        }
+
+        ReentrantLock lock = lockFor(courseId);
+        lock.lock();
+        try {
+            return new ArrayList<Integer>(section.waitlist);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Recounts every course's enrollment from course_grades, stores the counts in
+     * courses.enrollment, and reloads the in-memory counters. Sections that already
+     * exist are updated in place, so their waitlists are kept.
+     */
+
+    public static synchronized void reconcile() {
+        HashMap<Integer, int[]> seats = new HashMap<Integer, int[]>();      // {capacity, enrollment}
+        stale = false;
+
+        int result = WriteQueue.execute(conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate(QueryUtils.UPDATE_ENROLLMENT_COUNTS);
+
+                try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_COURSE_SEATS)) {
+                    while (rs.next()) {
+                        seats.put(rs.getInt("course_id"), new int[] { rs.getInt("capacity"), rs.getInt("enrollment") });
+                    }
+                }
+            }
+
+            return seats.size();
+        });
+
+        if (result < 0) {
+            stale = true;       // try again next time
+            return;
+        }
+
+        ConcurrentHashMap<Integer, Section> current = sections;
+        ConcurrentHashMap<Integer, Section> loaded = new ConcurrentHashMap<Integer, Section>();
+
+        for (Map.Entry<Integer, int[]> entry : seats.entrySet()) {
+            int[] counts = entry.getValue();
+            Section section = current != null ? current.get(entry.getKey()) : null;
+
+            if (section == null) {
+                section = new Section(counts[0], counts[1]);
+            } else {
+                section.capacity = counts[0];
+                section.enrolled.set(counts[1]);
+            }
+            loaded.put(entry.getKey(), section);
+        }
+
+        sections = loaded;
+
+        if (!subscribed) {
+            subscribed = true;
+            DataEvents.subscribe("enrollments", event -> {
+                if (event.getType() == DataEvent.Type.RESET) {
+                    stale = true;       // never write from a subscriber thread
+                }
+            });
+        }
+    }
+
+    /*
+     * Loads the counters the first time they are needed, and again after a reset.
+     */
+
+    private static ConcurrentHashMap<Integer, Section> getSections() {
+        if (sections == null || stale) {
+            reconcile();
+        }
+
+        ConcurrentHashMap<Integer, Section> current = sections;
+
+        return current != null ? current : new ConcurrentHashMap<Integer, Section>();
+    }
+
+    /*
+     * Gives free seats to waitlisted students in order, under the course's stripe
+     * lock so no one can enroll in between. If held is true, the caller has already
+     * reserved a seat (a drop's), and it's passed on or released here. A student
+     * whose enrollment fails keeps their place at the head of the line.
+     */
+
+    private static void promote(int courseId, Section section, boolean held) {
+        boolean failed = false;
+        ReentrantLock lock = lockFor(courseId);
+        lock.lock();
+        try {
+            while (!section.waitlist.isEmpty() && (held || section.reserve())) {
+                held = false;
+                Integer next = section.waitlist.poll();
+                int result = write(courseId, next);
+
+                if (result != 1) {
+                    section.release();
+                }
+                if (result < 0) {
+                    section.waitlist.addFirst(next);
+                    failed = true;
+                    break;
+                }
+            }
+
+            if (held) {
+                section.release();      // no one waiting
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (failed) {
+            reconcile();
+        }
+    }
+
+    private static Outcome addToWaitlist(int courseId, Section section, int studentId) {
+        try (Connection conn = PowerSchool.getConnection()) {
+            if (isEnrolled(conn, courseId, studentId)) {
+                return Outcome.ALREADY_ENROLLED;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return Outcome.ERROR;
+        }
+
+        ReentrantLock lock = lockFor(courseId);
+        lock.lock();
+        try {
+            if (section.waitlist.contains(studentId)) {
+                return Outcome.ALREADY_WAITLISTED;
+            }
+            section.waitlist.add(studentId);
+
+            return Outcome.WAITLISTED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean removeFromWaitlist(int courseId, Section section, int studentId) {
+        ReentrantLock lock = lockFor(courseId);
+        lock.lock();
+        try {
+            return section.waitlist.remove(studentId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean isEnrolled(Connection conn, int courseId, int studentId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_COURSE_GRADES_ROW)) {
+            stmt.setInt(1, courseId);
+            stmt.setInt(2, studentId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static ReentrantLock lockFor(int courseId) {
+        return locks[courseId & (STRIPES - 1)];
+    }
+}
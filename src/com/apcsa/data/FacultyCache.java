@@ -0,0 +1,183 @@
+package com.apcsa.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import com.apcsa.model.TeacherSummary;
+
+/**
+ * Caches the faculty list, whole and by department, for the administrator views.
+ *
+ * Readers always see one immutable snapshot and never take a lock or run a query.
+ * A refresh builds a complete new snapshot off to the side and swaps it in. When a
+ * teacher is added only that teacher's department is reloaded, and every other
+ * department's list is carried over into the new snapshot unchanged.
+ *
+ * The event listener never queries; it only records what is stale, and the next
+ * reader reloads it.
+ */
+
+public class FacultyCache {
+
+    private final static Comparator<TeacherSummary> BY_NAME =
+        Comparator.comparing(TeacherSummary::getName, String.CASE_INSENSITIVE_ORDER);
+
+    /*
+     * One consistent view of the faculty. Never modified after construction.
+     */
+
+    private static class Snapshot {
+        private final List<TeacherSummary> all;
+        private final Map<Integer, List<TeacherSummary>> byDepartment;
+
+        private Snapshot(Map<Integer, List<TeacherSummary>> byDepartment) {
+            ArrayList<TeacherSummary> everyone = new ArrayList<TeacherSummary>();
+            for (List<TeacherSummary> teachers : byDepartment.values()) {
+                everyone.addAll(teachers);
+            }
+            everyone.sort(BY_NAME);
+
+            this.all = Collections.unmodifiableList(everyone);
+            this.byDepartment = Collections.unmodifiableMap(byDepartment);
+        }
+    }
+
+    private static volatile Snapshot snapshot;
+    private static volatile boolean stale;          // set by a RESET event
+    private static final Set<Integer> staleDepartments = ConcurrentHashMap.newKeySet();
+    private static boolean subscribed;
+
+    /**
+     * @return every teacher, ordered by name
+     */
+
+    public static List<TeacherSummary> getAll() {
+        return getSnapshot().all;
+    }
+
+    /**
+     * @param departmentId the department
+     * @return the department's teachers, ordered by name; never null
+     */
+
+    public static List<TeacherSummary> getByDepartment(int departmentId) {
+        List<TeacherSummary> teachers = getSnapshot().byDepartment.get(departmentId);
+
+        return teachers != null ? teachers : Collections.<TeacherSummary>emptyList();
+    }
+
+    /**
+     * Reloads every department.
+     */
+
+    public static synchronized void refresh() {
+        HashMap<Integer, List<TeacherSummary>> byDepartment = new HashMap<Integer, List<TeacherSummary>>();
+
+        try (Connection conn = PowerSchool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(QueryUtils.GET_ALL_TEACHERS_SQL)) {
+
+            HashMap<Integer, ArrayList<TeacherSummary>> loaded = new HashMap<Integer, ArrayList<TeacherSummary>>();
+            while (rs.next()) {
+                TeacherSummary teacher = new TeacherSummary(rs);
+                loaded.computeIfAbsent(teacher.getDepartmentId(), k -> new ArrayList<TeacherSummary>()).add(teacher);
+            }
+
+            for (Integer departmentId : loaded.keySet()) {
+                byDepartment.put(departmentId, Collections.unmodifiableList(loaded.get(departmentId)));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        snapshot = new Snapshot(byDepartment);
+    }
+
+    /**
+     * Reloads one department, keeping every other department's cached list.
+     *
+     * @param departmentId the department
+     */
+
+    public static synchronized void refresh(int departmentId) {
+        if (snapshot == null) {
+            refresh();
+            return;
+        }
+
+        ArrayList<TeacherSummary> teachers = new ArrayList<TeacherSummary>();
+
+        try (Connection conn = PowerSchool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_TEACHERS_BY_DEPARTMENT_SQL)) {
+
+            stmt.setInt(1, departmentId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    teachers.add(new TeacherSummary(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        HashMap<Integer, List<TeacherSummary>> byDepartment = new HashMap<Integer, List<TeacherSummary>>(snapshot.byDepartment);
+        byDepartment.put(departmentId, Collections.unmodifiableList(teachers));
+
+        snapshot = new Snapshot(byDepartment);
+    }
+
+    /*
+     * Returns the current snapshot, loading the first one (and starting to listen
+     * for faculty changes) if needed, and reloading whatever events marked stale.
+     * Flags are cleared before reloading, so a change that lands mid-load is
+     * picked up by the next reader.
+     */
+
+    private static Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+
+        if (current == null || stale || !staleDepartments.isEmpty()) {
+            synchronized (FacultyCache.class) {
+                if (!subscribed) {
+                    subscribed = true;
+                    DataEvents.subscribe("faculty", event -> {
+                        if (event.getType() == DataEvent.Type.TEACHER_ADDED) {
+                            staleDepartments.add((int) event.getValue());
+                        } else if (event.getType() == DataEvent.Type.RESET) {
+                            stale = true;
+                        }
+                    });
+                }
+
+                if (snapshot == null || stale) {
+                    stale = false;
+                    staleDepartments.clear();
+                    refresh();
+                } else {
+                    for (Iterator<Integer> it = staleDepartments.iterator(); it.hasNext(); ) {
+                        int departmentId = it.next();
+                        it.remove();
+                        refresh(departmentId);
+                    }
+                }
+                current = snapshot;
+            }
+        }
+
+        return current != null ? current : new Snapshot(new HashMap<Integer, List<TeacherSummary>>());
+    }
+}
@@ -0,0 +1,120 @@
+package com.apcsa.data;
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces GPA recomputes.
+ *
+ * Entering a grade only marks the student's GPA dirty. Dirty GPAs are recomputed
+ * from course_grades and written together in one write, after DEBOUNCE
+ * milliseconds pass with no new marks. A student is never left dirty longer than
+ * MAX_DELAY, even during a long run of grade entry. Thirty grades entered in a
+ * row therefore cost one GPA write instead of thirty.
+ *
+ * Anything that shows or exports GPAs calls flush() first. flush() writes every
+ * dirty GPA and waits for the write to commit. It also waits for a flush that is
+ * already running. Sessions flush when they end.
+ */
+
+public class GpaUpdates {
+
+    public final static long DEBOUNCE = 2000;          // milliseconds
+    public final static long MAX_DELAY = 10000;        // milliseconds
+
+    private final static Object FLUSH = new Object();
+
+    private static Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+    private static ScheduledExecutorService timer;
+    private static ScheduledFuture<?> scheduled;        // guarded by the class lock
+    private static long dirtySince;                     // nanoTime of the oldest unflushed mark
+
+    /**
+     * Marks a student's GPA for recomputing and (re)starts the debounce timer.
+     *
+     * @param studentId the student
+     */
+
+    public static synchronized void markDirty(int studentId) {
+        dirty.add(studentId);
+
+        long now = System.nanoTime();
+        if (scheduled == null) {
+            dirtySince = now;
+        } else {
+            scheduled.cancel(false);
+        }
+
+        long waited = TimeUnit.NANOSECONDS.toMillis(now - dirtySince);
+        long delay = Math.max(0, Math.min(DEBOUNCE, MAX_DELAY - waited));
+
+        scheduled = getTimer().schedule(GpaUpdates::flush, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param studentId the student
+     * @return true if the student's stored GPA may be out of date
+     */
+
+    public static boolean isDirty(int studentId) {
+        return dirty.contains(studentId);
+    }
+
+    /**
+     * Recomputes and writes every dirty GPA, and waits until they're committed.
+     *
+     * @return the number of students recomputed, or -1 if the write failed (they stay dirty)
+     */
+
+    public static int flush() {
+        synchronized (FLUSH) {
+            ArrayList<Integer> students;
+
+            synchronized (GpaUpdates.class) {
+                if (scheduled != null) {
+                    scheduled.cancel(false);
+                    scheduled = null;
+                }
+
+                students = new ArrayList<Integer>(dirty);
+                dirty.removeAll(students);
+            }
+
+            if (students.isEmpty()) {
+                return 0;
+            }
+
+            int result = WriteQueue.execute(conn -> {
+                for (int studentId : students) {
+                    PowerSchool.updateGpas(conn, QueryUtils.GET_STUDENT_GPA_ROWS, studentId);
+                }
+
+                return students.size();
+            });
+
+            if (result < 0) {
+                dirty.addAll(students);     // retried by the next mark or flush
+            }
+
+            return result;
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "gpa-updates");
+                thread.setDaemon(true);
+
+                return thread;
+            });
+        }
+
+        return timer;
+    }
+}
@@ -0,0 +1,514 @@
+package com.apcsa.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import com.apcsa.controller.Utils;
+import com.apcsa.model.GradingPolicy;
+
+/**
+ * Recomputes every course grade and every GPA in the district from the stored term
+ * grades. Run it after changing config/grading.properties; each run rereads the
+ * grading policies first.
+ *
+ * Every student and course grade is read in one query into primitive arrays.
+ * New grades and GPAs are then computed in parallel on the common fork-join pool,
+ * with each task taking a range of students. Only values that actually changed are
+ * written. Writes go through the shared writer, one batched transaction per
+ * BATCH_SIZE students. At most two transactions are in flight at once.
+ *
+ * Grades can change while the job runs, so each transaction first rereads its
+ * students. Students whose grades or GPA no longer match what was read up front
+ * are recomputed from the reread values before anything is written.
+ *
+ * After each transaction commits, the last student_id it covered is saved to a
+ * checkpoint file. An interrupted run can be resumed from there, and the
+ * checkpoint is deleted when a run finishes. Recomputing a student twice gives the
+ * same answer, so a resumed run only needs to skip the work that is already
+ * saved.
+ */
+
+public class GradeRecompute {
+
+    private final static File CHECKPOINT = new File("data/recompute.checkpoint");
+    private final static int BATCH_SIZE = 500;          // students per transaction
+    private final static int PARTITION = 256;           // students per fork-join leaf
+    private final static int MAX_IN_FLIGHT = 2;
+    private final static int TERMS = GradingPolicy.TERMS;   // mp1, mp2, midterm_exam, mp3, mp4, final_exam
+    private final static double TOLERANCE = 0.005;      // grades and GPAs are kept to two places
+
+    /**
+     * Receives progress updates as batches are committed.
+     */
+
+    @FunctionalInterface
+    public interface Progress {
+        void report(int studentsDone, int studentsTotal);
+    }
+
+    /**
+     * The outcome of a recompute.
+     */
+
+    public static class Result {
+        private int resumedAfter;
+        private int studentsProcessed;
+        private int gradesChanged;
+        private int gpasChanged;
+        private long elapsed;
+        private boolean aborted;
+
+        /**
+         * @return the checkpointed student_id this run started after, or 0
+         */
+
+        public int getResumedAfter() {
+            return resumedAfter;
+        }
+
+        public int getStudentsProcessed() {
+            return studentsProcessed;
+        }
+
+        public int getGradesChanged() {
+            return gradesChanged;
+        }
+
+        public int getGpasChanged() {
+            return gpasChanged;
+        }
+
+        public long getElapsed() {
+            return elapsed;
+        }
+
+        public boolean isAborted() {
+            return aborted;
+        }
+
+        @Override
+        public String toString() {
+            return studentsProcessed + " students recomputed" + (resumedAfter > 0 ? " (resumed after student " + resumedAfter + ")" : "")
+                + ", " + gradesChanged + " course grades and " + gpasChanged + " GPAs changed in " + elapsed + " ms"
+                + (aborted ? " (stopped early; run again to resume)" : "") + ".";
+        }
+    }
+
+    /*
+     * Everything the job reads, one row per course grade. A student without any
+     * course grades still gets one row, with a course_id of 0.
+     */
+
+    private static class Rows {
+        private int students;
+        private int[] studentIds;
+        private double[] oldGpas;
+        private double[] newGpas;
+        private int[] first;                // students + 1 entries
+
+        private int[] courseIds;
+        private double[] terms;             // TERMS entries per row
+        private double[] oldGrades;
+        private double[] newGrades;
+        private double[] creditHours;
+
+        private Rows(int students, int rows) {
+            this.studentIds = new int[students];
+            this.oldGpas = new double[students];
+            this.newGpas = new double[students];
+            this.first = new int[students + 1];
+
+            this.courseIds = new int[rows];
+            this.terms = new double[rows * TERMS];
+            this.oldGrades = new double[rows];
+            this.newGrades = new double[rows];
+            this.creditHours = new double[rows];
+        }
+    }
+
+    /**
+     * @return whether an earlier run was interrupted and can be resumed
+     */
+
+    public static boolean hasCheckpoint() {
+        return CHECKPOINT.exists();
+    }
+
+    /**
+     * Recomputes every course grade and GPA.
+     *
+     * @param resume whether to pick up after the last checkpoint instead of starting over
+     * @param progress receives progress updates; may be null
+     * @return the outcome
+     * @throws SQLException if the grades can't be read
+     */
+
+    public static synchronized Result run(boolean resume, Progress progress) throws SQLException {
+        long start = System.currentTimeMillis();
+        Result result = new Result();
+
+        if (!resume) {
+            CHECKPOINT.delete();
+        }
+        result.resumedAfter = readCheckpoint();
+
+        GradingPolicies.reload();
+
+        Rows rows = load(result.resumedAfter);
+        ForkJoinPool.commonPool().invoke(new ComputeTask(rows, 0, rows.students));
+
+        ArrayDeque<CompletableFuture<Integer>> inFlight = new ArrayDeque<CompletableFuture<Integer>>();
+        ArrayDeque<Integer> lastStudents = new ArrayDeque<Integer>();
+
+        for (int from = 0; from < rows.students && !result.aborted; from += BATCH_SIZE) {
+            int to = Math.min(from + BATCH_SIZE, rows.students);
+
+            while (inFlight.size() >= MAX_IN_FLIGHT && !result.aborted) {
+                await(inFlight.poll(), lastStudents.poll(), rows, result, progress);
+            }
+
+            int batchFrom = from;
+            inFlight.add(WriteQueue.submit(conn -> write(conn, rows, batchFrom, to, result)));
+            lastStudents.add(to);
+        }
+
+        while (!inFlight.isEmpty() && !result.aborted) {
+            await(inFlight.poll(), lastStudents.poll(), rows, result, progress);
+        }
+
+        if (!result.aborted) {
+            CHECKPOINT.delete();
+        }
+        result.elapsed = System.currentTimeMillis() - start;
+
+        return result;
+    }
+
+    /*
+     * Reads every student after the checkpoint, with their course grades and credit
+     * hours, in one consistent pass.
+     */
+
+    private static Rows load(int after) throws SQLException {
+        try (Connection conn = PowerSchool.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                return read(conn, after, Integer.MAX_VALUE);
+            } finally {
+                conn.rollback();
+            }
+        }
+    }
+
+    /*
+     * Reads the students with IDs greater than after and at most last.
+     */
+
+    private static Rows read(Connection conn, int after, int last) throws SQLException {
+        Rows rows;
+
+        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_RECOMPUTE_COUNTS)) {
+            stmt.setInt(1, after);
+            stmt.setInt(2, last);
+            stmt.setInt(3, after);
+            stmt.setInt(4, last);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+
+                // a student without course grades still takes a row
+                int students = rs.getInt("students");
+                rows = new Rows(students, students + rs.getInt("enrollments"));
+            }
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_RECOMPUTE_ROWS)) {
+            stmt.setInt(1, after);
+            stmt.setInt(2, last);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                read(rs, rows);
+            }
+        }
+
+        return rows;
+    }
+
+    private static void read(ResultSet rs, Rows rows) throws SQLException {
+        int s = -1;
+        int r = 0;
+
+        while (rs.next() && r < rows.courseIds.length) {
+            int studentId = rs.getInt("student_id");
+
+            if (s < 0 || rows.studentIds[s] != studentId) {
+                if (s + 1 == rows.studentIds.length) {
+                    break;      // a student was added after the count
+                }
+
+                s++;
+                rows.studentIds[s] = studentId;
+                rows.oldGpas[s] = rs.getDouble("gpa");
+                rows.first[s] = r;
+            }
+
+            rows.courseIds[r] = rs.getInt("course_id");
+            rows.terms[r * TERMS] = getDouble(rs, "mp1");
+            rows.terms[r * TERMS + 1] = getDouble(rs, "mp2");
+            rows.terms[r * TERMS + 2] = getDouble(rs, "midterm_exam");
+            rows.terms[r * TERMS + 3] = getDouble(rs, "mp3");
+            rows.terms[r * TERMS + 4] = getDouble(rs, "mp4");
+            rows.terms[r * TERMS + 5] = getDouble(rs, "final_exam");
+            rows.oldGrades[r] = getDouble(rs, "grade");
+            rows.creditHours[r] = rs.getDouble("credit_hours");
+            r++;
+        }
+
+        rows.students = s + 1;
+        rows.first[rows.students] = r;
+    }
+
+    private static double getDouble(ResultSet rs, String column) throws SQLException {
+        double value = rs.getDouble(column);
+
+        return rs.wasNull() ? Double.NaN : value;
+    }
+
+    /*
+     * Computes new course grades and GPAs for a range of students.
+     */
+
+    private static class ComputeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Rows rows;
+        private final int from;
+        private final int to;
+
+        private ComputeTask(Rows rows, int from, int to) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > PARTITION) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ComputeTask(rows, from, middle), new ComputeTask(rows, middle, to));
+                return;
+            }
+
+            for (int s = from; s < to; s++) {
+                computeStudent(rows, s);
+            }
+        }
+    }
+
+    /*
+     * Computes one student's new course grades and GPA.
+     */
+
+    private static void computeStudent(Rows rows, int s) {
+        int first = rows.first[s];
+        int end = rows.first[s + 1];
+
+        for (int r = first; r < end; r++) {
+            if (rows.courseIds[r] == 0) {
+                rows.newGrades[r] = Double.NaN;     // no course grades at all
+            } else {
+                rows.newGrades[r] = GradingPolicies.forCourse(rows.courseIds[r]).evaluate(rows.terms, r * TERMS);
+            }
+        }
+
+        rows.newGpas[s] = Utils.getGpa(rows.newGrades, rows.creditHours, first, end);
+    }
+
+    /*
+     * Rereads a range of students on the writer connection and carries over the
+     * results computed up front for every student whose values haven't changed
+     * since. The rest are recomputed from what was just read.
+     */
+
+    private static Rows reread(Connection conn, Rows rows, int from, int to) throws SQLException {
+        Rows current = read(conn, rows.studentIds[from] - 1, rows.studentIds[to - 1]);
+        int s = from;
+
+        for (int c = 0; c < current.students; c++) {
+            while (s < to && rows.studentIds[s] < current.studentIds[c]) {
+                s++;        // deleted since the snapshot
+            }
+
+            if (s < to && rows.studentIds[s] == current.studentIds[c] && unchanged(rows, s, current, c)) {
+                current.newGpas[c] = rows.newGpas[s];
+                System.arraycopy(rows.newGrades, rows.first[s], current.newGrades, current.first[c], current.first[c + 1] - current.first[c]);
+            } else {
+                computeStudent(current, c);
+            }
+        }
+
+        return current;
+    }
+
+    /*
+     * Compares everything a student's results are computed from.
+     */
+
+    private static boolean unchanged(Rows a, int s, Rows b, int c) {
+        int count = a.first[s + 1] - a.first[s];
+
+        if (count != b.first[c + 1] - b.first[c] || Double.compare(a.oldGpas[s], b.oldGpas[c]) != 0) {
+            return false;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int r = a.first[s] + i;
+            int q = b.first[c] + i;
+
+            if (a.courseIds[r] != b.courseIds[q] || Double.compare(a.oldGrades[r], b.oldGrades[q]) != 0
+                    || Double.compare(a.creditHours[r], b.creditHours[q]) != 0) {
+                return false;
+            }
+            for (int t = 0; t < TERMS; t++) {
+                if (Double.compare(a.terms[r * TERMS + t], b.terms[q * TERMS + t]) != 0) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /*
+     * Writes the changed grades and GPAs for a range of students in one transaction.
+     */
+
+    private static int write(Connection conn, Rows snapshot, int from, int to, Result result) throws SQLException {
+        Rows rows = reread(conn, snapshot, from, to);
+        int grades = 0;
+        int gpas = 0;
+
+        try (PreparedStatement grade = conn.prepareStatement(QueryUtils.UPDATE_COURSE_GRADE);
+             PreparedStatement transcript = conn.prepareStatement(QueryUtils.REFRESH_TRANSCRIPT);
+             PreparedStatement gpa = conn.prepareStatement(QueryUtils.UPDATE_GPA)) {
+
+            for (int s = 0; s < rows.students; s++) {
+                int studentId = rows.studentIds[s];
+
+                for (int r = rows.first[s]; r < rows.first[s + 1]; r++) {
+                    if (rows.courseIds[r] == 0 || !changed(rows.oldGrades[r], rows.newGrades[r])) {
+                        continue;
+                    }
+
+                    if (Double.isNaN(rows.newGrades[r])) {
+                        grade.setNull(1, Types.REAL);
+                    } else {
+                        grade.setDouble(1, rows.newGrades[r]);
+                    }
+                    grade.setInt(2, rows.courseIds[r]);
+                    grade.setInt(3, studentId);
+                    grade.addBatch();
+
+                    transcript.setInt(1, rows.courseIds[r]);
+                    transcript.setInt(2, studentId);
+                    transcript.addBatch();
+
+                    WriteQueue.publishOnCommit(new DataEvent(DataEvent.Type.COURSE_GRADE_UPDATED, rows.courseIds[r], studentId, DataEvent.ALL,
+                        "grade", rows.oldGrades[r], rows.newGrades[r]));
+                    grades++;
+                }
+
+                if (changed(rows.oldGpas[s], rows.newGpas[s])) {
+                    gpa.setDouble(1, rows.newGpas[s]);
+                    gpa.setInt(2, studentId);
+                    gpa.addBatch();
+
+                    WriteQueue.publishOnCommit(new DataEvent(DataEvent.Type.GPA_UPDATED, DataEvent.ALL, studentId, DataEvent.ALL,
+                        "gpa", rows.oldGpas[s], rows.newGpas[s]));
+                    gpas++;
+                }
+            }
+
+            grade.executeBatch();
+            transcript.executeBatch();
+            gpa.executeBatch();
+        }
+
+        // the counts are only read by the caller after this batch's future completes
+
+        result.gradesChanged += grades;
+        result.gpasChanged += gpas;
+
+        return to - from;
+    }
+
+    private static boolean changed(double oldValue, double newValue) {
+        if (Double.isNaN(oldValue) || Double.isNaN(newValue)) {
+            return Double.isNaN(oldValue) != Double.isNaN(newValue);
+        }
+
+        return Math.abs(oldValue - newValue) >= TOLERANCE;
+    }
+
+    /*
+     * Waits for a batch to commit, then moves the checkpoint past it.
+     */
+
+    private static void await(CompletableFuture<Integer> batch, int to, Rows rows, Result result, Progress progress) {
+        try {
+            int students = batch.get();
+
+            if (students < 0) {
+                result.aborted = true;
+                return;
+            }
+
+            result.studentsProcessed += students;
+            writeCheckpoint(rows.studentIds[to - 1]);
+
+            if (progress != null) {
+                progress.report(result.studentsProcessed, rows.students);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.aborted = true;
+        } catch (ExecutionException | IOException e) {
+            e.printStackTrace();
+            result.aborted = true;
+        }
+    }
+
+    private static int readCheckpoint() {
+        try {
+            if (CHECKPOINT.exists()) {
+                return Integer.parseInt(new String(Files.readAllBytes(CHECKPOINT.toPath()), StandardCharsets.UTF_8).trim());
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Warning: Ignoring unreadable recompute checkpoint.");
+        }
+
+        return 0;
+    }
+
+    private static void writeCheckpoint(int studentId) throws IOException {
+        File staged = new File(CHECKPOINT.getPath() + ".tmp");
+
+        CHECKPOINT.getParentFile().mkdirs();
+        Files.write(staged.toPath(), String.valueOf(studentId).getBytes(StandardCharsets.UTF_8));
+        Files.move(staged.toPath(), CHECKPOINT.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+}
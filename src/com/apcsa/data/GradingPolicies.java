@@ -0,0 +1,157 @@
+package com.apcsa.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import com.apcsa.model.GradingPolicy;
+
+/**
+ * Finds the grading policy that applies to each course.
+ *
+ * Policies are configured in config/grading.properties. Every setting is looked up
+ * three ways, and the most specific match wins:
+ *
+ *   course.CS1000.mp_weight = 0.7     one course, by course number
+ *   department.4.drop_lowest = 1      every course in a department, by department_id
+ *   default.rounding = HALF_EVEN      every course
+ *
+ * A course's policy is compiled the first time it's needed and cached by course_id.
+ * The cache is cleared when a course is added, when the database is reset, and
+ * when reload() is called. A missing file means every course uses the default
+ * policy. So does a malformed policy, after an error is printed.
+ */
+
+public class GradingPolicies {
+
+    private final static File CONFIGURATION = new File("config/grading.properties");
+    private final static String[] SETTINGS = { "terms", "mp_weight", "exam_weight", "drop_lowest", "rounding", "places", "categories" };
+
+    private static volatile Properties properties;
+    private static volatile HashMap<Integer, String[]> courses;     // course_id -> { course_no, department_id }
+    private static ConcurrentHashMap<Integer, GradingPolicy> policies = new ConcurrentHashMap<Integer, GradingPolicy>();
+    private static boolean subscribed;
+
+    /**
+     * Looks up the policy for a course.
+     *
+     * @param courseId the course
+     * @return the course's policy; the default policy if the course is unknown
+     */
+
+    public static GradingPolicy forCourse(int courseId) {
+        GradingPolicy policy = policies.get(courseId);
+
+        return policy != null ? policy : compile(courseId);
+    }
+
+    /**
+     * Rereads config/grading.properties and forgets every compiled policy.
+     */
+
+    public static synchronized void reload() {
+        properties = null;
+        courses = null;
+        policies.clear();
+    }
+
+    /*
+     * Resolves, compiles, and caches one course's settings.
+     */
+
+    private static synchronized GradingPolicy compile(int courseId) {
+        if (!subscribed) {
+            subscribed = true;
+            DataEvents.subscribe("grading-policies", event -> {
+                if (event.getType() == DataEvent.Type.COURSE_ADDED || event.getType() == DataEvent.Type.RESET) {
+                    reload();
+                }
+            });
+        }
+
+        GradingPolicy policy = policies.get(courseId);
+        if (policy != null) {
+            return policy;
+        }
+
+        Properties config = getProperties();
+        String[] course = getCourses().get(courseId);
+        String[] scopes = course != null
+            ? new String[] { "course." + course[0] + ".", "department." + course[1] + ".", "default." }
+            : new String[] { "default." };
+
+        HashMap<String, String> settings = new HashMap<String, String>();
+        for (String setting : SETTINGS) {
+            for (String scope : scopes) {
+                String value = config.getProperty(scope + setting);
+
+                if (value != null) {
+                    settings.put(setting, value);
+                    break;
+                }
+            }
+        }
+
+        try {
+            policy = GradingPolicy.compile(settings);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: Invalid grading policy for course " + (course != null ? course[0] : courseId)
+                + " (" + e.getMessage() + "). Using the default policy.");
+
+            policy = GradingPolicy.DEFAULT;
+        }
+        policies.put(courseId, policy);
+
+        return policy;
+    }
+
+    private static Properties getProperties() {
+        Properties config = properties;
+
+        if (config == null) {
+            config = new Properties();
+
+            if (CONFIGURATION.exists()) {
+                try (InputStreamReader reader = new InputStreamReader(new FileInputStream(CONFIGURATION), StandardCharsets.UTF_8)) {
+                    config.load(reader);
+                } catch (IOException e) {
+                    System.err.println("Error: Unable to read grading policies. Using the default policy.");
+                }
+            }
+            properties = config;
+        }
+
+        return config;
+    }
+
+    private static HashMap<Integer, String[]> getCourses() {
+        HashMap<Integer, String[]> current = courses;
+
+        if (current == null) {
+            current = new HashMap<Integer, String[]>();
+
+            try (Connection conn = PowerSchool.getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(QueryUtils.GET_ROSTER_COURSES)) {
+
+                while (rs.next()) {
+                    current.put(rs.getInt("course_id"), new String[] { rs.getString("course_no"), rs.getString("department_id") });
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return current;     // try again next time
+            }
+            courses = current;
+        }
+
+        return current;
+    }
+}
@@ -0,0 +1,350 @@
+package com.apcsa.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * An in-memory prefix index over student and teacher names. Every first name,
+ * last name, and username is stored as a lowercase key in one sorted array, so
+ * a prefix lookup is a binary search followed by a short forward scan. The keys
+ * and the people they belong to are published together as one immutable snapshot,
+ * which every search reads once, so a search never sees keys and people from
+ * different versions of the index.
+ */
+
+public class NameIndex {
+
+    public final static int MAX_RESULTS = 100;
+
+    private static volatile Entries entries = new Entries(new String[0], new Match[0]);
+
+    /**
+     * A single person found by a name search.
+     */
+
+    public static class Match {
+
+        private String accountType;
+        private int id;
+        private String firstName;
+        private String lastName;
+        private String username;
+
+        public Match(String accountType, int id, String firstName, String lastName, String username) {
+            this.accountType = accountType;
+            this.id = id;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.username = username;
+        }
+
+        public String getAccountType() {
+            return accountType;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        /**
+         * Retrieves the name formatted as LAST, FIRST.
+         *
+         * @return the formatted name
+         */
+
+        public String getName() {
+            return lastName + ", " + firstName;
+        }
+    }
+
+    /*
+     * Sorted keys with the person each one belongs to, at the same position.
+     */
+
+    private static class Entries {
+        private final String[] keys;
+        private final Match[] matches;
+
+        private Entries(String[] keys, Match[] matches) {
+            this.keys = keys;
+            this.matches = matches;
+        }
+    }
+
+    /**
+     * Replaces the contents of the index.
+     *
+     * @param people every student and teacher to index
+     */
+
+    public static synchronized void rebuild(List<Match> people) {
+        entries = sorted(people);
+    }
+
+    /**
+     * Adds a newly inserted student or teacher to the index.
+     *
+     * @param person the person to add
+     */
+
+    public static void add(Match person) {
+        addAll(Collections.singletonList(person));
+    }
+
+    /**
+     * Adds newly inserted students and teachers to the index. The new keys are
+     * sorted on their own and then merged with the existing ones in a single pass,
+     * so adding a batch costs one copy of the index rather than one per person.
+     *
+     * @param people the people to add
+     */
+
+    public static synchronized void addAll(List<Match> people) {
+        if (people.isEmpty()) {
+            return;
+        }
+
+        Entries added = sorted(people);
+        String[] addedKeys = added.keys;
+        Match[] addedMatches = added.matches;
+        Entries current = entries;
+        String[] oldKeys = current.keys;
+        Match[] oldMatches = current.matches;
+
+        String[] newKeys = new String[oldKeys.length + addedKeys.length];
+        Match[] newMatches = new Match[newKeys.length];
+        int i = 0;
+        int j = 0;
+
+        for (int n = 0; n < newKeys.length; n++) {
+            if (j == addedKeys.length || (i < oldKeys.length && oldKeys[i].compareTo(addedKeys[j]) <= 0)) {
+                newKeys[n] = oldKeys[i];
+                newMatches[n] = oldMatches[i++];
+            } else {
+                newKeys[n] = addedKeys[j];
+                newMatches[n] = addedMatches[j++];
+            }
+        }
+
+        entries = new Entries(newKeys, newMatches);
+    }
+
+    /**
+     * Finds everyone with a first name, last name, or username starting with the prefix.
+     *
+     * @param prefix the search text
+     * @return at most MAX_RESULTS matching people, without duplicates
+     */
+
+    public static ArrayList<Match> searchPrefix(String prefix) {
+        return new ArrayList<Match>(searchPrefix(entries, prefix.toLowerCase()));
+    }
+
+    /**
+     * Finds everyone with a name or username within a small edit distance of the
+     * search text. Exact prefix matches are listed first.
+     *
+     * The sorted keys are walked as if they were a trie: keys that share a prefix
+     * with the previous key reuse its edit distance rows, and once a prefix is
+     * already too far from the search text, every key starting with it is skipped
+     * with a binary search.
+     *
+     * @param text the search text
+     * @return at most MAX_RESULTS matching people, without duplicates
+     */
+
+    public static ArrayList<Match> searchFuzzy(String text) {
+        Entries current = entries;
+        String[] k = current.keys;
+        Match[] m = current.matches;
+        String query = text.toLowerCase();
+        int length = query.length();
+        int limit = length <= 4 ? 1 : 2;
+        LinkedHashSet<Match> results = searchPrefix(current, query);
+
+        // rows[d] is the edit distance row after the first d characters of a key
+
+        int[][] rows = new int[length + 1][length + 1];
+        for (int j = 0; j <= length; j++) {
+            rows[0][j] = j;
+        }
+
+        String previous = "";
+        int valid = 0;      // rows 0..valid hold previous's first characters
+        int i = 0;
+
+        while (i < k.length && results.size() < MAX_RESULTS) {
+            String key = k[i];
+            int depth = Math.min(key.length(), length);
+            int d = commonPrefix(previous, key, Math.min(valid, depth));
+            boolean pruned = false;
+
+            while (d < depth && !pruned) {
+                d++;
+                pruned = step(rows[d - 1], rows[d], query, key.charAt(d - 1)) > limit;
+            }
+
+            previous = key;
+
+            if (pruned) {
+                valid = d - 1;
+                i = prefixEnd(k, i, key.substring(0, d));
+                continue;
+            }
+
+            valid = depth;
+            if (rows[depth][length] <= limit) {
+                results.add(m[i]);
+            }
+            i++;
+        }
+
+        return new ArrayList<Match>(results);
+    }
+
+    /*
+     * Finds everyone in one snapshot with a key starting with a lowercase prefix.
+     */
+
+    private static LinkedHashSet<Match> searchPrefix(Entries current, String query) {
+        String[] k = current.keys;
+        Match[] m = current.matches;
+        LinkedHashSet<Match> results = new LinkedHashSet<Match>();
+
+        for (int i = lowerBound(k, query); i < k.length && k[i].startsWith(query) && results.size() < MAX_RESULTS; i++) {
+            results.add(m[i]);
+        }
+
+        return results;
+    }
+
+    /*
+     * Builds the sorted keys of a group of people.
+     */
+
+    private static Entries sorted(List<Match> people) {
+        ArrayList<String> newKeys = new ArrayList<String>();
+        ArrayList<Match> newMatches = new ArrayList<Match>();
+
+        for (Match person : people) {
+            for (String key : keysFor(person)) {
+                newKeys.add(key);
+                newMatches.add(person);
+            }
+        }
+
+        // sort keys and their matches together by key
+
+        Integer[] order = new Integer[newKeys.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> newKeys.get(a).compareTo(newKeys.get(b)));
+
+        String[] sortedKeys = new String[order.length];
+        Match[] sortedMatches = new Match[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedKeys[i] = newKeys.get(order[i]);
+            sortedMatches[i] = newMatches.get(order[i]);
+        }
+
+        return new Entries(sortedKeys, sortedMatches);
+    }
+
+    /*
+     * Returns the lowercase keys under which a person is indexed.
+     */
+
+    private static String[] keysFor(Match person) {
+        if (person.username == null) {
+            return new String[] { person.firstName.toLowerCase(), person.lastName.toLowerCase() };
+        }
+
+        return new String[] {
+            person.firstName.toLowerCase(), person.lastName.toLowerCase(), person.username.toLowerCase()
+        };
+    }
+
+    /*
+     * Returns the index of the first key that is not less than the search key.
+     */
+
+    private static int lowerBound(String[] k, String key) {
+        int low = 0;
+        int high = k.length;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (k[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /*
+     * Returns the index just past the run of keys, starting at from, that begin
+     * with a prefix.
+     */
+
+    private static int prefixEnd(String[] k, int from, String prefix) {
+        int low = from;
+        int high = k.length;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (k[mid].startsWith(prefix)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /*
+     * Returns how many leading characters two strings share, up to a limit.
+     */
+
+    private static int commonPrefix(String a, String b, int limit) {
+        int n = 0;
+
+        while (n < limit && n < a.length() && a.charAt(n) == b.charAt(n)) {
+            n++;
+        }
+
+        return n;
+    }
+
+    /*
+     * Computes the next Levenshtein row after one more candidate character.
+     *
+     * @return the smallest value in the new row
+     */
+
+    private static int step(int[] previous, int[] current, String query, char c) {
+        current[0] = previous[0] + 1;
+        int rowMin = current[0];
+
+        for (int j = 1; j < current.length; j++) {
+            int cost = query.charAt(j - 1) == c ? 0 : 1;
+            current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            rowMin = Math.min(rowMin, current[j]);
+        }
+
+        return rowMin;
+    }
+}
@@ -5,6 +5,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -12,18 +14,50 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 import com.apcsa.controller.Utils;
 import com.apcsa.model.Administrator;
+import com.apcsa.model.Assignment;
+import com.apcsa.model.GradingPolicy;
+import com.apcsa.model.RosterGrade;
 import com.apcsa.model.Student;
+import com.apcsa.model.StudentSummary;
 import com.apcsa.model.Teacher;
+import com.apcsa.model.TeacherSummary;
 import com.apcsa.model.User;
 
 public class PowerSchool {
 
-    private final static String PROTOCOL = "jdbc:sqlite:";
-    private final static String DATABASE_URL = "data/powerschool.db";
+    final static String PROTOCOL = "jdbc:sqlite:";
+    final static String DATABASE_URL = "data/powerschool.db";
+    private final static int CHECKPOINT_INTERVAL = 60;
+    private final static int BACKUP_INTERVAL = 30;
+
+    private static volatile DatabaseProfile profile = DatabaseProfile.forName(System.getProperty("powerschool.profile"));
+    private static volatile String actor = "system";
+
+    private final static Object CONNECTIONS = new Object();
+    private static int openConnections;             // guarded by CONNECTIONS
+    private static Thread quiescer;                 // guarded by CONNECTIONS; while set, only it may connect
+
+    private final static String[] TERM_COLUMNS = { "mp1", "mp2", "midterm_exam", "mp3", "mp4", "final_exam" };
+    private final static String[] MARKING_PERIOD_UPDATES = {       // by assignments.marking_period - 1
+        QueryUtils.UPDATE_COURSE_MP1, QueryUtils.UPDATE_COURSE_MP2, QueryUtils.UPDATE_COURSE_MP3,
+        QueryUtils.UPDATE_COURSE_MP4, QueryUtils.UPDATE_COURSE_MIDTERM, QueryUtils.UPDATE_COURSE_FINAL
+    };
+    private final static String[] MIGRATIONS = {                  // in order; each is safe to repeat
+        QueryUtils.MIGRATE_TRANSCRIPTS, QueryUtils.SEED_TRANSCRIPTS, QueryUtils.MIGRATE_ASSIGNMENT_GRADES_INDEX,
+        QueryUtils.MIGRATE_COURSE_GRADES_INDEX, QueryUtils.RECOUNT_ENROLLMENT, QueryUtils.MIGRATE_CATEGORY_GRADES,
+        QueryUtils.SEED_CATEGORY_GRADES
+    };
     
     /**
      * Initializes the database if needed (or if requested).
@@ -38,7 +72,7 @@ public class PowerSchool {
         } else {
             boolean required = false;
 
-            // check if all tables have been created and loaded in database
+            // check if the core tables have been created and loaded in database
 
             try (Connection conn = getConnection();
                  Statement stmt = conn.createStatement();
@@ -53,12 +87,97 @@ public class PowerSchool {
                 e.printStackTrace();
             }
 
-            // build database if needed
+            // build database if needed, otherwise bring an existing one up to date
 
             if (required) {
                 reset();
+            } else {
+                migrate();
+            }
+        }
+
+        try (Connection conn = getConnection()) {
+            DatabaseProfile.enableWal(conn);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        WalCheckpointer.start(CHECKPOINT_INTERVAL);
+        Backups.start(BACKUP_INTERVAL);
+        AuditLog.start();
+        buildNameIndex();
+    }
+
+    /*
+     * Adds the tables, columns, and indexes introduced since a database was
+     * created, in one write, without touching existing data.
+     */
+
+    private static void migrate() {
+        int result = WriteQueue.execute(conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                if (!hasColumn(conn, "assignments", "category")) {
+                    stmt.executeUpdate(QueryUtils.MIGRATE_ASSIGNMENT_CATEGORY);
+                }
+
+                // category_grades is derived data, so an older layout is dropped and reseeded
+
+                if (hasColumn(conn, "category_grades", "points_earned")) {
+                    stmt.executeUpdate(QueryUtils.DROP_CATEGORY_GRADES);
+                }
+
+                for (String migration : MIGRATIONS) {
+                    stmt.executeUpdate(migration);
+                }
+            }
+
+            return MIGRATIONS.length;
+        });
+
+        if (result < 0) {
+            System.err.println("Error: Unable to migrate the database.");
+        }
+    }
+
+    private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.HAS_COLUMN)) {
+            stmt.setString(1, table);
+            stmt.setString(2, column);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getInt("found") > 0;
+            }
+        }
+    }
+
+    /**
+     * Loads every student and teacher name into the in-memory name search index.
+     */
+
+    public static void buildNameIndex() {
+        ArrayList<NameIndex.Match> people = new ArrayList<NameIndex.Match>();
+
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_STUDENT_NAMES)) {
+                while (rs.next()) {
+                    people.add(new NameIndex.Match("student", rs.getInt("student_id"),
+                        rs.getString("first_name"), rs.getString("last_name"), rs.getString("username")));
+                }
             }
+
+            try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_TEACHER_NAMES)) {
+                while (rs.next()) {
+                    people.add(new NameIndex.Match("teacher", rs.getInt("teacher_id"),
+                        rs.getString("first_name"), rs.getString("last_name"), rs.getString("username")));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
         }
+
+        NameIndex.rebuild(people);
     }
 
     /**
@@ -79,7 +198,7 @@ public class PowerSchool {
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     Timestamp ts = new Timestamp(new Date().getTime());
-                    int affected = PowerSchool.updateLastLogin(conn, username, ts);
+                    int affected = PowerSchool.updateLastLogin(username, ts);
 
                     if (affected != 1) {
                         System.err.println("Unable to update last login (affected rows: " + affected + ").");
@@ -237,94 +356,209 @@ public class PowerSchool {
     }
 
     /*
-     * Establishes a connection to the database.
+     * Establishes a connection to the database. Waits while a restore is swapping
+     * the database file.
      *
      * @return a database Connection object
      * @throws SQLException
      */
 
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(PROTOCOL + DATABASE_URL);
+        synchronized (CONNECTIONS) {
+            while (quiescer != null && quiescer != Thread.currentThread()) {
+                try {
+                    CONNECTIONS.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while the database was being restored.", e);
+                }
+            }
+            openConnections++;
+        }
+
+        try {
+            Connection conn = DriverManager.getConnection(PROTOCOL + DATABASE_URL);
+            profile.apply(conn);
+
+            return track(conn);
+        } catch (SQLException | RuntimeException e) {
+            closed();
+            throw e;
+        }
     }
 
     /*
-     * Updates the last login time for the user.
+     * Stops other threads from opening connections and waits for the open ones to
+     * close. The calling thread must not hold a connection of its own.
      *
-     * @param conn the current database connection
-     * @param username the user's username
-     * @param ts the current timestamp
-     * @return the number of affected rows
+     * @param timeout the longest to wait, in milliseconds
+     * @return true if every connection closed in time; otherwise connections are allowed again
      */
 
-    private static int updateLastLogin(Connection conn, String username, Timestamp ts) {
-        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPDATE_LAST_LOGIN_SQL)) {
+    static boolean quiesce(long timeout) {
+        long deadline = System.currentTimeMillis() + timeout;
 
-            conn.setAutoCommit(false);
-            stmt.setString(1, ts.toString());
-            stmt.setString(2, username);
+        synchronized (CONNECTIONS) {
+            quiescer = Thread.currentThread();
 
-            if (stmt.executeUpdate() == 1) {
-                conn.commit();
+            while (openConnections > 0) {
+                long remaining = deadline - System.currentTimeMillis();
 
-                return 1;
-            } else {
-                conn.rollback();
+                if (remaining <= 0) {
+                    resume();
+                    return false;
+                }
 
-                return -1;
+                try {
+                    CONNECTIONS.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    resume();
+                    return false;
+                }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-
-            return -1;
         }
+
+        return true;
     }
-    
-    public static int resetLastLogin(String username) {
-    	try (Connection conn = getConnection();
-                PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPDATE_LAST_LOGIN_SQL)){
-    	
-            conn.setAutoCommit(false);
-            stmt.setString(1,"0000-00-00 00:00:00.000");
-            stmt.setString(2, username);
 
-            if (stmt.executeUpdate() == 1) {
-                conn.commit();
+    /*
+     * Lets other threads open connections again after quiesce().
+     */
 
-                return 1;
-            } else {
-                conn.rollback();
+    static void resume() {
+        synchronized (CONNECTIONS) {
+            quiescer = null;
+            CONNECTIONS.notifyAll();
+        }
+    }
 
-                return -1;
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+    /*
+     * Wraps a connection so closing it is counted.
+     */
+
+    private static Connection track(Connection conn) {
+        AtomicBoolean closed = new AtomicBoolean();
+
+        return (Connection) Proxy.newProxyInstance(PowerSchool.class.getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                try {
+                    return method.invoke(conn, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                } finally {
+                    if (method.getName().equals("close") && closed.compareAndSet(false, true)) {
+                        closed();
+                    }
+                }
+            });
+    }
 
-            return -1;
+    private static void closed() {
+        synchronized (CONNECTIONS) {
+            openConnections--;
+            CONNECTIONS.notifyAll();
         }
     }
-    
-    
-    public static int updateAuth(Connection conn, String username, String auth) {
-        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPDATE_AUTH_SQL)) {
 
-            conn.setAutoCommit(false);
-            stmt.setString(1, auth);
-            stmt.setString(2, username);
+    /**
+     * @return the pragma profile applied to new connections
+     */
 
-            if (stmt.executeUpdate() == 1) {
-                conn.commit();
+    public static DatabaseProfile getProfile() {
+        return profile;
+    }
 
-                return 1;
-            } else {
-                conn.rollback();
+    /**
+     * Changes the pragma profile applied to connections opened from now on.
+     *
+     * @param newProfile the profile to use
+     */
+
+    public static void setProfile(DatabaseProfile newProfile) {
+        profile = newProfile;
+    }
+
+    /**
+     * @return the username credited with changes made from now on
+     */
+
+    public static String getActor() {
+        return actor;
+    }
+
+    /**
+     * Sets the username credited with changes (e.g., in the audit log).
+     *
+     * @param username the logged-in user's username, or null after logout
+     */
+
+    public static void setActor(String username) {
+        actor = username != null ? username : "system";
+    }
+
+    /*
+     * Runs a statement that should change exactly one row on the shared writer
+     * connection. Nothing is kept if any other number of rows is affected.
+     *
+     * @param sql the statement to execute
+     * @param params the statement parameters, in order
+     * @return 1 if exactly one row was affected; -1 otherwise
+     */
+
+    private static int updateOne(String sql, Object... params) {
+        return updateOneAndPublish(null, sql, params);
+    }
+
+    /*
+     * Runs a single-row statement on the writer connection and, if it is kept,
+     * publishes an event once it has been committed.
+     *
+     * @param event the event to publish, or null for none
+     * @param sql the statement to execute
+     * @param params the statement parameters, in order
+     * @return 1 if exactly one row was affected; -1 otherwise
+     */
+
+    private static int updateOneAndPublish(DataEvent event, String sql, Object... params) {
+        return WriteQueue.execute(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < params.length; i++) {
+                    stmt.setObject(i + 1, params[i]);
+                }
 
-                return -1;
+                if (stmt.executeUpdate() != 1) {
+                    return -1;
+                }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
 
-            return -1;
-        }
+            if (event != null) {
+                WriteQueue.publishOnCommit(event);
+            }
+
+            return 1;
+        });
+    }
+
+    /*
+     * Updates the last login time for the user.
+     *
+     * @param username the user's username
+     * @param ts the current timestamp
+     * @return the number of affected rows
+     */
+
+    private static int updateLastLogin(String username, Timestamp ts) {
+        return updateOne(QueryUtils.UPDATE_LAST_LOGIN_SQL, ts.toString(), username);
+    }
+    
+    public static int resetLastLogin(String username) {
+        return updateOne(QueryUtils.UPDATE_LAST_LOGIN_SQL, "0000-00-00 00:00:00.000", username);
+    }
+    
+    
+    public static int updateAuth(String username, String auth) {
+        return updateOne(QueryUtils.UPDATE_AUTH_SQL, auth, username);
     }
     
     
@@ -334,33 +568,19 @@ public class PowerSchool {
      * @return a list of teachers
      */
      
-     public static ArrayList<Teacher> getTeachers() {
-        ArrayList<Teacher> teachers = new ArrayList<Teacher>();
-        
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement()) {
-                        
-            try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_ALL_TEACHERS_SQL)) {
-                while (rs.next()) {
-                    teachers.add(new Teacher(rs));
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        
-        return teachers;
-    }
+     public static List<TeacherSummary> getTeachers() {
+         return FacultyCache.getAll();
+     }
      
-     public static ArrayList<Student> getStudents() {
-         ArrayList<Student> students = new ArrayList<Student>();
+     public static ArrayList<StudentSummary> getStudents() {
+         ArrayList<StudentSummary> students = new ArrayList<StudentSummary>();
          
          try (Connection conn = getConnection();
               Statement stmt = conn.createStatement()) {
                          
              try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_STUDENTS)) {
                  while (rs.next()) {
-                     students.add(new Student(rs));
+                     students.add(new StudentSummary(rs));
                  }
              }
          } catch (SQLException e) {
@@ -369,52 +589,58 @@ public class PowerSchool {
          
          return students;
      }
-    
-     
-     public static ArrayList<Teacher> getTeachersByDepartment(int department) {
-         ArrayList<Teacher> teachers = new ArrayList<Teacher>();
-         
-         try (Connection conn = getConnection();
-        		 PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_TEACHERS_BY_DEPARTMENT_SQL)) {
-        	 stmt.setString(1, String.valueOf(department));        
-             try (ResultSet rs = stmt.executeQuery()) {
 
-                     teachers.add(new Teacher(rs));                 
-             }
-         } catch (SQLException e) {
-             e.printStackTrace();
+     /**
+      * Looks up the names of just the students about to be shown, in one query.
+      *
+      * @param studentIds the students
+      * @return each student's name formatted as LAST, FIRST, keyed by student_id
+      */
+
+     public static HashMap<Integer, String> getStudentNames(Collection<Integer> studentIds) {
+         HashMap<Integer, String> names = new HashMap<Integer, String>();
+
+         if (studentIds.isEmpty()) {
+             return names;
          }
-         
-         return teachers;
-     }
-     
-     public static ArrayList<Student> getStudentsByGrade(int grade) {
-         ArrayList<Student> students = new ArrayList<Student>();
-         
+
          try (Connection conn = getConnection();
-        		 PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_STUDENTS_BY_GRADE)) {
-        	 stmt.setString(1, String.valueOf(grade));        
+              PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_STUDENT_NAMES_BY_ID)) {
+
+             stmt.setString(1, studentIds.toString());      // a JSON array, e.g. [3, 14, 15]
+
              try (ResultSet rs = stmt.executeQuery()) {
-            	 while(rs.next()) {
-                     students.add(new Student(rs));                 
-            	 }
+                 while (rs.next()) {
+                     names.put(rs.getInt("student_id"), rs.getString("last_name") + ", " + rs.getString("first_name"));
+                 }
              }
          } catch (SQLException e) {
              e.printStackTrace();
          }
-         
-         return students;
+
+         return names;
+     }
+    
+     /**
+      * Retrieves the faculty members in one department.
+      *
+      * @param department the department
+      * @return a list of teachers
+      */
+
+     public static List<TeacherSummary> getTeachersByDepartment(int department) {
+         return FacultyCache.getByDepartment(department);
      }
      
-     public static ArrayList<Student> getStudentsByCourse(String courseNo) {
-         ArrayList<Student> students = new ArrayList<Student>();
+     public static ArrayList<StudentSummary> getStudentsByGrade(int grade) {
+         ArrayList<StudentSummary> students = new ArrayList<StudentSummary>();
          
          try (Connection conn = getConnection();
-        		 PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_STUDENTS_BY_COURSE)) {
-        	 stmt.setString(1, courseNo);        
+        		 PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_STUDENTS_BY_GRADE)) {
+        	 stmt.setString(1, String.valueOf(grade));        
              try (ResultSet rs = stmt.executeQuery()) {
             	 while(rs.next()) {
-                     students.add(new Student(rs));                 
+                     students.add(new StudentSummary(rs));                 
             	 }
              }
          } catch (SQLException e) {
@@ -443,23 +669,6 @@ public class PowerSchool {
  		return courses;
  	}
      
-     public static ArrayList<String> getStudentsByCourseWithoutObject(String courseNo) {
-         ArrayList<String> students = new ArrayList<String>();
-         
-         try (Connection conn = getConnection();
-        		 PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_STUDENTS_BY_COURSE)) {
-        	 stmt.setString(1, courseNo);        
-             try (ResultSet rs = stmt.executeQuery()) {
-            	 while(rs.next()) {
-                     students.add(rs.getString("student_id"));                 
-            	 }
-             }
-         } catch (SQLException e) {
-             e.printStackTrace();
-         }
-         
-         return students;
-     }
      
      
      
@@ -470,25 +679,7 @@ public class PowerSchool {
       */
      
      public static boolean resetPassword(String username) {
-     	try (Connection conn = getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPDATE_AUTH_SQL)) {
-
-     		conn.setAutoCommit(false);
-             stmt.setString(1, Utils.getHash(username));
-             stmt.setString(2, username);
-
-             if (stmt.executeUpdate() == 1) {
-                 conn.commit();
-                 return true;
-             } else {
-                 conn.rollback();
-                return false;
-
-             }
-            } catch (SQLException e) {
-                e.printStackTrace();
-                return false;
-            }
+         return updateOne(QueryUtils.UPDATE_AUTH_SQL, Utils.getHash(username), username) == 1;
      }
      
     /*
@@ -527,6 +718,12 @@ public class PowerSchool {
             System.err.println("Error: Unable to execute SQL script from configuration file.");
             e.printStackTrace();
         }
+
+        QueryCache.invalidateAll();
+        CourseAssignments.invalidate();
+        CourseRosters.invalidate();
+        Analytics.invalidateAll();
+        DataEvents.publish(new DataEvent(DataEvent.Type.RESET, DataEvent.ALL, DataEvent.ALL, DataEvent.ALL, 0));
     }
 
 	public static ArrayList<String> getCourses(int departmentId) {
@@ -547,30 +744,55 @@ public class PowerSchool {
 		return courses;
 	}
 	
-	public static int addAssignment(int courseId, int assignmentId, int markingPeriod, int isMidterm, int isFinal, String title, int pointValue) {
-    	try (Connection conn = getConnection();
-           	 PreparedStatement stmt = conn.prepareStatement(QueryUtils.ADD_ASSIGNMENT)) {
-               
-    		   conn.setAutoCommit(false);
-               stmt.setInt(1, courseId);
-               stmt.setInt(2, assignmentId);
-               stmt.setInt(3, markingPeriod);
-               stmt.setInt(4, isMidterm);
-               stmt.setInt(5, isFinal);
-               stmt.setString(6, title);
-               stmt.setInt(7, pointValue);
-
-               if (stmt.executeUpdate() == 1) {
-                   conn.commit();
-                   return 1;
-               } else {
-                   conn.rollback();
-                   return -1;
-               }
-           } catch (SQLException e) {
-               return -1;
-           }
-    }
+    /**
+     * Retrieves every department's title.
+     *
+     * @return department titles keyed by department_id
+     */
+
+	public static HashMap<Integer, String> getDepartmentTitles() {
+	    HashMap<Integer, String> titles = new HashMap<Integer, String>();
+
+	    try (Connection conn = getConnection();
+	         Statement stmt = conn.createStatement();
+	         ResultSet rs = stmt.executeQuery(QueryUtils.GET_DEPARTMENT_IDS)) {
+
+	        while (rs.next()) {
+	            titles.put(rs.getInt("department_id"), rs.getString("title"));
+	        }
+	    } catch (SQLException e) {
+	        e.printStackTrace();
+	    }
+
+	    return titles;
+	}
+
+    /**
+     * Retrieves the course numbers of the sections a teacher teaches.
+     *
+     * @param teacherId the teacher
+     * @return the teacher's course numbers
+     */
+
+	public static List<String> getCoursesByTeacher(int teacherId) {
+	    return TeacherCourses.get(teacherId);
+	}
+
+	public static int addAssignment(int courseId, int assignmentId, int markingPeriod, int isMidterm, int isFinal, String title, int pointValue,
+	        String category) {
+	    DataEvent event = new DataEvent(DataEvent.Type.ASSIGNMENT_ADDED, courseId, DataEvent.ALL, assignmentId, pointValue);
+
+	    String normalized = category != null ? category.toLowerCase() : CategoryGrades.DEFAULT_CATEGORY;
+	    int result = updateOneAndPublish(event, QueryUtils.ADD_ASSIGNMENT, courseId, assignmentId, markingPeriod, isMidterm, isFinal, title,
+	        pointValue, normalized);
+
+	    if (result == 1) {
+	        CourseAssignments.add(new Assignment(assignmentId, courseId, markingPeriod, isMidterm == 1, isFinal == 1, title, pointValue,
+	            normalized));
+	    }
+
+	    return result;
+	}
 	
 	
 
@@ -589,214 +811,155 @@ public class PowerSchool {
 	}
 	
 	public static int enterGrade(int courseId, int assignmentId, int studentId, int pointsEarned, int pointsPossible, boolean isGraded) {
-    	try (Connection conn = getConnection();
-           	 PreparedStatement stmt = conn.prepareStatement(QueryUtils.ENTER_GRADE)) {
-               
-    		   conn.setAutoCommit(false);
-               stmt.setInt(1, courseId);
-               stmt.setInt(2, assignmentId);
-               stmt.setInt(3, studentId);
-               stmt.setInt(4, pointsEarned);
-               stmt.setInt(5, pointsPossible);
-               stmt.setBoolean(6, isGraded);
-
-
-               if (stmt.executeUpdate() == 1) {
-                   conn.commit();
-                   return 1;
-               } else {
-                   conn.rollback();
-                   return -1;
-               }
-           } catch (SQLException e) {
-               return -1;
-           }
-    }
+	    DataEvent event = new DataEvent(DataEvent.Type.GRADE_ENTERED, courseId, studentId, assignmentId,
+	        "points_earned", Double.NaN, pointsEarned);
+
+	    return WriteQueue.execute(conn -> {
+	        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.ENTER_GRADE)) {
+	            stmt.setInt(1, courseId);
+	            stmt.setInt(2, assignmentId);
+	            stmt.setInt(3, studentId);
+	            stmt.setInt(4, pointsEarned);
+	            stmt.setInt(5, pointsPossible);
+	            stmt.setBoolean(6, isGraded);
+
+	            if (stmt.executeUpdate() != 1) {
+	                return -1;
+	            }
+	        }
+
+	        CategoryGrades.add(conn, courseId, assignmentId, studentId);
+	        WriteQueue.publishOnCommit(event);
+
+	        return 1;
+	    });
+	}
 	
 	public static int deleteAssignmentGrade(int assignmentId, int studentId) {
-    	try (Connection conn = getConnection();
-           	 PreparedStatement stmt = conn.prepareStatement(QueryUtils.DELETE_ASSIGNMENT_GRADE)) {
-               
-    		   conn.setAutoCommit(false);
-               stmt.setInt(1, assignmentId);
-               stmt.setInt(2, studentId);
-
-               if (stmt.executeUpdate() == 1) {
-                   conn.commit();
-                   return 1;
-               } else {
-                   conn.rollback();
-                   return -1;
-               }
-           } catch (SQLException e) {
-               return -1;
-           }
-    }
-	
-	public static int deleteAssignmentGrades(int assignmentId, int courseId) {
-    	try (Connection conn = getConnection();
-           	 PreparedStatement stmt = conn.prepareStatement(QueryUtils.DELETE_ASSIGNMENT_GRADES)) {
-               
-    		   conn.setAutoCommit(false);
-               stmt.setInt(1, assignmentId);
-               stmt.setInt(2, courseId);
-
-               stmt.executeUpdate();
-               conn.commit();
-               return 1;
-           } catch (SQLException e) {
-        	   
-               return -1;
-           }
-    }
-	
-	public static int getAssignmentId(int courseId, int markingPeriod, String title) {
-		try (Connection conn = getConnection();
-	       		 PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_ASSIGNMENT_ID)) {
-				
-				conn.setAutoCommit(false);
-				stmt.setInt(1, courseId);
-	            stmt.setInt(2, markingPeriod); 
-	            stmt.setString(3, title); 
-	            
-	            try (ResultSet rs = stmt.executeQuery()) {
+	    return WriteQueue.execute(conn -> {
+	        int courseId = DataEvent.ALL;
+	        double oldPoints = Double.NaN;
 
-	           		return rs.getInt(2);                 
+	        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_ASSIGNMENTS_GRADE)) {
+	            stmt.setInt(1, assignmentId);
+	            stmt.setInt(2, studentId);
+
+	            try (ResultSet rs = stmt.executeQuery()) {
+	                if (rs.next()) {
+	                    courseId = rs.getInt("course_id");
+	                    oldPoints = rs.getDouble("points_earned");
+	                }
 	            }
-	        } catch (SQLException e) {
-	            e.printStackTrace();
 	        }
-			
-			return 0;
-	}
-	
-	public static ArrayList<String> getAssignments(int courseId, int markingPeriod) {
-		ArrayList<String> assignments = new ArrayList<String>();
-		
-		try (Connection conn = getConnection();
-       		 PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_ASSIGNMENTS)) {
-			
-			conn.setAutoCommit(false);
-			stmt.setInt(1, courseId);
-            stmt.setInt(2, markingPeriod); 
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-           	 while(rs.next()) {
-           		assignments.add(rs.getString("title"));                 
-           	 }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-		
-		return assignments;
+
+	        if (courseId != DataEvent.ALL) {
+	            CategoryGrades.subtract(conn, courseId, assignmentId, studentId);
+	        }
+
+	        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.DELETE_ASSIGNMENT_GRADE)) {
+	            stmt.setInt(1, assignmentId);
+	            stmt.setInt(2, studentId);
+
+	            if (stmt.executeUpdate() != 1) {
+	                return -1;
+	            }
+	        }
+
+	        WriteQueue.publishOnCommit(new DataEvent(DataEvent.Type.GRADE_DELETED, courseId, studentId, assignmentId,
+	            "points_earned", oldPoints, Double.NaN));
+
+	        return 1;
+	    });
+	}
+	
+	/**
+	 * Records a student's grade on an assignment, replacing any earlier one, and
+	 * brings the student's term grades, course grade, and transcript up to date,
+	 * all in one write. The student's GPA is marked dirty and
+	 * recomputed later, together with any others that change in the meantime.
+	 *
+	 * @param courseId the course
+	 * @param assignmentId the assignment
+	 * @param studentId the student
+	 * @param pointsEarned the points earned
+	 * @param pointsPossible the assignment's point value
+	 * @return 1 on success, or -1 if the write failed
+	 */
+
+	public static int gradeStudent(int courseId, int assignmentId, int studentId, int pointsEarned, int pointsPossible) {
+	    int result = WriteQueue.execute(conn -> {
+	        double oldPoints = Double.NaN;
+
+	        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_ASSIGNMENT_GRADE)) {
+	            stmt.setInt(1, courseId);
+	            stmt.setInt(2, assignmentId);
+	            stmt.setInt(3, studentId);
+
+	            try (ResultSet rs = stmt.executeQuery()) {
+	                if (rs.next()) {
+	                    oldPoints = rs.getDouble("points_earned");
+	                    CategoryGrades.subtract(conn, courseId, assignmentId, studentId);
+	                }
+	            }
+	        }
+
+	        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPSERT_ASSIGNMENT_GRADE)) {
+	            stmt.setInt(1, courseId);
+	            stmt.setInt(2, assignmentId);
+	            stmt.setInt(3, studentId);
+	            stmt.setInt(4, pointsEarned);
+	            stmt.setInt(5, pointsPossible);
+
+	            if (stmt.executeUpdate() != 1) {
+	                return -1;
+	            }
+	        }
+
+	        CategoryGrades.add(conn, courseId, assignmentId, studentId);
+	        WriteQueue.publishOnCommit(new DataEvent(DataEvent.Type.GRADE_ENTERED, courseId, studentId, assignmentId,
+	            "points_earned", oldPoints, pointsEarned));
+
+	        updateStudentGrades(conn, courseId, studentId);
+
+	        return 1;
+	    });
+
+	    if (result == 1) {
+	        GpaUpdates.markDirty(studentId);
+	    }
+
+	    return result;
+	}
+	
+	/**
+	 * Lists a course's assignments for one marking period or exam.
+	 * 
+	 * @param courseId the course
+	 * @param markingPeriod 1-4, or 5 for the midterm and 6 for the final
+	 * @return the assignments in assignment_id order
+	 */
+	
+	public static ArrayList<Assignment> getAssignments(int courseId, int markingPeriod) {
+		return CourseAssignments.get(courseId, markingPeriod);
 	}
 	
 	public static int updateCourseGradesMP1(int courseId, int studentId, double average) {
-        try (Connection conn = getConnection();
-                PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPDATE_COURSE_MP1)) {
-
-               conn.setAutoCommit(false);
-               stmt.setDouble(1, average);
-               stmt.setInt(2, courseId);
-               stmt.setInt(3, studentId);
-
-               if (stmt.executeUpdate() == 1) {
-                   conn.commit();
-                   return 1;
-               } else {
-                   conn.rollback();
-                   return -1;
-               }
-           } catch (SQLException e) {
-               return -1;
-           }
+        return updateCourseGrades(QueryUtils.UPDATE_COURSE_MP1, "mp1", courseId, studentId, average);
     }
 	
 	public static int updateCourseGradesMP2(int courseId, int studentId, double average) {
-        try (Connection conn = getConnection();
-                PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPDATE_COURSE_MP2)) {
-
-               conn.setAutoCommit(false);
-               stmt.setDouble(1, average);
-               stmt.setInt(2, courseId);
-               stmt.setInt(3, studentId);
-
-               if (stmt.executeUpdate() == 1) {
-                   conn.commit();
-                   return 1;
-               } else {
-                   conn.rollback();
-                   return -1;
-               }
-           } catch (SQLException e) {
-               return -1;
-           }
+        return updateCourseGrades(QueryUtils.UPDATE_COURSE_MP2, "mp2", courseId, studentId, average);
     }
 
 	public static int updateCourseGradesMP3(int courseId, int studentId, double average) {
-        try (Connection conn = getConnection();
-                PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPDATE_COURSE_MP3)) {
-
-               conn.setAutoCommit(false);
-               stmt.setDouble(1, average);
-               stmt.setInt(2, courseId);
-               stmt.setInt(3, studentId);
-
-               if (stmt.executeUpdate() == 1) {
-                   conn.commit();
-                   return 1;
-               } else {
-                   conn.rollback();
-                   return -1;
-               }
-           } catch (SQLException e) {
-               System.out.println("\nsql error\n");
-               return -1;
-           }
+        return updateCourseGrades(QueryUtils.UPDATE_COURSE_MP3, "mp3", courseId, studentId, average);
     }
 	public static int updateCourseGradesMP4(int courseId, int studentId, double average) {
-        try (Connection conn = getConnection();
-                PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPDATE_COURSE_MP4)) {
-
-               conn.setAutoCommit(false);
-               stmt.setDouble(1, average);
-               stmt.setInt(2, courseId);
-               stmt.setInt(3, studentId);
-
-               if (stmt.executeUpdate() == 1) {
-                   conn.commit();
-                   return 1;
-               } else {
-                   conn.rollback();
-                   return -1;
-               }
-           } catch (SQLException e) {
-               System.out.println("\nsql error\n");
-               return -1;
-           }
+        return updateCourseGrades(QueryUtils.UPDATE_COURSE_MP4, "mp4", courseId, studentId, average);
     }
 
     public static int updateCourseGradesMidterm(int courseId, int studentId, double average) {
-        try (Connection conn = getConnection();
-                PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPDATE_COURSE_MIDTERM)) {
-
-               conn.setAutoCommit(false);
-               stmt.setDouble(1, average);
-               stmt.setInt(2, courseId);
-               stmt.setInt(3, studentId);
-
-               if (stmt.executeUpdate() == 1) {
-                   conn.commit();
-                   return 1;
-               } else {
-                   conn.rollback();
-                   return -1;
-               }
-           } catch (SQLException e) {
-               System.out.println("\nsql error\n");
-               return -1;
-           }
+        return updateCourseGrades(QueryUtils.UPDATE_COURSE_MIDTERM, "midterm_exam", courseId, studentId, average);
     }
 
     public static ArrayList<Integer> getCourseIds(int studentId) {
@@ -839,25 +1002,7 @@ public class PowerSchool {
      }
     
     public static int updateCourseGradesFinal(int courseId, int studentId, double average) {
-        try (Connection conn = getConnection();
-                PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPDATE_COURSE_FINAL)) {
-
-               conn.setAutoCommit(false);
-               stmt.setDouble(1, average);
-               stmt.setInt(2, courseId);
-               stmt.setInt(3, studentId);
-
-               if (stmt.executeUpdate() == 1) {
-                   conn.commit();
-                   return 1;
-               } else {
-                   conn.rollback();
-                   return -1;
-               }
-           } catch (SQLException e) {
-               System.out.println("\nsql error\n");
-               return -1;
-           }
+        return updateCourseGrades(QueryUtils.UPDATE_COURSE_FINAL, "final_exam", courseId, studentId, average);
     }
     
     public static Object getMP1Grade(int courseId, int studentId) {
@@ -995,25 +1140,452 @@ public class PowerSchool {
         }
          return totalGrades;
     }
+    /**
+     * Recomputes the marking period and exam averages of every student in a course
+     * with one set-based statement.
+     *
+     * @param courseId the course
+     * @return the number of students updated, or -1 on failure
+     */
+
+    public static int updateMarkingPeriodAverages(int courseId) {
+        return WriteQueue.execute(conn -> updateMarkingPeriodAverages(conn, courseId));
+    }
+
+    /*
+     * Recomputes a course's marking period and exam averages inside a write,
+     * publishing an event for each one that changed.
+     */
+
+    private static int updateMarkingPeriodAverages(Connection conn, int courseId) throws SQLException {
+        HashMap<Integer, Double[]> before = getTermGrades(conn, courseId);
+        int affected;
+
+        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPDATE_MARKING_PERIOD_AVERAGES)) {
+            stmt.setInt(1, courseId);
+            stmt.setInt(2, courseId);
+
+            affected = stmt.executeUpdate();
+        }
+
+        // courses graded by category replace the plain means with weighted ones
+
+        GradingPolicy policy = GradingPolicies.forCourse(courseId);
+        if (policy.getCategories().length > 0) {
+            applyWeightedAverages(conn, courseId, policy);
+        }
+
+        refreshTranscripts(conn, courseId);
+
+        // publish one event for each term grade that actually changed
+
+        HashMap<Integer, Double[]> after = getTermGrades(conn, courseId);
+        for (Integer studentId : after.keySet()) {
+            Double[] oldGrades = before.get(studentId);
+            Double[] newGrades = after.get(studentId);
+
+            for (int i = 0; i < TERM_COLUMNS.length; i++) {
+                if (!Objects.equals(oldGrades[i], newGrades[i])) {
+                    WriteQueue.publishOnCommit(new DataEvent(DataEvent.Type.COURSE_GRADE_UPDATED, courseId, studentId, DataEvent.ALL,
+                        TERM_COLUMNS[i], valueOf(oldGrades[i]), valueOf(newGrades[i])));
+                }
+            }
+        }
+
+        return affected;
+    }
+
+    /*
+     * Recomputes everything derived from a course's assignment grades: term
+     * averages, course grades, transcripts, and the GPAs of its students. Must be
+     * called from inside a write.
+     */
+
+    static void recomputeSection(Connection conn, int courseId) throws SQLException {
+        updateMarkingPeriodAverages(conn, courseId);
+        updateCourseGrades(conn, courseId);
+        refreshTranscripts(conn, courseId);
+        updateSectionGpas(conn, courseId);
+    }
+
+    /*
+     * Recomputes the course grade of every student in a course from their term
+     * grades, using the course's grading policy.
+     */
+
+    private static void updateCourseGrades(Connection conn, int courseId) throws SQLException {
+        GradingPolicy policy = GradingPolicies.forCourse(courseId);
+        double[] terms = new double[TERM_COLUMNS.length];
+
+        try (PreparedStatement select = conn.prepareStatement(QueryUtils.GET_COURSE_GRADES_BY_COURSE);
+             PreparedStatement update = conn.prepareStatement(QueryUtils.UPDATE_COURSE_GRADE)) {
+
+            select.setInt(1, courseId);
+
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    for (int i = 0; i < TERM_COLUMNS.length; i++) {
+                        terms[i] = rs.getDouble(TERM_COLUMNS[i]);
+                        if (rs.wasNull()) {
+                            terms[i] = Double.NaN;
+                        }
+                    }
+
+                    double oldGrade = rs.getDouble("grade");
+                    if (rs.wasNull()) {
+                        oldGrade = Double.NaN;
+                    }
+                    double newGrade = policy.evaluate(terms);
+
+                    if (Double.compare(oldGrade, newGrade) != 0) {
+                        int studentId = rs.getInt("student_id");
+
+                        if (newGrade == newGrade) {
+                            update.setDouble(1, newGrade);
+                        } else {
+                            update.setNull(1, Types.REAL);
+                        }
+                        update.setInt(2, courseId);
+                        update.setInt(3, studentId);
+                        update.addBatch();
+
+                        WriteQueue.publishOnCommit(new DataEvent(DataEvent.Type.COURSE_GRADE_UPDATED, courseId, studentId, DataEvent.ALL,
+                            "grade", oldGrade, newGrade));
+                    }
+                }
+            }
+
+            update.executeBatch();
+        }
+    }
+
+    /*
+     * Recomputes one student's term averages, course grade, and transcript row in a
+     * course, for a write that only changed their grades. Publishes an event for
+     * each column that changed. Must be called from inside a write.
+     */
+
+    private static void updateStudentGrades(Connection conn, int courseId, int studentId) throws SQLException {
+        Double[] before = getCourseGrades(conn, courseId, studentId);
+        if (before == null) {
+            return;     // not enrolled
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPDATE_STUDENT_MARKING_PERIOD_AVERAGES)) {
+            stmt.setInt(1, courseId);
+            stmt.setInt(2, studentId);
+            stmt.setInt(3, courseId);
+            stmt.executeUpdate();
+        }
+
+        // courses graded by category replace the plain means with weighted ones
+
+        GradingPolicy policy = GradingPolicies.forCourse(courseId);
+        if (policy.getCategories().length > 0) {
+            double[] averages = CategoryGrades.getWeightedAverages(conn, courseId, studentId, policy);
+
+            for (int period = 0; period < CategoryGrades.MARKING_PERIODS; period++) {
+                if (averages[period] == averages[period]) {
+                    try (PreparedStatement stmt = conn.prepareStatement(MARKING_PERIOD_UPDATES[period])) {
+                        stmt.setDouble(1, averages[period]);
+                        stmt.setInt(2, courseId);
+                        stmt.setInt(3, studentId);
+                        stmt.executeUpdate();
+                    }
+                }
+            }
+        }
+
+        Double[] after = getCourseGrades(conn, courseId, studentId);
+        double[] terms = new double[TERM_COLUMNS.length];
+
+        for (int i = 0; i < TERM_COLUMNS.length; i++) {
+            terms[i] = valueOf(after[i]);
+
+            if (!Objects.equals(before[i], after[i])) {
+                WriteQueue.publishOnCommit(new DataEvent(DataEvent.Type.COURSE_GRADE_UPDATED, courseId, studentId, DataEvent.ALL,
+                    TERM_COLUMNS[i], valueOf(before[i]), terms[i]));
+            }
+        }
+
+        double oldGrade = valueOf(before[TERM_COLUMNS.length]);
+        double newGrade = policy.evaluate(terms);
+
+        if (Double.compare(oldGrade, newGrade) != 0) {
+            try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPDATE_COURSE_GRADE)) {
+                if (newGrade == newGrade) {
+                    stmt.setDouble(1, newGrade);
+                } else {
+                    stmt.setNull(1, Types.REAL);
+                }
+                stmt.setInt(2, courseId);
+                stmt.setInt(3, studentId);
+                stmt.executeUpdate();
+            }
+
+            WriteQueue.publishOnCommit(new DataEvent(DataEvent.Type.COURSE_GRADE_UPDATED, courseId, studentId, DataEvent.ALL,
+                "grade", oldGrade, newGrade));
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.REFRESH_TRANSCRIPT)) {
+            stmt.setInt(1, courseId);
+            stmt.setInt(2, studentId);
+            stmt.executeUpdate();
+        }
+    }
+
+    /*
+     * Recomputes the GPA of every student enrolled in a course.
+     */
+
+    private static void updateSectionGpas(Connection conn, int courseId) throws SQLException {
+        updateGpas(conn, QueryUtils.GET_SECTION_GPA_ROWS, courseId);
+    }
+
+    /*
+     * Recomputes the GPAs of the students a query covers and writes the ones that
+     * changed. The query takes one parameter and returns student_id, grade,
+     * credit_hours, and gpa, ordered by student_id. Must be called from inside a write.
+     */
+
+    static void updateGpas(Connection conn, String sql, int key) throws SQLException {
+        ArrayList<Integer> studentIds = new ArrayList<Integer>();
+        ArrayList<Double> oldGpas = new ArrayList<Double>();
+        ArrayList<Double> newGpas = new ArrayList<Double>();
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, key);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                double[] grades = new double[16];
+                double[] hours = new double[16];
+                int count = 0;
+                int studentId = -1;
+                double oldGpa = 0;
+
+                while (true) {
+                    boolean more = rs.next();
+                    int next = more ? rs.getInt("student_id") : -1;
+
+                    if (studentId >= 0 && next != studentId) {
+                        studentIds.add(studentId);
+                        oldGpas.add(oldGpa);
+                        newGpas.add(Utils.getGpa(grades, hours, 0, count));
+                        count = 0;
+                    }
+                    if (!more) {
+                        break;
+                    }
+
+                    if (count == grades.length) {
+                        grades = Arrays.copyOf(grades, count * 2);
+                        hours = Arrays.copyOf(hours, count * 2);
+                    }
+                    studentId = next;
+                    oldGpa = rs.getDouble("gpa");
+                    grades[count] = rs.getDouble("grade");
+                    if (rs.wasNull()) {
+                        grades[count] = Double.NaN;
+                    }
+                    hours[count++] = rs.getDouble("credit_hours");
+                }
+            }
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPDATE_GPA)) {
+            for (int i = 0; i < studentIds.size(); i++) {
+                if (Double.compare(oldGpas.get(i), newGpas.get(i)) != 0) {
+                    stmt.setDouble(1, newGpas.get(i));
+                    stmt.setInt(2, studentIds.get(i));
+                    stmt.addBatch();
+
+                    WriteQueue.publishOnCommit(new DataEvent(DataEvent.Type.GPA_UPDATED, DataEvent.ALL, studentIds.get(i), DataEvent.ALL,
+                        "gpa", oldGpas.get(i), newGpas.get(i)));
+                }
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Repopulates the transcripts table from course_grades.
+     *
+     * @return the number of transcript rows written, or -1 on failure
+     */
+
+    public static int rebuildTranscripts() {
+        return WriteQueue.execute(conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate(QueryUtils.DELETE_TRANSCRIPTS);
+
+                return stmt.executeUpdate(QueryUtils.REBUILD_TRANSCRIPTS);
+            }
+        });
+    }
+
+    /*
+     * Updates one course_grades column and the matching transcript row in the
+     * same write.
+     *
+     * @param sql the course_grades update
+     * @param column the column the update changes
+     * @param courseId the course
+     * @param studentId the student
+     * @param value the new grade
+     * @return 1 if exactly one row was updated; -1 otherwise
+     */
+
+    private static int updateCourseGrades(String sql, String column, int courseId, int studentId, double value) {
+        return WriteQueue.execute(conn -> {
+            double oldValue = Double.NaN;
+
+            try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_COURSE_GRADES_ROW)) {
+                stmt.setInt(1, courseId);
+                stmt.setInt(2, studentId);
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        oldValue = valueOf((Double) rs.getObject(column));
+                    }
+                }
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setDouble(1, value);
+                stmt.setInt(2, courseId);
+                stmt.setInt(3, studentId);
+
+                if (stmt.executeUpdate() != 1) {
+                    return -1;
+                }
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.REFRESH_TRANSCRIPT)) {
+                stmt.setInt(1, courseId);
+                stmt.setInt(2, studentId);
+                stmt.executeUpdate();
+            }
+
+            WriteQueue.publishOnCommit(new DataEvent(DataEvent.Type.COURSE_GRADE_UPDATED, courseId, studentId, DataEvent.ALL,
+                column, oldValue, value));
+
+            return 1;
+        });
+    }
+
+    /*
+     * Overwrites a course's marking period and exam averages with category-weighted
+     * averages from the running category totals.
+     */
+
+    private static void applyWeightedAverages(Connection conn, int courseId, GradingPolicy policy) throws SQLException {
+        HashMap<Integer, double[]> averages = CategoryGrades.getWeightedAverages(conn, courseId, policy);
+
+        for (int period = 0; period < CategoryGrades.MARKING_PERIODS; period++) {
+            try (PreparedStatement stmt = conn.prepareStatement(MARKING_PERIOD_UPDATES[period])) {
+                for (Integer studentId : averages.keySet()) {
+                    double average = averages.get(studentId)[period];
+
+                    if (average == average) {
+                        stmt.setDouble(1, average);
+                        stmt.setInt(2, courseId);
+                        stmt.setInt(3, studentId);
+                        stmt.addBatch();
+                    }
+                }
+                stmt.executeBatch();
+            }
+        }
+    }
+
+    /*
+     * Reads the term grades of every student in a course, in TERM_COLUMNS order.
+     *
+     * @param conn an open connection
+     * @param courseId the course
+     * @return the grades keyed by student ID (null where no grade is recorded)
+     * @throws SQLException
+     */
+
+    private static HashMap<Integer, Double[]> getTermGrades(Connection conn, int courseId) throws SQLException {
+        HashMap<Integer, Double[]> grades = new HashMap<Integer, Double[]>();
+
+        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_COURSE_GRADES_BY_COURSE)) {
+            stmt.setInt(1, courseId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Double[] row = new Double[TERM_COLUMNS.length];
+
+                    for (int i = 0; i < TERM_COLUMNS.length; i++) {
+                        row[i] = (Double) rs.getObject(TERM_COLUMNS[i]);
+                    }
+                    grades.put(rs.getInt("student_id"), row);
+                }
+            }
+        }
+
+        return grades;
+    }
+
+
+    /*
+     * Reads one student's term grades in TERM_COLUMNS order, followed by their
+     * course grade.
+     *
+     * @param conn an open connection
+     * @param courseId the course
+     * @param studentId the student
+     * @return the grades (null where no grade is recorded), or null if the student isn't enrolled
+     * @throws SQLException
+     */
+
+    private static Double[] getCourseGrades(Connection conn, int courseId, int studentId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_COURSE_GRADES_ROW)) {
+            stmt.setInt(1, courseId);
+            stmt.setInt(2, studentId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+
+                Double[] row = new Double[TERM_COLUMNS.length + 1];
+                for (int i = 0; i < TERM_COLUMNS.length; i++) {
+                    row[i] = (Double) rs.getObject(TERM_COLUMNS[i]);
+                }
+                row[TERM_COLUMNS.length] = (Double) rs.getObject("grade");
+
+                return row;
+            }
+        }
+    }
+
+    /*
+     * Converts a nullable grade into a double, using NaN for a missing grade.
+     */
+
+    private static double valueOf(Double grade) {
+        return grade != null ? grade : Double.NaN;
+    }
+
+    /*
+     * Copies every course_grades row for a course into the transcripts table.
+     *
+     * @param conn the writer connection
+     * @param courseId the course
+     * @throws SQLException
+     */
+
+    private static void refreshTranscripts(Connection conn, int courseId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.REFRESH_TRANSCRIPTS_BY_COURSE)) {
+            stmt.setInt(1, courseId);
+            stmt.executeUpdate();
+        }
+    }
+
     public static int updateCourseGrade(int courseId, int studentId, double grade) {
-        try (Connection conn = getConnection();
-                PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPDATE_COURSE_GRADE)) {
-
-               conn.setAutoCommit(false);
-               stmt.setDouble(1, grade);
-               stmt.setInt(2, courseId);
-               stmt.setInt(3, studentId);
-
-               if (stmt.executeUpdate() == 1) {
-                   conn.commit();
-                   return 1;
-               } else {
-                   conn.rollback();
-                   return -1;
-               }
-           } catch (SQLException e) {
-               return -1;
-           }
+        return updateCourseGrades(QueryUtils.UPDATE_COURSE_GRADE, "grade", courseId, studentId, grade);
     }
     
     public static ArrayList<Integer> getAssignmentIdByMP(int markingPeriod) {
@@ -1053,69 +1625,83 @@ public class PowerSchool {
     }
 	
 	
-	public static ArrayList<String> getAssignmentIds(int courseId, int markingPeriod) {
-		ArrayList<String> assignmentsIds = new ArrayList<String>();
-		
-		try (Connection conn = getConnection();
-       		 PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_ASSIGNMENTS)) {
-			
-			conn.setAutoCommit(false);
-			stmt.setInt(1, courseId);
-            stmt.setInt(2, markingPeriod); 
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-           	 while(rs.next()) {
-           		assignmentsIds.add(rs.getString("assignment_id"));                 
-           	 }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-		
-		return assignmentsIds;
-	}
+	/**
+	 * Retrieves a section's roster with each student's grade on one assignment.
+	 * 
+	 * @param courseId the course
+	 * @param assignmentId the assignment
+	 * @return the roster in name order
+	 */
 	
-	public static ArrayList<String> getAssignmentGrade(String assignmentId, int studentId) {
-		ArrayList<String> assignmentsIds = new ArrayList<String>();
-		
-		try (Connection conn = getConnection();
-       		 PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_ASSIGNMENTS_GRADE)) {
-			
-			conn.setAutoCommit(false);
-			stmt.setString(1, assignmentId);
-			stmt.setInt(2, studentId);
-            try (ResultSet rs = stmt.executeQuery()) {
-           	 while(rs.next()) {
-           		assignmentsIds.add(rs.getString("points_earned"));                 
-           	 }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+	public static ArrayList<RosterGrade> getRosterGrades(int courseId, int assignmentId) {
+		try {
+			return new ArrayList<RosterGrade>(QueryCache.query(courseId, QueryUtils.GET_ROSTER_WITH_GRADES,
+				RosterGrade::new, assignmentId, courseId));
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
 		
-		return assignmentsIds;
+		return new ArrayList<RosterGrade>();
 	}
 	
-	public static int deleteAssignment(int courseId, int markingPeriod, String title) {
-    	try (Connection conn = getConnection();
-           	 PreparedStatement stmt = conn.prepareStatement(QueryUtils.DELETE_ASSIGNMENT)) {
-               
-    		   conn.setAutoCommit(false);
-    		   stmt.setInt(1, courseId);
-               stmt.setInt(2, markingPeriod);
-               stmt.setString(3, title);
-               
-               if (stmt.executeUpdate() == 1) {
-                   conn.commit();
-                   return 1;
-               } else {
-                   conn.rollback();
-                   return -1;
-               }
-           } catch (SQLException e) {
-               return -1;
-           }
-    }
+	/**
+	 * Deletes an assignment and every grade on it, then recomputes the section's
+	 * marking period averages, course grades, and GPAs, all in one transaction.
+	 *
+	 * @param courseId the course
+	 * @param assignmentId the assignment
+	 * @return 1 on success, or -1 if the assignment doesn't exist or the delete failed
+	 */
+
+	public static int deleteAssignment(int courseId, int assignmentId) {
+	    int result = WriteQueue.execute(conn -> {
+	        ArrayList<DataEvent> events = new ArrayList<DataEvent>();
+
+	        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_GRADES_BY_ASSIGNMENT)) {
+	            stmt.setInt(1, assignmentId);
+	            stmt.setInt(2, courseId);
+
+	            try (ResultSet rs = stmt.executeQuery()) {
+	                while (rs.next()) {
+	                    events.add(new DataEvent(DataEvent.Type.GRADE_DELETED, courseId, rs.getInt("student_id"), assignmentId,
+	                        "points_earned", rs.getDouble("points_earned"), Double.NaN));
+	                }
+	            }
+	        }
+
+	        CategoryGrades.subtractAssignment(conn, courseId, assignmentId);
+
+	        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.DELETE_ASSIGNMENT_GRADES)) {
+	            stmt.setInt(1, assignmentId);
+	            stmt.setInt(2, courseId);
+	            stmt.executeUpdate();
+	        }
+
+	        try (PreparedStatement stmt = conn.prepareStatement(QueryUtils.DELETE_ASSIGNMENT_BY_ID)) {
+	            stmt.setInt(1, courseId);
+	            stmt.setInt(2, assignmentId);
+
+	            if (stmt.executeUpdate() != 1) {
+	                return -1;      // no such assignment; roll back
+	            }
+	        }
+
+	        for (DataEvent event : events) {
+	            WriteQueue.publishOnCommit(event);
+	        }
+	        WriteQueue.publishOnCommit(new DataEvent(DataEvent.Type.ASSIGNMENT_DELETED, courseId, DataEvent.ALL, assignmentId, Double.NaN));
+
+	        recomputeSection(conn, courseId);
+
+	        return 1;
+	    });
+
+	    if (result == 1) {
+	        CourseAssignments.remove(courseId, assignmentId);
+	    }
+
+	    return result;
+	}
 	
 	public static ArrayList<String> getGradesByAssignmentId(int assignmentId) {
 		ArrayList<String> grades = new ArrayList<String>();
@@ -1135,48 +1721,4 @@ public class PowerSchool {
 		
 		return grades;
 	}
-
-	public static ArrayList<String> getPointValues(int courseId, int markingPeriod) {
-		ArrayList<String> pointValues = new ArrayList<String>();
-		
-		try (Connection conn = getConnection();
-       		 PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_POINT_VALUES)) {
-			
-			conn.setAutoCommit(false);
-			stmt.setInt(1, courseId);
-            stmt.setInt(2, markingPeriod); 
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-           	 while(rs.next()) {
-           		pointValues.add(rs.getString("point_value"));                 
-           	 }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-		
-		return pointValues;
-	}
-	
-	public static int updateGPA(double gpa, int studentId) {
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = conn.prepareStatement(QueryUtils.UPDATE_GPA)) {
-
-            conn.setAutoCommit(false);
-            stmt.setDouble(1, gpa);
-            stmt.setInt(2, studentId);
-
-            if (stmt.executeUpdate() == 1) {
-                conn.commit();
-                return 1;
-            } else {
-                conn.rollback();
-                return -1;
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-
-            return -1;
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,484 @@
+package com.apcsa.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Caches the results of read-only QueryUtils statements, keyed by statement and
+ * parameters.
+ *
+ * Every statement's table dependencies are read from its FROM and JOIN clauses the
+ * first time it's cached. Results can also be scoped to one course. Committed
+ * writes invalidate by table, or by (table, course_id) when the change touched a
+ * single course. Cached results are indexed by table and course, so an
+ * invalidation visits only the results it drops instead of scanning the cache.
+ * WriteQueue invalidates each commit's events before publishing
+ * them, so a write is never followed by a stale read on the thread that made it.
+ * Bulk loads and resets that bypass events call invalidateAll().
+ *
+ * The cache holds at most MAXIMUM results and evicts with a simplified W-TinyLFU
+ * policy. New results enter a small LRU window. A result pushed out of the window
+ * only displaces the main area's least recently used result if it has been asked
+ * for more often, according to an aging count-min sketch. The main area is split
+ * into probation and protected segments, and a second hit promotes a result to
+ * protected. One-off queries therefore can't flush frequently used results.
+ */
+
+public class QueryCache {
+
+    public final static int MAXIMUM = 1024;              // cached results
+
+    private final static int WINDOW = Math.max(1, MAXIMUM / 100);
+    private final static int PROTECTED = (MAXIMUM - WINDOW) * 4 / 5;
+    private final static Pattern SOURCES = Pattern.compile(
+        "\\b(?:FROM|JOIN)\\s+(.+?)(?=\\b(?:WHERE|ON|USING|GROUP|ORDER|LIMIT|HAVING|LEFT|INNER|CROSS|JOIN)\\b|\\)|$)",
+        Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /**
+     * Turns the current row of a result set into one cached value.
+     */
+
+    @FunctionalInterface
+    public interface Mapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    private static class Key {
+        private final String sql;
+        private final Object[] params;
+        private final int hash;
+
+        private Key(String sql, Object[] params) {
+            this.sql = sql;
+            this.params = params;
+            this.hash = sql.hashCode() * 31 + Arrays.hashCode(params);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).sql.equals(sql) && Arrays.equals(((Key) other).params, params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class Entry {
+        private final List<?> rows;
+        private final String[] tables;
+        private final int courseId;
+
+        private Entry(List<?> rows, String[] tables, int courseId) {
+            this.rows = rows;
+            this.tables = tables;
+            this.courseId = courseId;
+        }
+    }
+
+    private static ConcurrentHashMap<String, String[]> dependencies = new ConcurrentHashMap<String, String[]>();
+
+    // guarded by the class lock
+
+    private static HashMap<String, HashMap<Integer, HashSet<Key>>> byTable = new HashMap<String, HashMap<Integer, HashSet<Key>>>();
+    private static LinkedHashMap<Key, Entry> window = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private static LinkedHashMap<Key, Entry> probation = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private static LinkedHashMap<Key, Entry> protectedArea = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private static FrequencySketch sketch = new FrequencySketch(MAXIMUM);
+    private static long generation;
+    private static long hits;
+    private static long misses;
+    private static long evictions;
+    private static long invalidations;
+
+    /**
+     * Runs a statement, or returns its cached result.
+     *
+     * @param courseId the only course the result depends on, or DataEvent.ALL
+     * @param sql a read-only QueryUtils statement
+     * @param mapper converts each row
+     * @param params the statement's parameters, in order
+     * @return the rows, which must not be modified
+     * @throws SQLException
+     */
+
+    public static <T> List<T> query(int courseId, String sql, Mapper<T> mapper, Object... params) throws SQLException {
+        Key key = new Key(sql, params.clone());
+        long loadedAt;
+
+        synchronized (QueryCache.class) {
+            Entry entry = get(key);
+
+            if (entry != null) {
+                hits++;
+
+                @SuppressWarnings("unchecked")
+                List<T> rows = (List<T>) entry.rows;
+                return rows;
+            }
+
+            misses++;
+            loadedAt = generation;
+        }
+
+        ArrayList<T> rows = new ArrayList<T>();
+        try (Connection conn = PowerSchool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(mapper.map(rs));
+                }
+            }
+        }
+
+        List<T> result = Collections.unmodifiableList(rows);
+        synchronized (QueryCache.class) {
+
+            // a write committed while we were reading might not be in these rows
+
+            if (loadedAt == generation) {
+                put(key, new Entry(result, getTables(sql), courseId));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Drops every result that read a table.
+     *
+     * @param table the table
+     * @param courseId the changed course, or DataEvent.ALL if the change could touch any course
+     */
+
+    public static synchronized void invalidate(String table, int courseId) {
+        generation++;
+
+        HashMap<Integer, HashSet<Key>> courses = byTable.get(table);
+        if (courses == null) {
+            return;
+        }
+
+        ArrayList<Key> dropped = new ArrayList<Key>();
+        if (courseId == DataEvent.ALL) {
+            for (HashSet<Key> keys : courses.values()) {
+                dropped.addAll(keys);
+            }
+        } else {
+            for (int scope : new int[] { courseId, DataEvent.ALL }) {
+                HashSet<Key> keys = courses.get(scope);
+
+                if (keys != null) {
+                    dropped.addAll(keys);
+                }
+            }
+        }
+
+        for (Key key : dropped) {
+            Entry entry = remove(key);
+
+            if (entry != null) {
+                unindex(key, entry);
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Drops whatever results a committed change could have affected.
+     *
+     * @param event the change
+     */
+
+    public static void invalidate(DataEvent event) {
+        int courseId = event.getCourseId();
+
+        switch (event.getType()) {
+            case GRADE_ENTERED:
+            case GRADE_DELETED:
+                invalidate(courseId, "assignment_grades", "category_grades");
+                break;
+            case ASSIGNMENT_ADDED:
+            case ASSIGNMENT_DELETED:
+                invalidate(courseId, "assignments", "assignment_grades", "category_grades");
+                break;
+            case COURSE_GRADE_UPDATED:
+                invalidate(courseId, "course_grades", "transcripts");
+                break;
+            case GPA_UPDATED:
+                invalidate(DataEvent.ALL, "students");
+                break;
+            case STUDENT_ENROLLED:
+            case STUDENT_DROPPED:
+                invalidate(courseId, "course_grades", "assignment_grades", "category_grades", "transcripts");
+                invalidate(DataEvent.ALL, "courses");
+                break;
+            case COURSE_ADDED:
+                invalidate(DataEvent.ALL, "courses");
+                break;
+            case TEACHER_ADDED:
+                invalidate(DataEvent.ALL, "teachers", "users");
+                break;
+            default:
+                invalidateAll();
+                break;
+        }
+    }
+
+    /**
+     * Drops every cached result.
+     */
+
+    public static synchronized void invalidateAll() {
+        generation++;
+        invalidations += window.size() + probation.size() + protectedArea.size();
+
+        window.clear();
+        probation.clear();
+        protectedArea.clear();
+        byTable.clear();
+    }
+
+    /**
+     * @return the cache's size and hit rate, for the database status screen
+     */
+
+    public static synchronized String getStatus() {
+        long requests = hits + misses;
+
+        return String.format("Query cache: %d of %d results, %d hits / %d misses (%.1f%% hit rate), %d evicted, %d invalidated.",
+            window.size() + probation.size() + protectedArea.size(), MAXIMUM, hits, misses,
+            requests > 0 ? hits * 100.0 / requests : 0.0, evictions, invalidations);
+    }
+
+    private static synchronized void invalidate(int courseId, String... tables) {
+        for (String table : tables) {
+            invalidate(table, courseId);
+        }
+    }
+
+    /*
+     * Finds a result and records the access. Must hold the class lock.
+     */
+
+    private static Entry get(Key key) {
+        sketch.increment(key.hashCode());
+
+        Entry entry = window.get(key);
+        if (entry == null) {
+            entry = protectedArea.get(key);
+        }
+        if (entry == null) {
+            entry = probation.remove(key);
+
+            // a second hit on a probationary result protects it
+
+            if (entry != null) {
+                protectedArea.put(key, entry);
+
+                if (protectedArea.size() > PROTECTED) {
+                    Map.Entry<Key, Entry> demoted = eldest(protectedArea);
+
+                    protectedArea.remove(demoted.getKey());
+                    probation.put(demoted.getKey(), demoted.getValue());
+                }
+            }
+        }
+
+        return entry;
+    }
+
+    /*
+     * Adds a result to the window, admitting whatever it pushes out to the main area
+     * only if that result is used more often than the main area's next victim. Must
+     * hold the class lock.
+     */
+
+    private static void put(Key key, Entry entry) {
+        if (window.containsKey(key) || probation.containsKey(key) || protectedArea.containsKey(key)) {
+            return;
+        }
+
+        window.put(key, entry);
+        index(key, entry);
+        if (window.size() <= WINDOW) {
+            return;
+        }
+
+        Map.Entry<Key, Entry> candidate = eldest(window);
+        window.remove(candidate.getKey());
+
+        if (probation.size() + protectedArea.size() < MAXIMUM - WINDOW) {
+            probation.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+
+        LinkedHashMap<Key, Entry> segment = probation.isEmpty() ? protectedArea : probation;
+        Map.Entry<Key, Entry> victim = eldest(segment);
+
+        if (sketch.frequency(candidate.getKey().hashCode()) > sketch.frequency(victim.getKey().hashCode())) {
+            segment.remove(victim.getKey());
+            unindex(victim.getKey(), victim.getValue());
+            probation.put(candidate.getKey(), candidate.getValue());
+        } else {
+            unindex(candidate.getKey(), candidate.getValue());
+        }
+        evictions++;
+    }
+
+    /*
+     * Removes a result from whichever segment holds it. Must hold the class lock.
+     */
+
+    private static Entry remove(Key key) {
+        Entry entry = window.remove(key);
+
+        if (entry == null) {
+            entry = probation.remove(key);
+        }
+        if (entry == null) {
+            entry = protectedArea.remove(key);
+        }
+
+        return entry;
+    }
+
+    /*
+     * Records a cached result under each table it read. Must hold the class lock.
+     */
+
+    private static void index(Key key, Entry entry) {
+        for (String table : entry.tables) {
+            byTable.computeIfAbsent(table, t -> new HashMap<Integer, HashSet<Key>>())
+                .computeIfAbsent(entry.courseId, c -> new HashSet<Key>())
+                .add(key);
+        }
+    }
+
+    /*
+     * Forgets a result that has left the cache. Must hold the class lock.
+     */
+
+    private static void unindex(Key key, Entry entry) {
+        for (String table : entry.tables) {
+            HashMap<Integer, HashSet<Key>> courses = byTable.get(table);
+            HashSet<Key> keys = courses != null ? courses.get(entry.courseId) : null;
+
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                courses.remove(entry.courseId);
+                if (courses.isEmpty()) {
+                    byTable.remove(table);
+                }
+            }
+        }
+    }
+
+    private static Map.Entry<Key, Entry> eldest(LinkedHashMap<Key, Entry> segment) {
+        return segment.entrySet().iterator().next();
+    }
+
+    /*
+     * Reads the tables a statement selects from.
+     */
+
+    private static String[] getTables(String sql) {
+        return dependencies.computeIfAbsent(sql, s -> {
+            ArrayList<String> tables = new ArrayList<String>();
+            Matcher matcher = SOURCES.matcher(s);
+
+            while (matcher.find()) {
+                for (String source : matcher.group(1).split(",")) {
+                    String table = source.trim().split("\\s+")[0].toLowerCase(Locale.ROOT);
+
+                    // subqueries are matched by their own FROM clauses
+
+                    if (table.matches("[a-z_][a-z0-9_]*") && !tables.contains(table)) {
+                        tables.add(table);
+                    }
+                }
+            }
+
+            return tables.toArray(new String[0]);
+        });
+    }
+
+    /*
+     * A count-min sketch of recent access frequencies: four rows of counters that
+     * saturate at 15 and are all halved every 10 * MAXIMUM increments, so old
+     * popularity fades.
+     */
+
+    private static class FrequencySketch {
+        private final static int DEPTH = 4;
+        private final static int LIMIT = 15;
+        private final static int[] SEEDS = { 0x97cb3127, 0xb492b66f, 0x9ae16a3b, 0xc2b2ae35 };
+
+        private final byte[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(int maximum) {
+            int width = Integer.highestOneBit(Math.max(2, maximum) * 2);
+
+            this.counters = new byte[DEPTH][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * maximum;
+        }
+
+        private void increment(int hash) {
+            for (int d = 0; d < DEPTH; d++) {
+                int i = index(hash, d);
+
+                if (counters[d][i] < LIMIT) {
+                    counters[d][i]++;
+                }
+            }
+
+            if (++additions >= sampleSize) {
+                for (byte[] row : counters) {
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        private int frequency(int hash) {
+            int frequency = LIMIT;
+
+            for (int d = 0; d < DEPTH; d++) {
+                frequency = Math.min(frequency, counters[d][index(hash, d)]);
+            }
+
+            return frequency;
+        }
+
+        private int index(int hash, int row) {
+            int h = (hash ^ (hash >>> 16)) * SEEDS[row];
+
+            return (h ^ (h >>> 15)) & mask;
+        }
+    }
+}
@@ -5,13 +5,15 @@ public class QueryUtils {
     /////// QUERY CONSTANTS ///////////////////////////////////////////////////////////////
     
     /*
-     * Determines if the default tables were correctly loaded.
+     * Determines if the core tables were correctly loaded. Tables added since are
+     * created by the migrations below instead.
      */
 	
     public static final String SETUP_SQL =
         "SELECT COUNT(name) AS names FROM sqlite_master " +
             "WHERE type = 'table' " +
-        "AND name NOT LIKE 'sqlite_%'";
+        "AND name IN ('users', 'departments', 'administrators', 'teachers', 'students', " +
+            "'courses', 'course_grades', 'assignments', 'assignment_grades')";
     
     /*
      * Updates the last login timestamp each time a user logs into the system.
@@ -50,6 +52,7 @@ public class QueryUtils {
 
     public static final String GET_TEACHER_SQL =
         "SELECT * FROM teachers " +
+            "INNER JOIN departments ON departments.department_id = teachers.department_id " +
             "WHERE user_id = ?";
     
     /*
@@ -88,7 +91,7 @@ public class QueryUtils {
 		"SELECT * FROM " +
 		    "teachers, departments " +
 		"WHERE " +
-		    "teachers.department_id = departments.department_id  AND departments.department_id = ?" +
+		    "teachers.department_id = departments.department_id  AND departments.department_id = ? " +
 		"ORDER BY " +
 		    "last_name, first_name";
 	
@@ -107,24 +110,20 @@ public class QueryUtils {
 	            "last_name, first_name";
 	
 	 public static final String GET_STUDENT_COURSES_SQL =
-		        "SELECT courses.title, grade, courses.course_id, courses.course_no FROM course_grades " +
-		        "INNER JOIN courses ON course_grades.course_id = courses.course_id " +
-		        "INNER JOIN students ON students.student_id = course_grades.student_id " +
-		        "WHERE students.student_id = ?";
+		        "SELECT title, grade, course_id, course_no FROM transcripts " +
+		        "WHERE student_id = ? " +
+		        "ORDER BY course_id";
 	 
 	 public static final String GET_COURSE_NUMBERS_FOR_STUDENT =
-		        "SELECT courses.title, grade, courses.course_id, courses.course_no FROM course_grades " +
-		        "INNER JOIN courses ON course_grades.course_id = courses.course_id " +
-		        "INNER JOIN students ON students.student_id = course_grades.student_id " +
-		        "WHERE students.student_id = ?";
-	
-	public static final String GET_STUDENTS_BY_COURSE =
-	        "SELECT * FROM " +
-	            "students, courses, course_grades " +
-	        "WHERE "+
-	            "courses.course_no = ? AND courses.course_id = course_grades.course_id AND course_grades.student_id = students.student_id " +
-	        "ORDER BY " +
-	            "last_name, first_name";
+		        "SELECT title, grade, course_id, course_no FROM transcripts " +
+		        "WHERE student_id = ? " +
+		        "ORDER BY course_id";
+
+	 public static final String GET_ASSIGNMENT_GRADES_FOR_STUDENT =
+		        "SELECT title, points_earned, points_possible FROM assignment_grades " +
+		        "INNER JOIN assignments ON assignments.course_id = assignment_grades.course_id " +
+		            "AND assignments.assignment_id = assignment_grades.assignment_id " +
+		        "WHERE student_id = ? AND assignment_grades.course_id = ? AND marking_period = ?";
 	
 	public static final String GET_STUDENT_ID_BY_COURSE =
 			"SELECT * FROM " +
@@ -133,13 +132,13 @@ public class QueryUtils {
 		            "courses.course_no = ? AND courses.course_id = course_grades.course_id AND course_grades.student_id = students.student_id ";
 	
 	public static final String GET_COURSES =
-            "SELECT * FROM courses, teachers " +
-             "WHERE teachers.department_id =? AND teachers.department_id = courses.department_id "+
-             "ORDER BY courses.course_id";
+            "SELECT course_no FROM courses " +
+             "WHERE department_id = ? " +
+             "ORDER BY course_id";
 	
 	public static final String ADD_ASSIGNMENT = 
-    		"INSERT INTO assignments " +
-    		"VALUES(?, ?, ?, ?, ?, ?, ?)";
+    		"INSERT INTO assignments (course_id, assignment_id, marking_period, is_midterm, is_final, title, point_value, category) " +
+    		"VALUES(?, ?, ?, ?, ?, ?, ?, ?)";
 	
 	public static final String ENTER_GRADE = 
     		"INSERT INTO assignment_grades " +
@@ -153,12 +152,6 @@ public class QueryUtils {
 					"assignments "+
 				"ORDER BY assignment_id DESC";
 	
-	 public static final String DELETE_ASSIGNMENT = 
-	    		"DELETE FROM assignments " +
-	    				"WHERE course_id = ?" +
-	    				"AND marking_period = ?" +
-	    				"AND title = ?";
-
 	 public static final String DELETE_ASSIGNMENT_GRADE = 
 	    		"DELETE FROM assignment_grades " +
 	    				"WHERE assignment_id = ?" +
@@ -169,18 +162,10 @@ public class QueryUtils {
 	    				"WHERE assignment_id = ? " +
 	    				"AND course_id = ?";
 	 
-	public static final String GET_ASSIGNMENTS =
-			"SELECT * FROM assignments " +
-			"WHERE course_id = ? AND marking_period = ?";
-	
 	public static final String GET_ASSIGNMENTS_GRADE =
 			"SELECT * FROM assignment_grades " +
 			"WHERE assignment_id = ? AND student_id = ?";
 	
-	public static final String GET_POINT_VALUES =
-			"SELECT * FROM assignments " +
-			"WHERE course_id = ? AND marking_period = ?";
-
 	public static final String GET_STUDENT_BY_ID =
 			"SELECT * FROM students " +
 					"WHERE student_id = ?" + 
@@ -286,8 +271,443 @@ public class QueryUtils {
 	            "SET gpa = ?" +
 	            "WHERE student_id = ?";
 	    
-		 public static final String GET_ASSIGNMENT_ID = 
-				 "SELECT * FROM assignments " +
-							"WHERE course_id = ? AND marking_period = ? AND title = ?";
+    /*
+     * Recomputes every marking period and exam average for a course, or for one
+     * student in it, in one pass from the running category totals rather than
+     * assignment_grades. Each average is the mean percentage of the graded
+     * assignments in that term.
+     */
+
+    private static final String MARKING_PERIOD_AVERAGES =
+        "UPDATE course_grades SET " +
+            "mp1 = averages.mp1, mp2 = averages.mp2, midterm_exam = averages.midterm_exam, " +
+            "mp3 = averages.mp3, mp4 = averages.mp4, final_exam = averages.final_exam " +
+        "FROM (" +
+            "SELECT enrolled.student_id, " +
+                "SUM(CASE WHEN marking_period = 1 THEN percent_sum END) / SUM(CASE WHEN marking_period = 1 THEN graded END) AS mp1, " +
+                "SUM(CASE WHEN marking_period = 2 THEN percent_sum END) / SUM(CASE WHEN marking_period = 2 THEN graded END) AS mp2, " +
+                "SUM(CASE WHEN marking_period = 3 THEN percent_sum END) / SUM(CASE WHEN marking_period = 3 THEN graded END) AS mp3, " +
+                "SUM(CASE WHEN marking_period = 4 THEN percent_sum END) / SUM(CASE WHEN marking_period = 4 THEN graded END) AS mp4, " +
+                "SUM(CASE WHEN marking_period = 5 THEN percent_sum END) / SUM(CASE WHEN marking_period = 5 THEN graded END) AS midterm_exam, " +
+                "SUM(CASE WHEN marking_period = 6 THEN percent_sum END) / SUM(CASE WHEN marking_period = 6 THEN graded END) AS final_exam " +
+            "FROM course_grades AS enrolled " +
+            "LEFT JOIN category_grades ON category_grades.course_id = enrolled.course_id " +
+                "AND category_grades.student_id = enrolled.student_id AND category_grades.graded > 0 " +
+            "WHERE enrolled.course_id = ? ";
+
+    private static final String MARKING_PERIOD_GROUPS =
+            "GROUP BY enrolled.student_id" +
+        ") AS averages " +
+        "WHERE course_grades.course_id = ? AND course_grades.student_id = averages.student_id";
+
+    public static final String UPDATE_MARKING_PERIOD_AVERAGES =
+        MARKING_PERIOD_AVERAGES + MARKING_PERIOD_GROUPS;
+
+    public static final String UPDATE_STUDENT_MARKING_PERIOD_AVERAGES =
+        MARKING_PERIOD_AVERAGES + "AND enrolled.student_id = ? " + MARKING_PERIOD_GROUPS;
+
+    /*
+     * Retrieves existing grades so that changes can be recorded with their old values.
+     */
+
+    public static final String GET_GRADES_BY_ASSIGNMENT =
+        "SELECT student_id, points_earned FROM assignment_grades " +
+            "WHERE assignment_id = ? AND course_id = ?";
+
+    public static final String GET_COURSE_GRADES_ROW =
+        "SELECT * FROM course_grades " +
+            "WHERE course_id = ? AND student_id = ?";
+
+    public static final String GET_COURSE_GRADES_BY_COURSE =
+        "SELECT * FROM course_grades " +
+            "WHERE course_id = ?";
+
+    /*
+     * Copies course grades into the denormalized transcripts table, for one
+     * student's course, a whole course, or everything.
+     */
+
+    private static final String TRANSCRIPT_SELECT =
+        "INSERT OR REPLACE INTO transcripts " +
+            "(student_id, course_id, course_no, title, credit_hours, mp1, mp2, midterm_exam, mp3, mp4, final_exam, grade) " +
+        "SELECT course_grades.student_id, course_grades.course_id, courses.course_no, courses.title, courses.credit_hours, " +
+            "course_grades.mp1, course_grades.mp2, course_grades.midterm_exam, " +
+            "course_grades.mp3, course_grades.mp4, course_grades.final_exam, course_grades.grade " +
+        "FROM course_grades INNER JOIN courses ON courses.course_id = course_grades.course_id ";
+
+    public static final String REFRESH_TRANSCRIPT =
+        TRANSCRIPT_SELECT +
+        "WHERE course_grades.course_id = ? AND course_grades.student_id = ?";
+
+    public static final String REFRESH_TRANSCRIPTS_BY_COURSE =
+        TRANSCRIPT_SELECT +
+        "WHERE course_grades.course_id = ?";
+
+    public static final String REBUILD_TRANSCRIPTS =
+        TRANSCRIPT_SELECT;
+
+    public static final String DELETE_TRANSCRIPTS =
+        "DELETE FROM transcripts";
+
+    /*
+     * Retrieves the names and usernames used to build the name search index.
+     */
+
+    public static final String GET_STUDENT_NAMES =
+        "SELECT students.student_id, first_name, last_name, username FROM students " +
+            "INNER JOIN users ON users.user_id = students.user_id";
+
+    public static final String GET_STUDENT_NAMES_BY_ID =
+        "SELECT student_id, first_name, last_name FROM students " +
+            "WHERE student_id IN (SELECT value FROM json_each(?))";
+
+    public static final String GET_TEACHER_NAMES =
+        "SELECT teachers.teacher_id, first_name, last_name, username FROM teachers " +
+            "INNER JOIN users ON users.user_id = teachers.user_id";
+
+    /*
+     * Loads the keys the CSV importer uses to resolve foreign keys in memory.
+     */
+
+    public static final String GET_IMPORT_KEYS =
+        "SELECT (SELECT IFNULL(MAX(user_id), 0) FROM users) AS users, " +
+            "(SELECT IFNULL(MAX(teacher_id), 0) FROM teachers) AS teachers, " +
+            "(SELECT IFNULL(MAX(student_id), 0) FROM students) AS students, " +
+            "(SELECT IFNULL(MAX(course_id), 0) FROM courses) AS courses";
+
+    public static final String GET_USERNAMES =
+        "SELECT username FROM users";
+
+    public static final String GET_DEPARTMENT_IDS =
+        "SELECT department_id, title FROM departments";
+
+    public static final String GET_COURSE_IDS =
+        "SELECT course_id, course_no, title, capacity FROM courses";
+
+    public static final String GET_ENROLLMENTS =
+        "SELECT course_id, student_id FROM course_grades";
+
+    public static final String GET_ASSIGNMENT_KEYS =
+        "SELECT course_id, assignment_id, title, point_value FROM assignments";
+
+    public static final String GET_GRADE_KEYS =
+        "SELECT course_id, assignment_id, student_id FROM assignment_grades";
+
+    /*
+     * Inserts rows loaded by the CSV importer, which assigns the IDs itself.
+     */
+
+    public static final String IMPORT_USER =
+        "INSERT INTO users (user_id, account_type, username, auth, last_login) " +
+            "VALUES (?, ?, ?, ?, '0000-00-00 00:00:00.000')";
+
+    public static final String IMPORT_TEACHER =
+        "INSERT INTO teachers (teacher_id, first_name, last_name, department_id, user_id) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+    public static final String IMPORT_STUDENT =
+        "INSERT INTO students (student_id, first_name, last_name, graduation, grade_level, gpa, class_rank, user_id) " +
+            "VALUES (?, ?, ?, ?, ?, -1.0, 0, ?)";
+
+    public static final String IMPORT_COURSE =
+        "INSERT INTO courses (course_id, department_id, teacher_id, course_no, title, credit_hours, weight, enrollment, capacity) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, 0, ?)";
+
+    public static final String IMPORT_ENROLLMENT =
+        "INSERT INTO course_grades (course_id, student_id) " +
+            "VALUES (?, ?)";
+
+    public static final String IMPORT_ASSIGNMENT_GRADE =
+        "INSERT INTO assignment_grades (course_id, assignment_id, student_id, points_earned, points_possible, is_graded) " +
+            "VALUES (?, ?, ?, ?, ?, 1)";
+
+    /*
+     * Recounts every course's enrollment from course_grades.
+     */
+
+    public static final String UPDATE_ENROLLMENT_COUNTS =
+        "UPDATE courses " +
+            "SET enrollment = (SELECT COUNT(*) FROM course_grades WHERE course_grades.course_id = courses.course_id)";
+
+    /*
+     * Retrieves every enrolled student's course grades, grouped by student, for
+     * report cards. Ordering by student_id lets the scan follow the
+     * course_grades_by_student index, so only each student's few courses are sorted.
+     */
+
+    public static final String GET_REPORT_CARD_ROWS =
+        "SELECT students.student_id, students.first_name, students.last_name, students.grade_level, " +
+            "students.gpa, students.class_rank, courses.course_no, courses.title, courses.credit_hours, " +
+            "course_grades.mp1, course_grades.mp2, course_grades.midterm_exam, " +
+            "course_grades.mp3, course_grades.mp4, course_grades.final_exam, course_grades.grade " +
+        "FROM course_grades " +
+            "INNER JOIN courses ON courses.course_id = course_grades.course_id " +
+            "INNER JOIN students ON students.student_id = course_grades.student_id " +
+        "ORDER BY course_grades.student_id, courses.course_no";
+
+    /*
+     * Maintains courses.enrollment as students are added and dropped. The
+     * increment only succeeds while the course has a free seat.
+     */
+
+    public static final String GET_COURSE_SEATS =
+        "SELECT course_id, enrollment, capacity FROM courses";
+
+    public static final String INCREMENT_ENROLLMENT =
+        "UPDATE courses " +
+            "SET enrollment = enrollment + 1 " +
+        "WHERE course_id = ? AND enrollment < capacity";
+
+    public static final String DECREMENT_ENROLLMENT =
+        "UPDATE courses " +
+            "SET enrollment = enrollment - 1 " +
+        "WHERE course_id = ? AND enrollment > 0";
+
+    public static final String DELETE_ENROLLMENT =
+        "DELETE FROM course_grades " +
+            "WHERE course_id = ? AND student_id = ?";
+
+    public static final String DELETE_STUDENT_ASSIGNMENT_GRADES =
+        "DELETE FROM assignment_grades " +
+            "WHERE course_id = ? AND student_id = ?";
+
+    public static final String DELETE_TRANSCRIPT =
+        "DELETE FROM transcripts " +
+            "WHERE course_id = ? AND student_id = ?";
+
+    /*
+     * Retrieves every course number with the teacher who teaches it.
+     */
+
+    public static final String GET_COURSE_OWNERS =
+        "SELECT teacher_id, course_no FROM courses " +
+            "ORDER BY course_id";
+
+    /*
+     * Streams students, courses, and course grades into the off-heap roster store.
+     * Students and grades must come back in the same student order.
+     */
+
+    public static final String GET_ROSTER_COUNTS =
+        "SELECT (SELECT COUNT(*) FROM students) AS students, " +
+            "(SELECT COUNT(*) FROM course_grades) AS enrollments, " +
+            "(SELECT COUNT(*) FROM courses) AS courses";
+
+    public static final String GET_ROSTER_COURSES =
+        "SELECT course_id, department_id, course_no FROM courses " +
+            "ORDER BY course_id";
+
+    public static final String GET_ROSTER_STUDENTS =
+        "SELECT student_id, grade_level, gpa, class_rank FROM students " +
+            "ORDER BY student_id";
+
+    public static final String GET_ROSTER_GRADES =
+        "SELECT student_id, course_id, mp1, mp2, midterm_exam, mp3, mp4, final_exam, grade FROM course_grades " +
+            "ORDER BY student_id, course_id";
+
+    /*
+     * District-wide recompute of course grades and GPAs, reading every student in
+     * a student_id range (after a checkpoint, or one batch) in one pass.
+     */
+
+    public static final String GET_RECOMPUTE_COUNTS =
+        "SELECT (SELECT COUNT(*) FROM students WHERE student_id > ? AND student_id <= ?) AS students, " +
+            "(SELECT COUNT(*) FROM course_grades WHERE student_id > ? AND student_id <= ?) AS enrollments";
+
+    public static final String GET_RECOMPUTE_ROWS =
+        "SELECT students.student_id, students.gpa, course_grades.course_id, " +
+            "course_grades.mp1, course_grades.mp2, course_grades.midterm_exam, " +
+            "course_grades.mp3, course_grades.mp4, course_grades.final_exam, " +
+            "course_grades.grade, courses.credit_hours " +
+        "FROM students " +
+        "LEFT JOIN course_grades ON course_grades.student_id = students.student_id " +
+        "LEFT JOIN courses ON courses.course_id = course_grades.course_id " +
+        "WHERE students.student_id > ? AND students.student_id <= ? " +
+        "ORDER BY students.student_id, course_grades.course_id";
+
+    /*
+     * Running per-category totals of each student's graded assignments, by course
+     * and marking period. Each statement adds (sign 1) or subtracts (sign -1) the
+     * matching assignment_grades rows; subtract before deleting the grades.
+     */
+
+    private static final String CATEGORY_GRADE_DELTA =
+        "INSERT INTO category_grades (course_id, student_id, marking_period, category, graded, percent_sum) " +
+        "SELECT assignment_grades.course_id, assignment_grades.student_id, assignments.marking_period, assignments.category, " +
+            "SUM(?), SUM(? * assignment_grades.points_earned * 100.0 / assignment_grades.points_possible) " +
+        "FROM assignment_grades " +
+        "INNER JOIN assignments ON assignments.course_id = assignment_grades.course_id " +
+            "AND assignments.assignment_id = assignment_grades.assignment_id " +
+        "WHERE assignment_grades.is_graded = 1 AND assignment_grades.points_earned IS NOT NULL " +
+            "AND assignment_grades.course_id = ? AND assignment_grades.assignment_id = ? ";
+
+    private static final String CATEGORY_GRADE_UPSERT =
+        "GROUP BY assignment_grades.course_id, assignment_grades.student_id, assignments.marking_period, assignments.category " +
+        "ON CONFLICT (course_id, student_id, marking_period, category) DO UPDATE SET " +
+            "graded = graded + excluded.graded, percent_sum = percent_sum + excluded.percent_sum";
+
+    public static final String UPDATE_CATEGORY_GRADE =
+        CATEGORY_GRADE_DELTA + "AND assignment_grades.student_id = ? " + CATEGORY_GRADE_UPSERT;
+
+    public static final String UPDATE_CATEGORY_GRADES_BY_ASSIGNMENT =
+        CATEGORY_GRADE_DELTA + CATEGORY_GRADE_UPSERT;
+
+    public static final String DELETE_EMPTY_CATEGORY_GRADES =
+        "DELETE FROM category_grades WHERE course_id = ? AND graded <= 0";
+
+    public static final String DELETE_STUDENT_CATEGORY_GRADES =
+        "DELETE FROM category_grades WHERE course_id = ? AND student_id = ?";
+
+    public static final String DELETE_COURSE_CATEGORY_GRADES =
+        "DELETE FROM category_grades WHERE course_id = ?";
+
+    private static final String CATEGORY_GRADE_REBUILD =
+        "INSERT INTO category_grades (course_id, student_id, marking_period, category, graded, percent_sum) " +
+        "SELECT assignment_grades.course_id, assignment_grades.student_id, assignments.marking_period, assignments.category, " +
+            "COUNT(*), SUM(assignment_grades.points_earned * 100.0 / assignment_grades.points_possible) " +
+        "FROM assignment_grades " +
+        "INNER JOIN assignments ON assignments.course_id = assignment_grades.course_id " +
+            "AND assignments.assignment_id = assignment_grades.assignment_id " +
+        "WHERE assignment_grades.is_graded = 1 AND assignment_grades.points_earned IS NOT NULL ";
+
+    private static final String CATEGORY_GRADE_GROUPS =
+        "GROUP BY assignment_grades.course_id, assignment_grades.student_id, assignments.marking_period, assignments.category";
+
+    public static final String REBUILD_COURSE_CATEGORY_GRADES =
+        CATEGORY_GRADE_REBUILD + "AND assignment_grades.course_id = ? " + CATEGORY_GRADE_GROUPS;
+
+    private static final String CATEGORY_GRADE_SELECT =
+        "SELECT student_id, marking_period, category, graded, percent_sum FROM category_grades " +
+            "WHERE course_id = ? AND graded > 0 ";
+
+    public static final String GET_CATEGORY_GRADES_BY_COURSE =
+        CATEGORY_GRADE_SELECT + "ORDER BY student_id, marking_period";
+
+    public static final String GET_CATEGORY_GRADES_BY_STUDENT =
+        CATEGORY_GRADE_SELECT + "AND student_id = ? ORDER BY marking_period";
+
+    /*
+     * Deleting an assignment along with its grades, then recomputing what depended
+     * on them for the whole section.
+     */
+
+    public static final String DELETE_ASSIGNMENT_BY_ID =
+        "DELETE FROM assignments WHERE course_id = ? AND assignment_id = ?";
+
+    public static final String GET_SECTION_GPA_ROWS =
+        "SELECT course_grades.student_id, course_grades.grade, courses.credit_hours, students.gpa " +
+        "FROM course_grades " +
+        "INNER JOIN courses ON courses.course_id = course_grades.course_id " +
+        "INNER JOIN students ON students.student_id = course_grades.student_id " +
+        "WHERE course_grades.student_id IN (SELECT student_id FROM course_grades WHERE course_id = ?) " +
+        "ORDER BY course_grades.student_id, course_grades.course_id";
+
+    public static final String GET_STUDENT_GPA_ROWS =
+        "SELECT course_grades.student_id, course_grades.grade, courses.credit_hours, students.gpa " +
+        "FROM course_grades " +
+        "INNER JOIN courses ON courses.course_id = course_grades.course_id " +
+        "INNER JOIN students ON students.student_id = course_grades.student_id " +
+        "WHERE course_grades.student_id = ? " +
+        "ORDER BY course_grades.course_id";
+
+    /*
+     * Every assignment in a course, in the order the assignment lists show them.
+     * Uses the primary key, which leads with course_id.
+     */
+
+    public static final String GET_ASSIGNMENTS_BY_COURSE =
+        "SELECT * FROM assignments " +
+        "WHERE course_id = ? " +
+        "ORDER BY marking_period, assignment_id";
+
+    /*
+     * A section's roster in name order, each student paired with their grade on one
+     * assignment (NULLs where they haven't been graded). Takes the assignment_id,
+     * then the course_id.
+     */
+
+    public static final String GET_ROSTER_WITH_GRADES =
+        "SELECT students.student_id, students.first_name, students.last_name, " +
+            "assignment_grades.points_earned, assignment_grades.is_graded " +
+        "FROM course_grades " +
+        "INNER JOIN students ON students.student_id = course_grades.student_id " +
+        "LEFT JOIN assignment_grades ON assignment_grades.course_id = course_grades.course_id " +
+            "AND assignment_grades.student_id = course_grades.student_id AND assignment_grades.assignment_id = ? " +
+        "WHERE course_grades.course_id = ? " +
+        "ORDER BY students.last_name, students.first_name";
+
+    /*
+     * Building and patching per-course rosters. The roster query reads the
+     * course_grades primary key, which leads with course_id.
+     */
+
+    public static final String GET_COURSE_ROSTER =
+        "SELECT students.student_id, students.first_name, students.last_name, students.gpa " +
+        "FROM course_grades " +
+        "INNER JOIN students ON students.student_id = course_grades.student_id " +
+        "WHERE course_grades.course_id = ? " +
+        "ORDER BY students.last_name, students.first_name, students.student_id";
+
+    /*
+     * Brings a database created by an older setup.sql up to date. Each statement
+     * can be run any number of times.
+     */
+
+    public static final String MIGRATE_TRANSCRIPTS =
+        "CREATE TABLE IF NOT EXISTS transcripts (" +
+            "student_id INTEGER NOT NULL, course_id INTEGER NOT NULL, course_no TEXT NOT NULL, " +
+            "title TEXT NOT NULL, credit_hours REAL NOT NULL, mp1 REAL, mp2 REAL, midterm_exam REAL, " +
+            "mp3 REAL, mp4 REAL, final_exam REAL, grade REAL, " +
+            "PRIMARY KEY (student_id, course_id), " +
+            "FOREIGN KEY (student_id) REFERENCES students (student_id), " +
+            "FOREIGN KEY (course_id) REFERENCES courses (course_id))";
+
+    public static final String SEED_TRANSCRIPTS =
+        TRANSCRIPT_SELECT +
+        "WHERE NOT EXISTS (SELECT 1 FROM transcripts)";
+
+    public static final String MIGRATE_ASSIGNMENT_GRADES_INDEX =
+        "CREATE INDEX IF NOT EXISTS assignment_grades_by_student ON assignment_grades (student_id, course_id)";
+
+    public static final String MIGRATE_COURSE_GRADES_INDEX =
+        "CREATE INDEX IF NOT EXISTS course_grades_by_student ON course_grades (student_id, course_id)";
+
+    public static final String RECOUNT_ENROLLMENT =
+        "UPDATE courses SET enrollment = " +
+            "(SELECT COUNT(*) FROM course_grades WHERE course_grades.course_id = courses.course_id)";
+
+    public static final String HAS_COLUMN =
+        "SELECT COUNT(*) AS found FROM pragma_table_info(?) WHERE name = ?";
+
+    public static final String MIGRATE_ASSIGNMENT_CATEGORY =
+        "ALTER TABLE assignments ADD COLUMN category TEXT NOT NULL DEFAULT 'general'";
+
+    public static final String DROP_CATEGORY_GRADES =
+        "DROP TABLE IF EXISTS category_grades";
+
+    public static final String MIGRATE_CATEGORY_GRADES =
+        "CREATE TABLE IF NOT EXISTS category_grades (" +
+            "course_id INTEGER NOT NULL, student_id INTEGER NOT NULL, marking_period INTEGER NOT NULL, " +
+            "category TEXT NOT NULL, graded INTEGER NOT NULL, percent_sum REAL NOT NULL, " +
+            "PRIMARY KEY (course_id, student_id, marking_period, category), " +
+            "FOREIGN KEY (course_id) REFERENCES courses (course_id), " +
+            "FOREIGN KEY (student_id) REFERENCES students (student_id))";
+
+    public static final String SEED_CATEGORY_GRADES =
+        CATEGORY_GRADE_REBUILD + "AND NOT EXISTS (SELECT 1 FROM category_grades) " + CATEGORY_GRADE_GROUPS;
+
+    /*
+     * Enters or replaces one student's grade on an assignment, reading the grade
+     * it replaces first.
+     */
+
+    public static final String GET_ASSIGNMENT_GRADE =
+        "SELECT points_earned FROM assignment_grades " +
+            "WHERE course_id = ? AND assignment_id = ? AND student_id = ?";
 
-}
\ No newline at end of file
+    public static final String UPSERT_ASSIGNMENT_GRADE =
+        "INSERT INTO assignment_grades (course_id, assignment_id, student_id, points_earned, points_possible, is_graded) " +
+            "VALUES (?, ?, ?, ?, ?, 1) " +
+        "ON CONFLICT (course_id, assignment_id, student_id) DO UPDATE " +
+            "SET points_earned = excluded.points_earned, points_possible = excluded.points_possible, is_graded = 1";
+}
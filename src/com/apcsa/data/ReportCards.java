@@ -0,0 +1,277 @@
+package com.apcsa.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Generates a report card for every enrolled student.
+ *
+ * Rows come from a single scan over course_grades joined with courses and
+ * students, ordered by student, so each report card is complete as soon as the
+ * next student's first row arrives. Finished report cards are rendered and
+ * written by a small pool of writer threads. The pool's queue is bounded and the
+ * scanning thread renders cards itself when the queue is full, so only a
+ * handful of students are held in memory at any time.
+ */
+
+public class ReportCards {
+
+    private final static int WRITERS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private final static int QUEUE_CAPACITY = 64;
+    private final static String[] TERMS = { "MP1", "MP2", "Midterm", "MP3", "MP4", "Final", "Grade" };
+
+    public enum Format {
+        TEXT("txt"),
+        CSV("csv"),
+        HTML("html");
+
+        private final String extension;
+
+        private Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    /*
+     * One course on a report card.
+     */
+
+    private static class Line {
+        private String courseNo;
+        private String title;
+        private double creditHours;
+        private Double[] grades = new Double[TERMS.length];
+    }
+
+    /*
+     * One student's report card.
+     */
+
+    private static class Card {
+        private int studentId;
+        private String firstName;
+        private String lastName;
+        private int gradeLevel;
+        private double gpa;
+        private int classRank;
+        private ArrayList<Line> lines = new ArrayList<Line>();
+    }
+
+    /**
+     * Writes one report card file per student into a directory.
+     *
+     * @param format the file format
+     * @param directory where to write the report cards; created if needed
+     * @return the number of report cards written
+     * @throws SQLException if the grades can't be read
+     * @throws IOException if a report card can't be written
+     */
+
+    public static int generate(Format format, File directory) throws SQLException, IOException {
+        directory.mkdirs();
+        GpaUpdates.flush();
+
+        ThreadPoolExecutor writers = new ThreadPoolExecutor(WRITERS, WRITERS, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadPoolExecutor.CallerRunsPolicy());
+        AtomicReference<IOException> failure = new AtomicReference<IOException>();
+        int count = 0;
+
+        try (Connection conn = PowerSchool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(QueryUtils.GET_REPORT_CARD_ROWS)) {
+
+            Card card = null;
+
+            while (rs.next() && failure.get() == null) {
+                int studentId = rs.getInt("student_id");
+
+                if (card == null || card.studentId != studentId) {
+                    if (card != null) {
+                        submit(writers, card, format, directory, failure);
+                        count++;
+                    }
+
+                    card = new Card();
+                    card.studentId = studentId;
+                    card.firstName = rs.getString("first_name");
+                    card.lastName = rs.getString("last_name");
+                    card.gradeLevel = rs.getInt("grade_level");
+                    card.gpa = rs.getDouble("gpa");
+                    card.classRank = rs.getInt("class_rank");
+                }
+
+                Line line = new Line();
+                line.courseNo = rs.getString("course_no");
+                line.title = rs.getString("title");
+                line.creditHours = rs.getDouble("credit_hours");
+                line.grades[0] = getGrade(rs, "mp1");
+                line.grades[1] = getGrade(rs, "mp2");
+                line.grades[2] = getGrade(rs, "midterm_exam");
+                line.grades[3] = getGrade(rs, "mp3");
+                line.grades[4] = getGrade(rs, "mp4");
+                line.grades[5] = getGrade(rs, "final_exam");
+                line.grades[6] = getGrade(rs, "grade");
+                card.lines.add(line);
+            }
+
+            if (card != null && failure.get() == null) {
+                submit(writers, card, format, directory, failure);
+                count++;
+            }
+        } finally {
+            writers.shutdown();
+
+            try {
+                writers.awaitTermination(1, TimeUnit.HOURS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        return count;
+    }
+
+    /*
+     * Hands a finished report card to the writer pool.
+     */
+
+    private static void submit(ThreadPoolExecutor writers, Card card, Format format, File directory,
+            AtomicReference<IOException> failure) {
+
+        writers.execute(() -> {
+            File file = new File(directory, String.format("%06d-%s.%s", card.studentId,
+                card.lastName.replaceAll("[^A-Za-z0-9-]", ""), format.extension));
+
+            try {
+                Files.write(file.toPath(), render(card, format).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+    }
+
+    /*
+     * Renders a report card in the requested format.
+     */
+
+    private static String render(Card card, Format format) {
+        StringBuilder out = new StringBuilder(1024);
+        String name = card.lastName + ", " + card.firstName;
+
+        switch (format) {
+            case TEXT:
+                out.append("Report Card: ").append(name).append('\n');
+                out.append("Grade ").append(card.gradeLevel)
+                    .append(" / GPA ").append(formatGpa(card.gpa))
+                    .append(" / Rank ").append(card.classRank > 0 ? String.valueOf(card.classRank) : "--")
+                    .append("\n\n");
+                out.append(String.format("%-8s %-40s", "Course", "Title"));
+                for (String term : TERMS) {
+                    out.append(String.format(" %7s", term));
+                }
+                out.append('\n');
+
+                for (Line line : card.lines) {
+                    out.append(String.format("%-8s %-40s", line.courseNo, line.title));
+                    for (Double grade : line.grades) {
+                        out.append(String.format(" %7s", formatGrade(grade)));
+                    }
+                    out.append('\n');
+                }
+                break;
+            case CSV:
+                out.append("student_id,last_name,first_name,grade_level,gpa,class_rank,course_no,title,credit_hours");
+                for (String term : TERMS) {
+                    out.append(',').append(term.toLowerCase());
+                }
+                out.append('\n');
+
+                for (Line line : card.lines) {
+                    out.append(card.studentId).append(',')
+                        .append(csv(card.lastName)).append(',')
+                        .append(csv(card.firstName)).append(',')
+                        .append(card.gradeLevel).append(',')
+                        .append(card.gpa < 0 ? "" : String.valueOf(card.gpa)).append(',')
+                        .append(card.classRank).append(',')
+                        .append(csv(line.courseNo)).append(',')
+                        .append(csv(line.title)).append(',')
+                        .append(line.creditHours);
+                    for (Double grade : line.grades) {
+                        out.append(',').append(grade == null ? "" : String.valueOf(grade));
+                    }
+                    out.append('\n');
+                }
+                break;
+            case HTML:
+                out.append("<!DOCTYPE html>\n<html>\n<head><meta charset=\"utf-8\"><title>Report Card: ")
+                    .append(html(name)).append("</title></head>\n<body>\n");
+                out.append("<h1>").append(html(name)).append("</h1>\n");
+                out.append("<p>Grade ").append(card.gradeLevel)
+                    .append(" &middot; GPA ").append(formatGpa(card.gpa))
+                    .append(" &middot; Rank ").append(card.classRank > 0 ? String.valueOf(card.classRank) : "--")
+                    .append("</p>\n");
+                out.append("<table>\n<tr><th>Course</th><th>Title</th>");
+                for (String term : TERMS) {
+                    out.append("<th>").append(term).append("</th>");
+                }
+                out.append("</tr>\n");
+
+                for (Line line : card.lines) {
+                    out.append("<tr><td>").append(html(line.courseNo)).append("</td><td>").append(html(line.title)).append("</td>");
+                    for (Double grade : line.grades) {
+                        out.append("<td>").append(formatGrade(grade)).append("</td>");
+                    }
+                    out.append("</tr>\n");
+                }
+                out.append("</table>\n</body>\n</html>\n");
+                break;
+        }
+
+        return out.toString();
+    }
+
+    /*
+     * Reads a nullable grade column.
+     */
+
+    private static Double getGrade(ResultSet rs, String column) throws SQLException {
+        double grade = rs.getDouble(column);
+
+        return rs.wasNull() ? null : grade;
+    }
+
+    private static String formatGrade(Double grade) {
+        return grade == null || grade < 0 ? "--" : String.format("%.1f", grade);
+    }
+
+    private static String formatGpa(double gpa) {
+        return gpa < 0 ? "--" : String.format("%.2f", gpa);
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String html(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
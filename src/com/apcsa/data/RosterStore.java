@@ -0,0 +1,338 @@
+package com.apcsa.data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+
+/**
+ * A read-only, column-oriented snapshot of every student and every course grade,
+ * held outside the Java heap.
+ *
+ * Students and enrollments are stored as two tables of fixed-width columns in
+ * direct buffers: one row per student (ID, grade level, GPA, class rank) and one
+ * row per course_grades row (student row, course index, and the seven term
+ * grades as floats, NaN where missing). Enrollments are sorted by student, so a
+ * student's courses are one contiguous range. Scans are plain counted loops over
+ * primitive columns. A snapshot of 100,000 students creates a few dozen objects,
+ * no matter how many rows it holds.
+ *
+ * Snapshots are loaded in one streaming pass and never change. Load a new one to
+ * see newer data.
+ */
+
+public class RosterStore {
+
+    public final static int MP1 = 0;
+    public final static int MP2 = 1;
+    public final static int MIDTERM = 2;
+    public final static int MP3 = 3;
+    public final static int MP4 = 4;
+    public final static int FINAL = 5;
+    public final static int GRADE = 6;
+    public final static int TERMS = 7;
+
+    private final static String[] TERM_COLUMNS = { "mp1", "mp2", "midterm_exam", "mp3", "mp4", "final_exam", "grade" };
+
+    private final int students;
+    private final int enrollments;
+
+    // student columns
+
+    private final IntBuffer studentIds;
+    private final IntBuffer gradeLevels;
+    private final DoubleBuffer gpas;
+    private final IntBuffer classRanks;
+    private final IntBuffer firstEnrollment;     // students + 1 entries
+
+    // enrollment columns
+
+    private final IntBuffer enrollmentStudents;  // student row, not student_id
+    private final IntBuffer enrollmentCourses;   // course index, not course_id
+    private final FloatBuffer[] grades = new FloatBuffer[TERMS];
+
+    // courses (few enough to keep on the heap)
+
+    private final int[] courseIds;
+    private final int[] departmentIds;
+    private final String[] courseNumbers;
+
+    private RosterStore(int students, int enrollments, int courses) {
+        this.students = students;
+        this.enrollments = enrollments;
+
+        this.studentIds = allocate(students * 4).asIntBuffer();
+        this.gradeLevels = allocate(students * 4).asIntBuffer();
+        this.gpas = allocate(students * 8).asDoubleBuffer();
+        this.classRanks = allocate(students * 4).asIntBuffer();
+        this.firstEnrollment = allocate((students + 1) * 4).asIntBuffer();
+
+        this.enrollmentStudents = allocate(enrollments * 4).asIntBuffer();
+        this.enrollmentCourses = allocate(enrollments * 4).asIntBuffer();
+        for (int t = 0; t < TERMS; t++) {
+            grades[t] = allocate(enrollments * 4).asFloatBuffer();
+        }
+
+        this.courseIds = new int[courses];
+        this.departmentIds = new int[courses];
+        this.courseNumbers = new String[courses];
+    }
+
+    /**
+     * Loads a snapshot of every student and course grade.
+     *
+     * @return the snapshot
+     * @throws SQLException
+     */
+
+    public static RosterStore load() throws SQLException {
+        try (Connection conn = PowerSchool.getConnection()) {
+
+            // read everything in one transaction so the counts match the rows
+
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                return load(stmt);
+            } finally {
+                conn.rollback();
+            }
+        }
+    }
+
+    private static RosterStore load(Statement stmt) throws SQLException {
+        RosterStore store;
+
+        try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_ROSTER_COUNTS)) {
+            rs.next();
+            store = new RosterStore(rs.getInt("students"), rs.getInt("enrollments"), rs.getInt("courses"));
+        }
+
+        HashMap<Integer, Integer> courseIndex = new HashMap<Integer, Integer>();
+        try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_ROSTER_COURSES)) {
+            for (int c = 0; rs.next() && c < store.courseIds.length; c++) {
+                store.courseIds[c] = rs.getInt("course_id");
+                store.departmentIds[c] = rs.getInt("department_id");
+                store.courseNumbers[c] = rs.getString("course_no");
+                courseIndex.put(store.courseIds[c], c);
+            }
+        }
+
+        try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_ROSTER_STUDENTS)) {
+            for (int s = 0; rs.next() && s < store.students; s++) {
+                int studentId = rs.getInt("student_id");
+
+                store.studentIds.put(s, studentId);
+                store.gradeLevels.put(s, rs.getInt("grade_level"));
+                store.gpas.put(s, rs.getDouble("gpa"));
+                store.classRanks.put(s, rs.getInt("class_rank"));
+            }
+        }
+
+        // enrollments arrive ordered by student_id, the same order as the student
+        // rows, so the two are merged without a lookup table
+
+        int e = 0;
+        int s = 0;
+        int next = 0;
+        try (ResultSet rs = stmt.executeQuery(QueryUtils.GET_ROSTER_GRADES)) {
+            while (rs.next() && e < store.enrollments) {
+                int studentId = rs.getInt("student_id");
+                Integer c = courseIndex.get(rs.getInt("course_id"));
+
+                while (s < store.students && store.studentIds.get(s) < studentId) {
+                    s++;
+                }
+                if (s == store.students || store.studentIds.get(s) != studentId || c == null) {
+                    continue;
+                }
+
+                while (next <= s) {
+                    store.firstEnrollment.put(next++, e);
+                }
+
+                store.enrollmentStudents.put(e, s);
+                store.enrollmentCourses.put(e, c);
+                for (int t = 0; t < TERMS; t++) {
+                    float grade = rs.getFloat(TERM_COLUMNS[t]);
+                    store.grades[t].put(e, rs.wasNull() ? Float.NaN : grade);
+                }
+                e++;
+            }
+        }
+
+        while (next <= store.students) {
+            store.firstEnrollment.put(next++, e);
+        }
+
+        return e == store.enrollments ? store : store.truncate(e);
+    }
+
+    /*
+     * Drops enrollment rows that were skipped while loading.
+     */
+
+    private RosterStore truncate(int used) {
+        RosterStore copy = new RosterStore(students, used, courseIds.length);
+
+        for (int s = 0; s < students; s++) {
+            copy.studentIds.put(s, studentIds.get(s));
+            copy.gradeLevels.put(s, gradeLevels.get(s));
+            copy.gpas.put(s, gpas.get(s));
+            copy.classRanks.put(s, classRanks.get(s));
+        }
+        for (int s = 0; s <= students; s++) {
+            copy.firstEnrollment.put(s, firstEnrollment.get(s));
+        }
+        for (int e = 0; e < used; e++) {
+            copy.enrollmentStudents.put(e, enrollmentStudents.get(e));
+            copy.enrollmentCourses.put(e, enrollmentCourses.get(e));
+            for (int t = 0; t < TERMS; t++) {
+                copy.grades[t].put(e, grades[t].get(e));
+            }
+        }
+        System.arraycopy(courseIds, 0, copy.courseIds, 0, courseIds.length);
+        System.arraycopy(departmentIds, 0, copy.departmentIds, 0, departmentIds.length);
+        System.arraycopy(courseNumbers, 0, copy.courseNumbers, 0, courseNumbers.length);
+
+        return copy;
+    }
+
+    /**
+     * @return the number of student rows
+     */
+
+    public int getStudentCount() {
+        return students;
+    }
+
+    /**
+     * @return the number of enrollment rows
+     */
+
+    public int getEnrollmentCount() {
+        return enrollments;
+    }
+
+    /**
+     * @return the number of courses
+     */
+
+    public int getCourseCount() {
+        return courseIds.length;
+    }
+
+    public int getStudentId(int student) {
+        return studentIds.get(student);
+    }
+
+    public int getGradeLevel(int student) {
+        return gradeLevels.get(student);
+    }
+
+    public double getGpa(int student) {
+        return gpas.get(student);
+    }
+
+    public int getClassRank(int student) {
+        return classRanks.get(student);
+    }
+
+    /**
+     * @param student a student row
+     * @return the first of the student's enrollment rows
+     */
+
+    public int getFirstEnrollment(int student) {
+        return firstEnrollment.get(student);
+    }
+
+    /**
+     * @param student a student row
+     * @return one past the last of the student's enrollment rows
+     */
+
+    public int getEndEnrollment(int student) {
+        return firstEnrollment.get(student + 1);
+    }
+
+    /**
+     * @param enrollment an enrollment row
+     * @return the enrolled student's row
+     */
+
+    public int getStudent(int enrollment) {
+        return enrollmentStudents.get(enrollment);
+    }
+
+    /**
+     * @param enrollment an enrollment row
+     * @return the course index (not the course_id)
+     */
+
+    public int getCourse(int enrollment) {
+        return enrollmentCourses.get(enrollment);
+    }
+
+    /**
+     * @param enrollment an enrollment row
+     * @param term one of MP1, MP2, MIDTERM, MP3, MP4, FINAL, or GRADE
+     * @return the grade, or NaN if there isn't one
+     */
+
+    public float getGrade(int enrollment, int term) {
+        return grades[term].get(enrollment);
+    }
+
+    public int getCourseId(int course) {
+        return courseIds[course];
+    }
+
+    public int getDepartmentId(int course) {
+        return departmentIds[course];
+    }
+
+    public String getCourseNumber(int course) {
+        return courseNumbers[course];
+    }
+
+    /**
+     * Counts a range of enrollment rows into per-course histograms of one term's
+     * grades. Missing grades are skipped. Grades outside the buckets (below zero,
+     * or above 100 with extra credit) are counted in the first or last bucket.
+     *
+     * @param term the term
+     * @param from the first enrollment row
+     * @param to one past the last enrollment row
+     * @param buckets one histogram per course index; grades are bucketed by tens (0-9, 10-19, ..., 90-100)
+     */
+
+    public void histogram(int term, int from, int to, long[][] buckets) {
+        FloatBuffer column = grades[term];
+
+        for (int e = from; e < to; e++) {
+            float grade = column.get(e);
+
+            if (grade == grade) {       // not NaN
+                long[] course = buckets[enrollmentCourses.get(e)];
+                int last = course.length - 1;
+                int bucket = (int) (grade / 10);
+
+                course[bucket < 0 ? 0 : bucket > last ? last : bucket]++;
+            }
+        }
+    }
+
+    /*
+     * Allocates a zeroed off-heap buffer in native byte order.
+     */
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(Math.max(bytes, 0)).order(ByteOrder.nativeOrder());
+    }
+}
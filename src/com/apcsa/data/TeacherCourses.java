@@ -0,0 +1,100 @@
+package com.apcsa.data;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory index from each teacher to the course numbers of the sections they
+ * teach (courses.teacher_id). The whole index is loaded with one query the first
+ * time it's needed and thrown away whenever a course is added or the database is
+ * reset, so a teacher's course picker never has to query the database. A load
+ * that overlaps an invalidation isn't kept.
+ */
+
+public class TeacherCourses {
+
+    private static volatile HashMap<Integer, List<String>> index;
+    private static AtomicLong generation = new AtomicLong();       // bumped by every invalidation
+    private static boolean subscribed;
+
+    /**
+     * Looks up the courses a teacher teaches.
+     *
+     * @param teacherId the teacher
+     * @return the teacher's course numbers in course order; never null
+     */
+
+    public static List<String> get(int teacherId) {
+        HashMap<Integer, List<String>> current = index;
+
+        if (current == null) {
+            current = load();
+        }
+
+        List<String> courses = current.get(teacherId);
+
+        return courses != null ? courses : Collections.<String>emptyList();
+    }
+
+    /**
+     * Discards the index so the next lookup reloads it.
+     */
+
+    public static void invalidate() {
+        generation.incrementAndGet();
+        index = null;
+    }
+
+    /*
+     * Loads the index and starts listening for changes to it.
+     */
+
+    private static synchronized HashMap<Integer, List<String>> load() {
+        if (!subscribed) {
+            subscribed = true;
+            DataEvents.subscribe("teacher-courses", event -> {
+                if (event.getType() == DataEvent.Type.COURSE_ADDED || event.getType() == DataEvent.Type.RESET) {
+                    invalidate();
+                }
+            });
+        }
+
+        if (index != null) {
+            return index;
+        }
+
+        long loadedAt = generation.get();
+        HashMap<Integer, ArrayList<String>> loaded = new HashMap<Integer, ArrayList<String>>();
+
+        try (Connection conn = PowerSchool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(QueryUtils.GET_COURSE_OWNERS)) {
+
+            while (rs.next()) {
+                loaded.computeIfAbsent(rs.getInt("teacher_id"), k -> new ArrayList<String>()).add(rs.getString("course_no"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new HashMap<Integer, List<String>>();    // try again next time
+        }
+
+        HashMap<Integer, List<String>> built = new HashMap<Integer, List<String>>();
+        for (Integer teacherId : loaded.keySet()) {
+            built.put(teacherId, Collections.unmodifiableList(loaded.get(teacherId)));
+        }
+
+        index = built;
+        if (generation.get() != loadedAt) {
+            index = null;       // invalidated while loading; reload next time
+        }
+
+        return built;
+    }
+}
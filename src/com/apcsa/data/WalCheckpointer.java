@@ -0,0 +1,122 @@
+package com.apcsa.data;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs periodic passive WAL checkpoints in the background and remembers how far
+ * the last one got, so the checkpoint lag can be reported.
+ */
+
+public class WalCheckpointer {
+
+    private static ScheduledExecutorService scheduler;
+    private static int interval;        // seconds; 0 when stopped
+
+    private static volatile int walFrames;
+    private static volatile int checkpointedFrames;
+    private static volatile boolean busy;
+    private static volatile long lastCheckpoint;
+
+    /**
+     * Starts checkpointing on a fixed interval. Calling this again has no effect.
+     *
+     * @param intervalSeconds the number of seconds between checkpoints
+     */
+
+    public static synchronized void start(int intervalSeconds) {
+        if (scheduler != null) {
+            return;
+        }
+
+        interval = intervalSeconds;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "wal-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(WalCheckpointer::checkpoint, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the background checkpoints and waits for one that is running to finish.
+     *
+     * @return the interval they ran at, in seconds, or 0 if they weren't running
+     */
+
+    public static int stop() {
+        ScheduledExecutorService stopped;
+        int stoppedInterval;
+
+        synchronized (WalCheckpointer.class) {
+            if (scheduler == null) {
+                return 0;
+            }
+
+            stopped = scheduler;
+            stoppedInterval = interval;
+            scheduler = null;
+            interval = 0;
+        }
+
+        stopped.shutdown();
+        try {
+            stopped.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return stoppedInterval;
+    }
+
+    /**
+     * Copies as many WAL frames as possible back into the database file without
+     * waiting on readers or writers.
+     */
+
+    public static void checkpoint() {
+        try (Connection conn = PowerSchool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA wal_checkpoint(PASSIVE)")) {
+
+            if (rs.next()) {
+                busy = rs.getInt(1) != 0;
+                walFrames = rs.getInt(2);
+                checkpointedFrames = rs.getInt(3);
+                lastCheckpoint = System.currentTimeMillis();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the number of WAL frames not yet copied into the database file
+     */
+
+    public static int getLag() {
+        return Math.max(walFrames - checkpointedFrames, 0);
+    }
+
+    /**
+     * Describes the outcome of the most recent checkpoint.
+     *
+     * @return a one-line status report
+     */
+
+    public static String getStatus() {
+        if (lastCheckpoint == 0) {
+            return "No checkpoint has run yet.";
+        }
+
+        long age = (System.currentTimeMillis() - lastCheckpoint) / 1000;
+
+        return "Last checkpoint " + age + "s ago: " + checkpointedFrames + " of " + walFrames
+            + " WAL frames copied (lag " + getLag() + (busy ? ", blocked by a busy connection" : "") + ").";
+    }
+}
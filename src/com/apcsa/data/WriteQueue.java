@@ -0,0 +1,313 @@
+package com.apcsa.data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes every database mutation through a single writer thread and a single
+ * connection. Writes that arrive within a few milliseconds of each other are
+ * committed together in one transaction (group commit), and each write runs
+ * inside its own savepoint so one failure doesn't undo its neighbours.
+ */
+
+public class WriteQueue {
+
+    private final static int COMMIT_WINDOW = 5;         // milliseconds
+    private final static int MAX_BATCH = 256;
+
+    private static LinkedBlockingQueue<Task> queue = new LinkedBlockingQueue<Task>();
+    private static ArrayList<DataEvent> pending = new ArrayList<DataEvent>();     // writer thread only
+    private static Thread writer;
+
+    /**
+     * A unit of work run on the writer connection. Returning a negative value rolls
+     * back just this write; returning anything else keeps it.
+     */
+
+    @FunctionalInterface
+    public interface Write {
+        int apply(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Work that needs the database to itself, such as replacing the data file. It
+     * runs on the writer thread while the writer connection is closed.
+     */
+
+    @FunctionalInterface
+    public interface Exclusive {
+        int run() throws Exception;
+    }
+
+    private static class Task {
+        private Write write;
+        private Exclusive exclusive;
+        private CompletableFuture<Integer> result = new CompletableFuture<Integer>();
+
+        private Task(Write write, Exclusive exclusive) {
+            this.write = write;
+            this.exclusive = exclusive;
+        }
+    }
+
+    /**
+     * Queues a write without waiting for it.
+     *
+     * @param write the write to run
+     * @return a future completed with the write's result once it has been committed
+     */
+
+    public static CompletableFuture<Integer> submit(Write write) {
+        Task task = new Task(write, null);
+
+        startWriter();
+        queue.add(task);
+
+        return task.result;
+    }
+
+    /**
+     * Runs work with exclusive use of the database and waits for it to finish.
+     * Every write queued before it is committed first, and no write queued after
+     * it starts until it is done.
+     *
+     * @param exclusive the work to run
+     * @return the work's result, or -1 if it failed
+     */
+
+    public static int runExclusive(Exclusive exclusive) {
+        Task task = new Task(null, exclusive);
+
+        startWriter();
+        queue.add(task);
+
+        try {
+            return task.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+
+        return -1;
+    }
+
+    /**
+     * Queues a write and waits until it has been committed.
+     *
+     * @param write the write to run
+     * @return the write's result, or -1 if it failed
+     */
+
+    public static int execute(Write write) {
+        try {
+            return submit(write).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+
+        return -1;
+    }
+
+    /**
+     * Records an event to publish once the current write has been committed. Must be
+     * called from inside a Write; the event is dropped if the write is rolled back.
+     *
+     * @param event the event
+     */
+
+    public static void publishOnCommit(DataEvent event) {
+        if (Thread.currentThread() != writer) {
+            throw new IllegalStateException("Events can only be recorded from inside a write.");
+        }
+
+        pending.add(event);
+    }
+
+    /*
+     * Starts the writer thread the first time a write is queued.
+     */
+
+    private static synchronized void startWriter() {
+        if (writer == null) {
+            writer = new Thread(WriteQueue::run, "sqlite-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /*
+     * Takes queued writes in batches and commits each batch as one transaction.
+     * Interrupts are ignored; returning would strand every queued task.
+     */
+
+    private static void run() {
+        Connection conn = null;
+
+        while (true) {
+            ArrayList<Task> batch = new ArrayList<Task>();
+            Task exclusive = null;
+
+            try {
+                Task first = queue.take();
+
+                // collect whatever else arrives within the commit window, stopping
+                // at the first exclusive task
+
+                if (first.exclusive != null) {
+                    exclusive = first;
+                } else {
+                    batch.add(first);
+
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(COMMIT_WINDOW);
+                    while (batch.size() < MAX_BATCH) {
+                        Task next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+                        if (next == null) {
+                            break;
+                        } else if (next.exclusive != null) {
+                            exclusive = next;
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // the writer never stops, since startWriter() won't replace it:
+                // commit whatever was already taken and keep serving the queue
+            }
+
+            try {
+                if (!batch.isEmpty()) {
+                    conn = commitBatch(conn, batch);
+                }
+            } catch (Throwable e) {
+                // never let one bad write kill the writer: fail whatever is left of
+                // the batch, drop the connection, and keep serving the queue
+
+                pending.clear();
+                for (Task task : batch) {
+                    task.result.completeExceptionally(e);
+                }
+                conn = discard(conn);
+            }
+
+            if (exclusive != null) {
+                conn = discard(conn);
+
+                try {
+                    exclusive.result.complete(exclusive.exclusive.run());
+                } catch (Throwable e) {
+                    exclusive.result.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /*
+     * Commits one batch, opening the writer connection if needed.
+     *
+     * @return the connection to use for the next batch, or null if it was discarded
+     */
+
+    private static Connection commitBatch(Connection conn, ArrayList<Task> batch) {
+        try {
+            if (conn == null || conn.isClosed()) {
+                conn = PowerSchool.getConnection();
+                conn.setAutoCommit(false);
+            }
+
+            commit(conn, batch);
+        } catch (SQLException e) {
+            pending.clear();
+
+            for (Task task : batch) {
+                task.result.completeExceptionally(e);
+            }
+
+            // discard the connection (and any uncommitted work) and start over
+
+            conn = discard(conn);
+        }
+
+        return conn;
+    }
+
+    /*
+     * Closes the writer connection, rolling back anything uncommitted.
+     *
+     * @return null, for assigning back to the connection
+     */
+
+    private static Connection discard(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException ignored) {
+            }
+        }
+
+        return null;
+    }
+
+    /*
+     * Runs one batch of writes, each behind a savepoint, and commits them together.
+     */
+
+    private static void commit(Connection conn, ArrayList<Task> batch) throws SQLException {
+        int[] results = new int[batch.size()];
+        Exception[] errors = new Exception[batch.size()];
+
+        for (int i = 0; i < batch.size(); i++) {
+            Savepoint savepoint = conn.setSavepoint();
+            int events = pending.size();
+
+            try {
+                results[i] = batch.get(i).write.apply(conn);
+
+                if (results[i] < 0) {
+                    conn.rollback(savepoint);
+                    pending.subList(events, pending.size()).clear();
+                } else {
+                    conn.releaseSavepoint(savepoint);
+                }
+            } catch (SQLException | RuntimeException e) {
+                errors[i] = e;
+                conn.rollback(savepoint);
+                pending.subList(events, pending.size()).clear();
+            }
+        }
+
+        conn.commit();
+
+        // the batch is durable now; a listener failure must not fail its writes
+
+        for (DataEvent event : pending) {
+            try {
+                QueryCache.invalidate(event);
+                CourseRosters.onCommit(event);
+                Analytics.onCommit(event);
+                DataEvents.publish(event);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        pending.clear();
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (errors[i] != null) {
+                batch.get(i).result.completeExceptionally(errors[i]);
+            } else {
+                batch.get(i).result.complete(results[i]);
+            }
+        }
+    }
+}
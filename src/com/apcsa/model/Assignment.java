@@ -0,0 +1,90 @@
+package com.apcsa.model;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A read-only view of one assignment.
+ */
+
+public class Assignment {
+
+    private final int assignmentId;
+    private final int courseId;
+    private final int markingPeriod;
+    private final boolean midterm;
+    private final boolean finalExam;
+    private final String title;
+    private final int pointValue;
+    private final String category;
+
+    /**
+     * Creates an instance of the Assignment class.
+     *
+     * @param rs a ResultSet positioned on an assignments row
+     * @throws SQLException
+     */
+
+    public Assignment(ResultSet rs) throws SQLException {
+        this(rs.getInt("assignment_id"), rs.getInt("course_id"), rs.getInt("marking_period"), rs.getInt("is_midterm") == 1,
+            rs.getInt("is_final") == 1, rs.getString("title"), rs.getInt("point_value"), rs.getString("category"));
+    }
+
+    /**
+     * Creates an instance of the Assignment class.
+     *
+     * @param assignmentId the assignment
+     * @param courseId the course
+     * @param markingPeriod 1-4, or 5 for the midterm and 6 for the final
+     * @param midterm whether this is the midterm exam
+     * @param finalExam whether this is the final exam
+     * @param title the title
+     * @param pointValue the points possible
+     * @param category the assignment category
+     */
+
+    public Assignment(int assignmentId, int courseId, int markingPeriod, boolean midterm, boolean finalExam, String title,
+            int pointValue, String category) {
+
+        this.assignmentId = assignmentId;
+        this.courseId = courseId;
+        this.markingPeriod = markingPeriod;
+        this.midterm = midterm;
+        this.finalExam = finalExam;
+        this.title = title;
+        this.pointValue = pointValue;
+        this.category = category;
+    }
+
+    public int getAssignmentId() {
+        return assignmentId;
+    }
+
+    public int getCourseId() {
+        return courseId;
+    }
+
+    public int getMarkingPeriod() {
+        return markingPeriod;
+    }
+
+    public boolean isMidterm() {
+        return midterm;
+    }
+
+    public boolean isFinal() {
+        return finalExam;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public int getPointValue() {
+        return pointValue;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+}
@@ -0,0 +1,331 @@
+package com.apcsa.model;
+
+import java.util.Map;
+
+/**
+ * A compiled rule for turning term grades into a course grade.
+ *
+ * A policy is built once from its settings and never changes. The settings are
+ * resolved into a few primitive arrays and constants up front. Evaluating a policy
+ * is a single pass over a double[] that allocates nothing, so a district-wide
+ * recompute can call it millions of times.
+ *
+ * Settings (all optional; the defaults match the original 80/20 rule):
+ *
+ *   terms         the kind of each of the six course_grades slots, in column
+ *                 order (default: mp, mp, exam, mp, mp, exam)
+ *   mp_weight     the share of the grade from marking periods (default: 0.8)
+ *   exam_weight   the share of the grade from exams (default: 0.2)
+ *   drop_lowest   how many of the lowest marking period grades to ignore (default: 0)
+ *   rounding      HALF_UP, HALF_EVEN, DOWN, UP, or NONE (default: HALF_UP)
+ *   places        decimal places to round to (default: 2)
+ *   categories    assignment category weights, e.g. "homework:20, tests:50, quizzes:30"
+ *
+ * If only marking periods or only exams have been graded, the graded kind counts
+ * for the whole grade.
+ */
+
+public class GradingPolicy {
+
+    public enum Rounding { HALF_UP, HALF_EVEN, DOWN, UP, NONE }
+
+    private final static double EPSILON = 1e-9;        // absorbs binary error, e.g. 82.345 * 100 = 8234.4999...
+    private final static String[] DEFAULT_TERMS = { "mp", "mp", "exam", "mp", "mp", "exam" };
+
+    public final static int TERMS = DEFAULT_TERMS.length;  // course_grades has exactly this many slots
+
+    public final static GradingPolicy DEFAULT = compile(null);
+
+    private final boolean[] exam;                       // per slot
+    private final double mpWeight;
+    private final double examWeight;
+    private final int dropLowest;
+    private final Rounding rounding;
+    private final double scale;
+    private final String[] categories;
+    private final double[] categoryWeights;             // normalized to sum to 1
+
+    private GradingPolicy(boolean[] exam, double mpWeight, double examWeight, int dropLowest, Rounding rounding, int places,
+            String[] categories, double[] categoryWeights) {
+
+        this.exam = exam;
+        this.mpWeight = mpWeight;
+        this.examWeight = examWeight;
+        this.dropLowest = dropLowest;
+        this.rounding = rounding;
+        this.scale = Math.pow(10, places);
+        this.categories = categories;
+        this.categoryWeights = categoryWeights;
+    }
+
+    /**
+     * Builds a policy from its settings.
+     *
+     * @param settings setting names mapped to values; missing settings use the defaults
+     * @return the policy
+     * @throws IllegalArgumentException if a setting is malformed
+     */
+
+    public static GradingPolicy compile(Map<String, String> settings) {
+        String[] terms = split(get(settings, "terms", null), ",");
+        if (terms.length == 0) {
+            terms = DEFAULT_TERMS;
+        } else if (terms.length != TERMS) {
+            throw new IllegalArgumentException("A policy must have exactly " + TERMS + " terms, found " + terms.length + ".");
+        }
+
+        boolean[] exam = new boolean[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            if (terms[i].equalsIgnoreCase("exam")) {
+                exam[i] = true;
+            } else if (!terms[i].equalsIgnoreCase("mp")) {
+                throw new IllegalArgumentException("Unknown term kind: " + terms[i]);
+            }
+        }
+
+        double mpWeight = toDouble("mp_weight", get(settings, "mp_weight", "0.8"));
+        double examWeight = toDouble("exam_weight", get(settings, "exam_weight", "0.2"));
+        if (mpWeight < 0 || examWeight < 0 || mpWeight + examWeight <= 0) {
+            throw new IllegalArgumentException("Weights must be non-negative and not both zero.");
+        }
+
+        int dropLowest = toInt("drop_lowest", get(settings, "drop_lowest", "0"));
+        int places = toInt("places", get(settings, "places", "2"));
+        if (dropLowest < 0 || places < 0) {
+            throw new IllegalArgumentException("drop_lowest and places can't be negative.");
+        }
+
+        Rounding rounding;
+        try {
+            rounding = Rounding.valueOf(get(settings, "rounding", "HALF_UP").trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown rounding mode: " + get(settings, "rounding", ""));
+        }
+
+        String[] pairs = split(get(settings, "categories", null), ",");
+        String[] categories = new String[pairs.length];
+        double[] categoryWeights = new double[pairs.length];
+        double total = 0;
+
+        for (int i = 0; i < pairs.length; i++) {
+            int colon = pairs[i].indexOf(':');
+            if (colon < 1) {
+                throw new IllegalArgumentException("Expected category:weight, found " + pairs[i]);
+            }
+
+            categories[i] = pairs[i].substring(0, colon).trim().toLowerCase();
+            categoryWeights[i] = toDouble("categories", pairs[i].substring(colon + 1));
+            total += categoryWeights[i];
+        }
+        if (pairs.length > 0 && !(total > 0)) {
+            throw new IllegalArgumentException("Category weights must add up to more than zero.");
+        }
+        for (int i = 0; i < categoryWeights.length; i++) {
+            categoryWeights[i] /= total;
+        }
+
+        return new GradingPolicy(exam, mpWeight, examWeight, dropLowest, rounding, places, categories, categoryWeights);
+    }
+
+    /**
+     * Computes a course grade from term grades in course_grades column order.
+     *
+     * @param grades the term grades, NaN where missing
+     * @return the course grade, or NaN if nothing has been graded
+     */
+
+    public double evaluate(double[] grades) {
+        return evaluate(grades, 0);
+    }
+
+    /**
+     * Computes a course grade from term grades stored at an offset in a larger
+     * array, e.g. one row of a flat rows-by-terms table.
+     *
+     * @param grades the array
+     * @param offset the index of the first term grade
+     * @return the course grade, or NaN if nothing has been graded
+     */
+
+    public double evaluate(double[] grades, int offset) {
+        int mps = 0;
+        double mpSum = 0;
+        int exams = 0;
+        double examSum = 0;
+
+        for (int i = 0; i < exam.length; i++) {
+            double grade = grades[offset + i];
+
+            if (grade != grade) {           // NaN
+                continue;
+            } else if (exam[i]) {
+                exams++;
+                examSum += grade;
+            } else {
+                mps++;
+                mpSum += grade;
+            }
+        }
+
+        // drop the lowest marking periods, keeping at least one
+
+        long dropped = 0;
+        for (int d = 0; d < dropLowest && mps > 1; d++) {
+            int lowest = -1;
+
+            for (int i = 0; i < exam.length; i++) {
+                double grade = grades[offset + i];
+
+                if (!exam[i] && grade == grade && (dropped & (1L << i)) == 0
+                        && (lowest < 0 || grade < grades[offset + lowest])) {
+                    lowest = i;
+                }
+            }
+
+            dropped |= 1L << lowest;
+            mpSum -= grades[offset + lowest];
+            mps--;
+        }
+
+        double grade;
+        if (mps > 0 && exams > 0) {
+            grade = (mpSum / mps * mpWeight + examSum / exams * examWeight) / (mpWeight + examWeight);
+        } else if (mps > 0) {
+            grade = mpSum / mps;
+        } else if (exams > 0) {
+            grade = examSum / exams;
+        } else {
+            return Double.NaN;
+        }
+
+        return round(grade);
+    }
+
+    /**
+     * Combines per-category averages into one grade using the category weights.
+     * Categories without an average are left out and the rest are reweighted.
+     *
+     * @param averages one average per category, in getCategories() order, NaN where missing
+     * @return the weighted average, or NaN if no category has an average
+     */
+
+    public double weigh(double[] averages) {
+        double sum = 0;
+        double weight = 0;
+
+        for (int i = 0; i < categoryWeights.length; i++) {
+            if (averages[i] == averages[i]) {
+                sum += averages[i] * categoryWeights[i];
+                weight += categoryWeights[i];
+            }
+        }
+
+        return weight > 0 ? round(sum / weight) : Double.NaN;
+    }
+
+    /**
+     * Rounds a value the way this policy rounds grades.
+     *
+     * @param value the value
+     * @return the rounded value
+     */
+
+    public double round(double value) {
+        double scaled = value * scale;
+
+        switch (rounding) {
+            case HALF_UP:
+                return (scaled < 0 ? -Math.floor(-scaled + 0.5 + EPSILON) : Math.floor(scaled + 0.5 + EPSILON)) / scale;
+            case HALF_EVEN:
+                double floor = Math.floor(scaled);
+                double fraction = scaled - floor;
+
+                if (Math.abs(fraction - 0.5) < EPSILON) {
+                    return (floor % 2 == 0 ? floor : floor + 1) / scale;
+                }
+                return Math.rint(scaled) / scale;
+            case DOWN:
+                return Math.floor(scaled + EPSILON) / scale;
+            case UP:
+                return Math.ceil(scaled - EPSILON) / scale;
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * @return the assignment categories this policy weights, in order; empty if none
+     */
+
+    public String[] getCategories() {
+        return categories.clone();
+    }
+
+    /**
+     * @param category a category name
+     * @return the category's index in getCategories(), or -1 if the policy doesn't weight it
+     */
+
+    public int indexOf(String category) {
+        for (int i = 0; i < categories.length; i++) {
+            if (categories[i].equalsIgnoreCase(category)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+
+        description.append(Math.round(mpWeight / (mpWeight + examWeight) * 100)).append("% marking periods, ")
+            .append(Math.round(examWeight / (mpWeight + examWeight) * 100)).append("% exams");
+        if (dropLowest > 0) {
+            description.append(", lowest ").append(dropLowest).append(" marking period(s) dropped");
+        }
+        description.append(", rounded ").append(rounding.name().toLowerCase().replace('_', ' '));
+        for (int i = 0; i < categories.length; i++) {
+            description.append(i == 0 ? "; " : ", ").append(categories[i]).append(' ')
+                .append(Math.round(categoryWeights[i] * 100)).append('%');
+        }
+
+        return description.toString();
+    }
+
+    private static String get(Map<String, String> settings, String key, String fallback) {
+        String value = settings != null ? settings.get(key) : null;
+
+        return value != null ? value : fallback;
+    }
+
+    private static String[] split(String value, String separator) {
+        if (value == null || value.trim().isEmpty()) {
+            return new String[0];
+        }
+
+        String[] parts = value.split(separator);
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = parts[i].trim();
+        }
+
+        return parts;
+    }
+
+    private static double toDouble(String key, String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a number: " + value);
+        }
+    }
+
+    private static int toInt(String key, String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a whole number: " + value);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.apcsa.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares one String instance per distinct name and department title, so lists of
+ * thousands of students or teachers don't carry thousands of copies of "Smith" or
+ * "Mathematics". Names are interned in the JVM's string table, which drops a name
+ * once nothing refers to it, so the pool never outgrows the names in use.
+ */
+
+public class NamePool {
+
+    private static ConcurrentHashMap<Integer, String> departments = new ConcurrentHashMap<Integer, String>();
+
+    /**
+     * Returns the pooled copy of a name.
+     *
+     * @param name the name
+     * @return an equal String shared by every caller, or null if name is null
+     */
+
+    public static String intern(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        return name.intern();
+    }
+
+    /**
+     * Returns the pooled title of a department, replacing it if it has changed.
+     *
+     * @param departmentId the department
+     * @param title the department's title as just read from the database
+     * @return the shared title
+     */
+
+    public static String department(int departmentId, String title) {
+        String pooled = departments.get(departmentId);
+
+        if (pooled == null || !pooled.equals(title)) {
+            pooled = intern(title);
+            departments.put(departmentId, pooled);
+        }
+
+        return pooled;
+    }
+}
@@ -0,0 +1,88 @@
+package com.apcsa.model;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * One student on a section's roster, with their grade on a single assignment.
+ */
+
+public class RosterGrade {
+
+    private final int studentId;
+    private final String firstName;
+    private final String lastName;
+    private final int pointsEarned;
+    private final boolean graded;
+
+    /**
+     * Creates an instance of the RosterGrade class.
+     *
+     * @param rs a ResultSet positioned on a row of QueryUtils.GET_ROSTER_WITH_GRADES
+     * @throws SQLException
+     */
+
+    public RosterGrade(ResultSet rs) throws SQLException {
+        int points = rs.getInt("points_earned");
+        boolean hasPoints = !rs.wasNull();
+
+        this.studentId = rs.getInt("student_id");
+        this.firstName = NamePool.intern(rs.getString("first_name"));
+        this.lastName = NamePool.intern(rs.getString("last_name"));
+        this.graded = hasPoints && rs.getInt("is_graded") == 1;
+        this.pointsEarned = this.graded ? points : -1;
+    }
+
+    private RosterGrade(int studentId, String firstName, String lastName, int pointsEarned, boolean graded) {
+        this.studentId = studentId;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.pointsEarned = pointsEarned;
+        this.graded = graded;
+    }
+
+    /**
+     * Creates a copy of this row with a new grade.
+     *
+     * @param pointsEarned the points earned
+     * @return the graded row
+     */
+
+    public RosterGrade withPoints(int pointsEarned) {
+        return new RosterGrade(studentId, firstName, lastName, pointsEarned, true);
+    }
+
+    public int getStudentId() {
+        return studentId;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    /**
+     * @return the points earned, or -1 if the student hasn't been graded
+     */
+
+    public int getPointsEarned() {
+        return pointsEarned;
+    }
+
+    public boolean isGraded() {
+        return graded;
+    }
+
+    /**
+     * Retrieves the student's name formatted as LAST, FIRST.
+     *
+     * @return the formatted name
+     */
+
+    public String getName() {
+        return lastName + ", " + firstName;
+    }
+}
@@ -35,18 +35,6 @@ public class Student extends User {
     	this.lastName = rs.getString("last_name");
     }
     
-    public Student(ResultSet rs) throws SQLException {
-    	super(-1, "student", null, null, null);
-    	
-    	this.studentId = rs.getInt("student_id");
-    	this.classRank = rs.getInt("class_rank");
-    	this.gradeLevel = rs.getInt("grade_level");
-    	this.graduationYear = rs.getInt("graduation");
-    	this.gpa = rs.getDouble("gpa");
-    	this.firstName = rs.getString("first_name");
-    	this.lastName = rs.getString("last_name");
-    }
-
 	public double getGpa() {
 		return gpa;
 	}
@@ -135,7 +123,7 @@ public class Student extends User {
        
 
         try (Connection conn = PowerSchool.getConnection()) {
-            PreparedStatement stmt = conn.prepareStatement("SELECT * FROM assignment_grades INNER JOIN assignments ON assignment_grades.assignment_id = assignments.assignment_id WHERE student_id = ? AND assignment_grades.course_id = ? AND assignments.marking_period = ?");
+            PreparedStatement stmt = conn.prepareStatement(QueryUtils.GET_ASSIGNMENT_GRADES_FOR_STUDENT);
             stmt.setInt(1, (int) this.getStudentId());
             stmt.setString(2, course_ids.get(input - 1));
             stmt.setInt(3, markingPeriod);
@@ -0,0 +1,75 @@
+package com.apcsa.model;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A lightweight, read-only view of a student for roster lists. Unlike Student it
+ * carries no account fields, and its names are pooled.
+ */
+
+public class StudentSummary {
+
+    private final int studentId;
+    private final int graduationYear;
+    private final int gradeLevel;
+    private final double gpa;
+    private final String firstName;
+    private final String lastName;
+    private int classRank;
+
+    /**
+     * Creates an instance of the StudentSummary class.
+     *
+     * @param rs a ResultSet positioned on a students row
+     * @throws SQLException
+     */
+
+    public StudentSummary(ResultSet rs) throws SQLException {
+        this.studentId = rs.getInt("student_id");
+        this.graduationYear = rs.getInt("graduation");
+        this.gradeLevel = rs.getInt("grade_level");
+        this.gpa = rs.getDouble("gpa");
+        this.classRank = rs.getInt("class_rank");
+        this.firstName = NamePool.intern(rs.getString("first_name"));
+        this.lastName = NamePool.intern(rs.getString("last_name"));
+    }
+
+    public int getStudentId() {
+        return studentId;
+    }
+
+    public int getGraduationYear() {
+        return graduationYear;
+    }
+
+    public int getGradeLevel() {
+        return gradeLevel;
+    }
+
+    public double getGpa() {
+        return gpa;
+    }
+
+    public int getClassRank() {
+        return classRank;
+    }
+
+    public void setClassRank(int classRank) {
+        this.classRank = classRank;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    /**
+     * Retrieves the student's name formatted as LAST, FIRST.
+     *
+     * @return the formatted name
+     */
+
+    public String getName() {
+        return lastName + ", " + firstName;
+    }
+}
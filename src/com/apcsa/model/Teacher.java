@@ -19,27 +19,9 @@ public class Teacher extends User {
     	this.departmentId = rs.getInt("department_id");
     	this.firstName = rs.getString("first_name");
     	this.lastName = rs.getString("last_name");
-    	this.departmentName = rs.getString("department_id");
+    	this.departmentName = NamePool.department(departmentId, rs.getString("title"));
 	}
 	
-    /**
-     * Creates an instance of the Teacher class.
-     * 
-     * @param rs
-     * @throws SQLException
-     */
-
-    public Teacher(ResultSet rs) throws SQLException {
-        super(-1, "teacher", null, null, null);
-        
-        this.teacherId = rs.getInt("teacher_id");
-        this.departmentId = rs.getInt("department_id");
-        this.firstName = rs.getString("first_name");
-        this.lastName = rs.getString("last_name");
-        this.departmentName = rs.getString("title");
-        this.departmentId = rs.getInt("department_id");
-    }
-    
     /**
      * @return departmentName
      */
@@ -62,6 +44,10 @@ public class Teacher extends User {
 		return firstName;
 	}
     
+    public int getTeacherId() {
+		return teacherId;
+	}
+    
     public int getDepartmentId() {
 		return departmentId;
 	}
@@ -0,0 +1,59 @@
+package com.apcsa.model;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A lightweight, immutable view of a teacher for faculty lists. Unlike Teacher it
+ * carries no account fields, and its names and department title are pooled.
+ */
+
+public class TeacherSummary {
+
+    private final int teacherId;
+    private final int departmentId;
+    private final String firstName;
+    private final String lastName;
+    private final String departmentName;
+
+    /**
+     * Creates an instance of the TeacherSummary class.
+     *
+     * @param rs a ResultSet positioned on a teachers row joined with departments
+     * @throws SQLException
+     */
+
+    public TeacherSummary(ResultSet rs) throws SQLException {
+        this.teacherId = rs.getInt("teacher_id");
+        this.departmentId = rs.getInt("department_id");
+        this.firstName = NamePool.intern(rs.getString("first_name"));
+        this.lastName = NamePool.intern(rs.getString("last_name"));
+        this.departmentName = NamePool.department(departmentId, rs.getString("title"));
+    }
+
+    public int getTeacherId() {
+        return teacherId;
+    }
+
+    public int getDepartmentId() {
+        return departmentId;
+    }
+
+    public String getDepartmentName() {
+        return departmentName;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    /**
+     * Retrieves the teacher's name formatted as LAST, FIRST.
+     *
+     * @return the formatted name
+     */
+
+    public String getName() {
+        return lastName + ", " + firstName;
+    }
+}